@@ -1,7 +1,9 @@
 package com.evtrading.swp391.config;
 
 import com.evtrading.swp391.security.JwtAuthFilter;
+import com.evtrading.swp391.security.RateLimitFilter;
 import com.evtrading.swp391.service.UserDetailsServiceImpl;
+import jakarta.servlet.DispatcherType;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -53,6 +55,15 @@ public class SecurityConfig {
         return new JwtAuthFilter();
     }
 
+    /**
+     * Bộ lọc giới hạn tốc độ request theo người dùng (hoặc IP) và nhóm route.
+     * Đặt sau JwtAuthFilter để nhận diện được người dùng đã đăng nhập.
+     */
+    @Bean
+    public RateLimitFilter rateLimitFilter() {
+        return new RateLimitFilter();
+    }
+
     /**
      * Cấu hình AuthenticationProvider - thành phần chính xử lý xác thực
      * 
@@ -115,14 +126,16 @@ public class SecurityConfig {
         
         http.authorizeHttpRequests(auth -> 
             auth
-                .requestMatchers("/api/auth/**").permitAll()  // Cho phép tất cả request tới /api/auth/**
-                .requestMatchers("/api/auth/social").permitAll() // Đảm bảo endpoint social login được permit
-                .requestMatchers(SecurityPaths.publicEndpoints()).permitAll()
+                // Dùng chung matcher đã biên dịch với JwtAuthFilter (bao gồm /api/auth/**, swagger, webhook)
+                .requestMatchers(SecurityPaths.PUBLIC_REQUEST_MATCHER).permitAll()
+                // Lượt dispatch ASYNC/ERROR của SSE/long-poll không chạy lại JwtAuthFilter; request gốc đã được kiểm tra
+                .dispatcherTypeMatchers(DispatcherType.ASYNC, DispatcherType.ERROR).permitAll()
                 .anyRequest().authenticated()
         );
         
         http.authenticationProvider(authenticationProvider());
         http.addFilterBefore(authenticationJwtTokenFilter(), UsernamePasswordAuthenticationFilter.class);
+        http.addFilterAfter(rateLimitFilter(), JwtAuthFilter.class);
         
         return http.build();
     }
@@ -1,24 +1,68 @@
 package com.evtrading.swp391.config;
 
-import org.springframework.util.AntPathMatcher;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.server.PathContainer;
+import org.springframework.security.web.util.matcher.RequestMatcher;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Centralizes the definition of publicly accessible HTTP paths so that
  * security-related components (filters, config) share the same source
  * of truth.
+ *
+ * Patterns are compiled once when the class is loaded. Patterns of the form
+ * {@code /prefix/**} and exact paths are answered from a prefix/exact table
+ * without allocating; any other pattern falls back to a precompiled
+ * {@link PathPattern}, whose decisions are cached per path.
  */
 public final class SecurityPaths {
 
-    private static final AntPathMatcher PATH_MATCHER = new AntPathMatcher();
-
     private static final String[] PUBLIC_ENDPOINTS = new String[] {
             "/api/auth/**",
             "/swagger-ui/**",
             "/v3/api-docs/**",
         // DocuSeal webhook callback (no auth; verified by header secret)
-        "/api/contracts/webhook"
+        "/api/contracts/webhook",
+        // Payment provider callbacks (no auth; verified by provider signature)
+        "/api/payments/callback/**"
     };
 
+    /** Upper bound for the decision cache, so arbitrary URLs cannot grow it without limit. */
+    private static final int MAX_CACHED_DECISIONS = 1024;
+
+    private static final Set<String> EXACT_PATHS = new HashSet<>();
+    private static final String[] PREFIXES;
+    private static final PathPattern[] OTHER_PATTERNS;
+    private static final ConcurrentHashMap<String, Boolean> DECISION_CACHE = new ConcurrentHashMap<>();
+
+    /** Single matcher instance shared by {@link SecurityConfig} and the JWT filter. */
+    public static final RequestMatcher PUBLIC_REQUEST_MATCHER =
+            (HttpServletRequest request) -> isPublicPath(request.getServletPath());
+
+    static {
+        PathPatternParser parser = new PathPatternParser();
+        List<String> prefixes = new ArrayList<>();
+        List<PathPattern> others = new ArrayList<>();
+        for (String pattern : PUBLIC_ENDPOINTS) {
+            if (pattern.endsWith("/**") && isLiteral(pattern.substring(0, pattern.length() - 3))) {
+                prefixes.add(pattern.substring(0, pattern.length() - 3));
+            } else if (isLiteral(pattern)) {
+                EXACT_PATHS.add(pattern);
+            } else {
+                others.add(parser.parse(pattern));
+            }
+        }
+        PREFIXES = prefixes.toArray(new String[0]);
+        OTHER_PATTERNS = others.toArray(new PathPattern[0]);
+    }
+
     private SecurityPaths() {
         // Utility class
     }
@@ -42,12 +86,42 @@ public final class SecurityPaths {
         if (servletPath == null) {
             return false;
         }
+        if (EXACT_PATHS.contains(servletPath)) {
+            return true;
+        }
+        for (String prefix : PREFIXES) {
+            // "/prefix/**" matches "/prefix" itself and anything below "/prefix/"
+            if (servletPath.startsWith(prefix)
+                    && (servletPath.length() == prefix.length() || servletPath.charAt(prefix.length()) == '/')) {
+                return true;
+            }
+        }
+        if (OTHER_PATTERNS.length == 0) {
+            return false;
+        }
 
-        for (String pattern : PUBLIC_ENDPOINTS) {
-            if (PATH_MATCHER.match(pattern, servletPath)) {
+        Boolean cached = DECISION_CACHE.get(servletPath);
+        if (cached != null) {
+            return cached;
+        }
+        boolean matched = matchesOtherPattern(servletPath);
+        if (DECISION_CACHE.size() < MAX_CACHED_DECISIONS) {
+            DECISION_CACHE.put(servletPath, matched);
+        }
+        return matched;
+    }
+
+    private static boolean matchesOtherPattern(String servletPath) {
+        PathContainer path = PathContainer.parsePath(servletPath);
+        for (PathPattern pattern : OTHER_PATTERNS) {
+            if (pattern.matches(path)) {
                 return true;
             }
         }
         return false;
     }
+
+    private static boolean isLiteral(String pattern) {
+        return pattern.indexOf('*') < 0 && pattern.indexOf('?') < 0 && pattern.indexOf('{') < 0;
+    }
 }
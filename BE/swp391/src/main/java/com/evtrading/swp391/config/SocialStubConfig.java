@@ -0,0 +1,26 @@
+package com.evtrading.swp391.config;
+
+import com.evtrading.swp391.security.SocialTokenVerifier;
+import com.evtrading.swp391.security.StubSocialTokenVerifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Thay thế Google/Facebook verifier bằng bản stub khi chạy test offline.
+ * Bật bằng app.social.stub.enabled=true.
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.social.stub.enabled", havingValue = "true")
+public class SocialStubConfig {
+
+    @Bean
+    public SocialTokenVerifier googleStubVerifier() {
+        return new StubSocialTokenVerifier("GOOGLE");
+    }
+
+    @Bean
+    public SocialTokenVerifier facebookStubVerifier() {
+        return new StubSocialTokenVerifier("FACEBOOK");
+    }
+}
@@ -0,0 +1,55 @@
+package com.evtrading.swp391.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import javax.sql.DataSource;
+
+/**
+ * Chế độ virtual thread, bật bằng {@code spring.threads.virtual.enabled=true} (Java 21).
+ *
+ * Spring Boot tự chuyển luồng request của Tomcat, {@code applicationTaskExecutor} và scheduler sang
+ * virtual thread. Cấu hình này thêm phần còn thiếu: SQL Server chỉ chịu được số connection của pool, nên
+ * DataSource được bọc bằng {@link ConnectionLimitingDataSource}.
+ *
+ * Gợi ý kích thước (app.jdbc.*):
+ * - {@code maxConcurrent}: mặc định bằng {@code spring.datasource.hikari.maximum-pool-size}. Tăng pool
+ *   chứ đừng tăng riêng giá trị này; với SQL Server thường khoảng (số core của DB server * 2) + số đĩa.
+ * - {@code maxWaiting} (mặc định 2000): số luồng tối đa được chờ connection; quá mức này request lỗi ngay.
+ * - {@code acquireTimeoutMs} (mặc định 5000): nên nhỏ hơn {@code connection-timeout} của Hikari để lỗi
+ *   quá tải xuất hiện ở semaphore, không phải trong pool.
+ *
+ * Các executor riêng (gửi DocuSeal, khởi tạo thanh toán) vẫn là pool cố định vì kích thước của chúng là
+ * giới hạn tải lên dịch vụ ngoài, không phải giới hạn luồng. Xem {@link VirtualThreadPinningMonitor} để
+ * tìm chỗ virtual thread bị ghim vào carrier thread.
+ */
+@Configuration
+@ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+public class VirtualThreadConfig {
+    private static final Logger log = LoggerFactory.getLogger(VirtualThreadConfig.class);
+
+    @Bean
+    static BeanPostProcessor connectionLimitingDataSourcePostProcessor(Environment env) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!(bean instanceof DataSource dataSource) || bean instanceof ConnectionLimitingDataSource) {
+                    return bean;
+                }
+                int poolSize = bean instanceof HikariDataSource hikari ? hikari.getMaximumPoolSize() : 10;
+                int permits = env.getProperty("app.jdbc.maxConcurrent", Integer.class, poolSize);
+                int maxWaiting = env.getProperty("app.jdbc.maxWaiting", Integer.class, 2000);
+                long acquireTimeoutMs = env.getProperty("app.jdbc.acquireTimeoutMs", Long.class, 5000L);
+                log.info("Virtual threads enabled: limiting DataSource '{}' to {} concurrent connections ({} waiting max)",
+                        beanName, permits, maxWaiting);
+                return new ConnectionLimitingDataSource(dataSource, permits, maxWaiting, acquireTimeoutMs);
+            }
+        };
+    }
+}
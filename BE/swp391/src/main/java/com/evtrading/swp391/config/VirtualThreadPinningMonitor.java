@@ -0,0 +1,107 @@
+package com.evtrading.swp391.config;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Chẩn đoán pinning: ghi nhận sự kiện JFR {@code jdk.VirtualThreadPinned}, tức virtual thread bị chặn
+ * (I/O, lock, sleep) trong khi vẫn giữ carrier thread, thường do đang ở trong khối {@code synchronized}
+ * hoặc native frame. Mỗi vị trí được log kèm stack trace ở lần đầu, sau đó chỉ đếm; tổng hợp định kỳ
+ * cho biết chỗ nào cần đổi sang {@link java.util.concurrent.locks.ReentrantLock}.
+ *
+ * Bật bằng {@code app.diagnostics.pinning.enabled=true}; {@code thresholdMs} (mặc định 20) bỏ qua các lần
+ * ghim ngắn. Chi phí thấp nhưng vẫn là một luồng JFR, nên chỉ bật khi cần điều tra.
+ */
+@Component
+@ConditionalOnProperty(name = "app.diagnostics.pinning.enabled", havingValue = "true")
+public class VirtualThreadPinningMonitor {
+    private static final Logger log = LoggerFactory.getLogger(VirtualThreadPinningMonitor.class);
+
+    private static final String EVENT = "jdk.VirtualThreadPinned";
+    private static final int MAX_SITES = 1000;
+    private static final int MAX_FRAMES = 12;
+
+    private final Map<String, LongAdder> sites = new ConcurrentHashMap<>();
+    private RecordingStream stream;
+
+    @Value("${app.diagnostics.pinning.thresholdMs:20}")
+    private long thresholdMs;
+
+    @PostConstruct
+    void start() {
+        stream = new RecordingStream();
+        stream.enable(EVENT).withThreshold(Duration.ofMillis(thresholdMs)).withStackTrace();
+        stream.onEvent(EVENT, this::record);
+        stream.startAsync();
+        log.info("Virtual thread pinning monitor started (threshold {} ms)", thresholdMs);
+    }
+
+    private void record(RecordedEvent event) {
+        List<RecordedFrame> frames = frames(event.getStackTrace());
+        String site = frames.isEmpty() ? "<unknown>" : frame(firstApplicationFrame(frames));
+        LongAdder count = sites.get(site);
+        if (count == null) {
+            if (sites.size() >= MAX_SITES) {
+                return;
+            }
+            count = sites.computeIfAbsent(site, k -> new LongAdder());
+            log.warn("Virtual thread pinned for {} ms at {}:\n    {}", event.getDuration().toMillis(), site,
+                    frames.stream().limit(MAX_FRAMES).map(VirtualThreadPinningMonitor::frame)
+                            .collect(Collectors.joining("\n    ")));
+        }
+        count.increment();
+    }
+
+    // Khung đầu tiên thuộc code của ứng dụng, vì đỉnh stack thường là JDK (Object.wait, socket read...)
+    private static RecordedFrame firstApplicationFrame(List<RecordedFrame> frames) {
+        return frames.stream()
+                .filter(f -> f.getMethod().getType().getName().startsWith("com.evtrading."))
+                .findFirst()
+                .orElse(frames.get(0));
+    }
+
+    private static List<RecordedFrame> frames(RecordedStackTrace stackTrace) {
+        return stackTrace == null ? List.of() : stackTrace.getFrames();
+    }
+
+    private static String frame(RecordedFrame f) {
+        return f.getMethod().getType().getName() + "." + f.getMethod().getName() + ":" + f.getLineNumber();
+    }
+
+    @Scheduled(initialDelay = 300_000, fixedDelay = 300_000)
+    public void logSummary() {
+        if (sites.isEmpty()) {
+            return;
+        }
+        String top = sites.entrySet().stream()
+                .sorted((a, b) -> Long.compare(b.getValue().sum(), a.getValue().sum()))
+                .limit(10)
+                .map(e -> e.getValue().sum() + " x " + e.getKey())
+                .collect(Collectors.joining("\n    "));
+        log.info("Virtual thread pinning sites (top 10 since start):\n    {}", top);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (stream != null) {
+            stream.close();
+        }
+    }
+}
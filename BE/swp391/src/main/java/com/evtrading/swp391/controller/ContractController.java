@@ -1,22 +1,76 @@
 package com.evtrading.swp391.controller;
 
+import com.evtrading.swp391.dto.ContractBulkSendDTO;
 import com.evtrading.swp391.dto.ContractCreateDTO;
 import com.evtrading.swp391.dto.ContractDTO;
+import com.evtrading.swp391.dto.ContractSendResult;
+import com.evtrading.swp391.service.ContractDocumentStore;
 import com.evtrading.swp391.service.ContractService;
+import com.evtrading.swp391.service.ContractStatusCache;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.validation.Valid;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/contracts")
 public class ContractController {
+    private static final Logger log = LoggerFactory.getLogger(ContractController.class);
+
+    // Đủ cho vài trăm lần gọi DocuSeal kể cả khi phải thử lại
+    private static final long BULK_TIMEOUT_MS = 10 * 60 * 1000L;
+
+    // Tomcat gửi file bằng sendfile (zero-copy) khi servlet đặt các attribute này
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
 
     private final ContractService contractService;
+    private final ContractStatusCache statusCache;
+    private final ContractDocumentStore documentStore;
+    private final ObjectMapper mapper;
 
-    public ContractController(ContractService contractService) {
+    @Value("${app.contract.watch.timeoutMs:30000}")
+    private long watchTimeoutMs;
+
+    public ContractController(ContractService contractService, ContractStatusCache statusCache,
+                              ContractDocumentStore documentStore, ObjectMapper mapper) {
         this.contractService = contractService;
+        this.statusCache = statusCache;
+        this.documentStore = documentStore;
+        this.mapper = mapper;
     }
 
+    /**
+     * Tạo hợp đồng và gửi DocuSeal bất đồng bộ. Response trả về ngay với status {@code Draft}, chưa có
+     * envelope/link ký. Client theo dõi qua GET /order/{orderId}, long-poll /order/{orderId}/watch hoặc
+     * sự kiện SSE {@code CONTRACT_UPDATED}: gửi thành công thì status thành {@code PENDING_BOTH}; lỗi thì
+     * thành {@code SEND_FAILED} và server tự gửi lại với backoff, không cần gọi lại endpoint này.
+     */
     @PostMapping("/send")
     public ResponseEntity<ContractDTO> createAndSend(@RequestBody ContractCreateDTO req,
                                                      Authentication authentication) {
@@ -25,9 +79,174 @@ public class ContractController {
         return ResponseEntity.ok(dto);
     }
 
+    /**
+     * Gửi hợp đồng cho nhiều đơn. Trả về NDJSON: mỗi dòng là một {@link ContractSendResult},
+     * ghi ra ngay khi đơn đó có kết quả (không theo thứ tự orderIds).
+     */
+    @PostMapping(value = "/send/bulk", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<ResponseBodyEmitter> bulkSend(@Valid @RequestBody ContractBulkSendDTO req,
+                                                        Authentication authentication) {
+        String currentUsername = authentication != null ? authentication.getName() : null;
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(BULK_TIMEOUT_MS);
+        contractService.bulkSend(req, currentUsername, result -> emit(emitter, result))
+                .whenComplete((ignored, error) -> {
+                    if (error != null) {
+                        emitter.completeWithError(error);
+                    } else {
+                        emitter.complete();
+                    }
+                });
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(emitter);
+    }
+
+    private void emit(ResponseBodyEmitter emitter, ContractSendResult result) {
+        try {
+            // Một lần send cho cả dòng để các luồng gửi song song không chen giữa dòng của nhau
+            emitter.send(mapper.writeValueAsString(result) + "\n", MediaType.TEXT_PLAIN);
+        } catch (IOException | IllegalStateException e) {
+            // Client đã ngắt kết nối: việc gửi vẫn tiếp tục, kết quả xem lại qua GET /order/{orderId}
+            log.debug("Cannot stream bulk send result for order {}: {}", result.orderId(), e.getMessage());
+        }
+    }
+
+    /**
+     * Tải file hợp đồng đã ký từ kho cục bộ. Hỗ trợ ETag (sha256 của nội dung, trả 304 khi khớp
+     * If-None-Match) và Range một đoạn (206). Nếu file chưa được lưu về thì chuyển hướng sang link DocuSeal.
+     */
+    @GetMapping("/{contractId}/document")
+    public void downloadSigned(@PathVariable Integer contractId, Authentication authentication,
+                               HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String currentUsername = authentication != null ? authentication.getName() : null;
+        Optional<ContractService.SignedDocument> found;
+        try {
+            found = contractService.findSignedDocument(contractId, currentUsername);
+        } catch (SecurityException e) {
+            response.sendError(HttpStatus.FORBIDDEN.value(), e.getMessage());
+            return;
+        } catch (IllegalArgumentException e) {
+            response.sendError(HttpStatus.NOT_FOUND.value(), e.getMessage());
+            return;
+        }
+        ContractService.SignedDocument doc = found.orElse(null);
+        if (doc == null) {
+            response.sendError(HttpStatus.NOT_FOUND.value(), "Contract has no signed document yet");
+            return;
+        }
+        Path file = doc.sha256() != null ? documentStore.path(doc.sha256()) : null;
+        if (file == null || !Files.isReadable(file)) {
+            if (doc.remoteUrl() == null) {
+                response.sendError(HttpStatus.NOT_FOUND.value(), "Signed document is not available");
+                return;
+            }
+            response.sendRedirect(doc.remoteUrl());
+            return;
+        }
+
+        String etag = "\"" + doc.sha256() + "\"";
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "private, no-cache");
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null && (ifNoneMatch.contains(etag) || ifNoneMatch.trim().equals("*"))) {
+            response.setStatus(HttpStatus.NOT_MODIFIED.value());
+            return;
+        }
+
+        long length = Files.size(file);
+        long start = 0;
+        long end = length - 1;
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        // Chỉ phục vụ một đoạn; nhiều đoạn hoặc If-Range không khớp thì trả cả file (RFC 9110 cho phép)
+        if (rangeHeader != null && length > 0 && (ifRange == null || ifRange.equals(etag))) {
+            List<HttpRange> ranges;
+            try {
+                ranges = HttpRange.parseRanges(rangeHeader);
+            } catch (IllegalArgumentException e) {
+                ranges = List.of();
+            }
+            if (ranges.size() == 1) {
+                HttpRange range = ranges.get(0);
+                start = range.getRangeStart(length);
+                end = range.getRangeEnd(length);
+                if (start >= length || start > end) {
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                    response.sendError(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                    return;
+                }
+                response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+            }
+        }
+        long count = end - start + 1;
+        response.setContentType(MediaType.APPLICATION_PDF_VALUE);
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"contract-" + contractId + ".pdf\"");
+        response.setContentLengthLong(count);
+        if ("HEAD".equalsIgnoreCase(request.getMethod()) || count <= 0) {
+            return;
+        }
+
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end + 1);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            long remaining = count;
+            while (remaining > 0) {
+                long sent = channel.transferTo(position, remaining, out);
+                if (sent <= 0) {
+                    break;
+                }
+                position += sent;
+                remaining -= sent;
+            }
+        }
+    }
+
     @GetMapping("/order/{orderId}")
     public ResponseEntity<ContractDTO> getByOrder(@PathVariable Integer orderId) {
         ContractDTO dto = contractService.getByOrderId(orderId);
         return dto != null ? ResponseEntity.ok(dto) : ResponseEntity.notFound().build();
     }
+
+    /**
+     * Long-poll trạng thái hợp đồng. {@code since} là updateAt (epoch ms) client đang có: nếu hợp đồng
+     * đã khác thì trả ngay, ngược lại giữ request tới khi hợp đồng thay đổi hoặc hết
+     * {@code app.contract.watch.timeoutMs} (trả 304, client gọi lại với cùng since).
+     */
+    @GetMapping("/order/{orderId}/watch")
+    public DeferredResult<ResponseEntity<ContractDTO>> watchByOrder(@PathVariable Integer orderId,
+                                                                   @RequestParam(required = false) Long since) {
+        DeferredResult<ResponseEntity<ContractDTO>> result = new DeferredResult<>(watchTimeoutMs,
+                () -> ResponseEntity.status(HttpStatus.NOT_MODIFIED).<ContractDTO>build());
+        ContractDTO current = contractService.getByOrderId(orderId);
+        if (since == null || !Objects.equals(since, updatedAt(current))) {
+            result.setResult(toResponse(current));
+            return result;
+        }
+        Runnable onChange = () -> result.setResult(toResponse(contractService.getByOrderId(orderId)));
+        if (!statusCache.addListener(orderId, onChange)) {
+            result.setResult(toResponse(current));
+            return result;
+        }
+        result.onCompletion(() -> statusCache.removeListener(orderId, onChange));
+        // Hợp đồng có thể đã đổi giữa lúc đọc và lúc đăng ký listener
+        ContractDTO latest = contractService.getByOrderId(orderId);
+        if (!Objects.equals(since, updatedAt(latest))) {
+            result.setResult(toResponse(latest));
+        }
+        return result;
+    }
+
+    private static Long updatedAt(ContractDTO dto) {
+        return dto != null && dto.getUpdateAt() != null ? dto.getUpdateAt().getTime() : null;
+    }
+
+    private static ResponseEntity<ContractDTO> toResponse(ContractDTO dto) {
+        return dto != null ? ResponseEntity.ok(dto) : ResponseEntity.notFound().build();
+    }
 }
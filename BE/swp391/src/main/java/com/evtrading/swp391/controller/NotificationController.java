@@ -0,0 +1,50 @@
+package com.evtrading.swp391.controller;
+
+import com.evtrading.swp391.event.NotificationHub;
+import com.evtrading.swp391.repository.UserRepository;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.security.Principal;
+
+/**
+ * Luồng thông báo realtime (Server-Sent Events) của người dùng đang đăng nhập: duyệt/từ chối tin đăng,
+ * đơn hàng, thanh toán và hợp đồng. Tên sự kiện SSE là loại sự kiện outbox, data là payload JSON;
+ * sự kiện {@code resync} nghĩa là client đọc chậm và đã lỡ thông báo, cần tải lại dữ liệu.
+ */
+@RestController
+@RequestMapping("/api/notifications")
+public class NotificationController {
+
+    private final NotificationHub hub;
+    private final UserRepository userRepository;
+
+    public NotificationController(NotificationHub hub, UserRepository userRepository) {
+        this.hub = hub;
+        this.userRepository = userRepository;
+    }
+
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> stream(Principal principal) {
+        if (principal == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        Integer userId = userRepository.findByUsername(principal.getName())
+                .map(user -> user.getUserID())
+                .orElse(null);
+        if (userId == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        SseEmitter emitter = hub.subscribe(userId);
+        if (emitter == null) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header("Retry-After", "30").build();
+        }
+        // Tắt buffer của nginx để sự kiện tới client ngay
+        return ResponseEntity.ok().header("X-Accel-Buffering", "no").header("Cache-Control", "no-cache").body(emitter);
+    }
+}
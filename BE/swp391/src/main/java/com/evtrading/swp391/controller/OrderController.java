@@ -1,25 +1,42 @@
 package com.evtrading.swp391.controller;
 
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
+import org.springframework.transaction.TransactionException;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.evtrading.swp391.dto.OrderBulkCancelDTO;
+import com.evtrading.swp391.dto.OrderPageDTO;
 import com.evtrading.swp391.dto.OrderRequestDTO;
 import com.evtrading.swp391.dto.OrderResponseDTO;
 import com.evtrading.swp391.dto.PaymentRequestDTO;
 import com.evtrading.swp391.dto.PaymentResponseDTO;
+import com.evtrading.swp391.dto.SellerOrderInboxDTO;
+import com.evtrading.swp391.exception.OrderConflictException;
+import com.evtrading.swp391.service.IdempotencyService;
 import com.evtrading.swp391.service.OrderService;
+import com.evtrading.swp391.service.StatusTransitionService;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
@@ -35,21 +52,44 @@ public class OrderController {
     @Autowired
     private OrderService orderService;
 
+    @Autowired
+    private IdempotencyService idempotencyService;
+
+    @Autowired
+    private StatusTransitionService statusTransitionService;
+
     @Operation(summary = "Tạo đơn hàng mới", description = "Tạo đơn hàng từ một bài đăng listing")
     @SecurityRequirement(name = "bearerAuth")
     @PostMapping("/orders")
-    public ResponseEntity<OrderResponseDTO> createOrder(
+    public ResponseEntity<?> createOrder(
             @Valid @RequestBody OrderRequestDTO orderRequest,
+            @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey,
             Authentication authentication) {
         if (authentication == null || !authentication.isAuthenticated()) {
             logger.warn("Unauthorized attempt to create order");
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
         }
 
+        return idempotencyService.execute("orders", authentication.getName(), idempotencyKey, orderRequest,
+                () -> doCreateOrder(orderRequest, authentication));
+    }
+
+    private ResponseEntity<?> doCreateOrder(OrderRequestDTO orderRequest, Authentication authentication) {
         try {
             OrderResponseDTO createdOrder = orderService.createOrder(orderRequest, authentication);
             logger.info("Order created successfully: {}", createdOrder.getOrderId());
             return ResponseEntity.status(HttpStatus.CREATED).body(createdOrder);
+        } catch (OrderConflictException e) {
+            logger.info("Order conflict for listing {}: {}", orderRequest.getListingId(), e.getMessage());
+            ResponseEntity.BodyBuilder conflict = ResponseEntity.status(HttpStatus.CONFLICT);
+            if (e.isRetryable()) {
+                // Retry-After đánh dấu kết quả tạm thời: IdempotencyService không lưu để lần gửi lại được chạy
+                conflict.header(HttpHeaders.RETRY_AFTER, "1");
+            }
+            return conflict.body(Map.of("error", e.getMessage()));
+        } catch (DataAccessException | TransactionException e) {
+            logger.error("Database error creating order: {}", e.getMessage());
+            return unavailable();
         } catch (RuntimeException e) {
             logger.error("Error creating order: {}", e.getMessage());
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
@@ -59,24 +99,40 @@ public class OrderController {
     @Operation(summary = "Tạo thanh toán", description = "Tạo thanh toán cho một giao dịch")
     @SecurityRequirement(name = "bearerAuth")
     @PostMapping("/payments")
-    public ResponseEntity<PaymentResponseDTO> createPayment(
+    public ResponseEntity<?> createPayment(
             @Valid @RequestBody PaymentRequestDTO paymentRequest,
+            @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey,
             Authentication authentication) {
         if (authentication == null || !authentication.isAuthenticated()) {
             logger.warn("Unauthorized attempt to create payment");
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
         }
 
+        return idempotencyService.execute("payments", authentication.getName(), idempotencyKey, paymentRequest,
+                () -> doCreatePayment(paymentRequest, authentication));
+    }
+
+    private ResponseEntity<?> doCreatePayment(PaymentRequestDTO paymentRequest, Authentication authentication) {
         try {
             PaymentResponseDTO createdPayment = orderService.createPayment(paymentRequest, authentication);
             logger.info("Payment created successfully: {}", createdPayment.getPaymentId());
             return ResponseEntity.status(HttpStatus.CREATED).body(createdPayment);
+        } catch (DataAccessException | TransactionException e) {
+            logger.error("Database error creating payment: {}", e.getMessage());
+            return unavailable();
         } catch (RuntimeException e) {
             logger.error("Error creating payment: {}", e.getMessage());
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
         }
     }
 
+    // Lỗi hạ tầng (DB, transaction) không phải kết quả nghiệp vụ: trả 503 để client gửi lại cùng Idempotency-Key
+    private static ResponseEntity<?> unavailable() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(Map.of("error", "Service temporarily unavailable, please try again"));
+    }
+
     @Operation(summary = "Lấy danh sách đơn hàng", description = "Lấy tất cả đơn hàng của người dùng hiện tại")
     @SecurityRequirement(name = "bearerAuth")
     @GetMapping("/orders")
@@ -95,6 +151,54 @@ public class OrderController {
         }
     }
 
+    @Operation(summary = "Lịch sử đơn hàng (phân trang)",
+               description = "Lấy đơn hàng của người dùng hiện tại theo trang; truyền nextCursor của trang trước vào cursor để lấy trang sau")
+    @SecurityRequirement(name = "bearerAuth")
+    @GetMapping("/orders/history")
+    public ResponseEntity<OrderPageDTO> getOrderHistory(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size,
+            Authentication authentication) {
+        if (authentication == null || !authentication.isAuthenticated()) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+
+        try {
+            return ResponseEntity.ok(orderService.getUserOrderPage(authentication.getName(), cursor, size));
+        } catch (RuntimeException e) {
+            logger.error("Error getting order history: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
+        }
+    }
+
+    @Operation(summary = "Hộp đơn của người bán",
+               description = "Đơn hàng đặt trên các listing của người dùng hiện tại, lọc theo status và khoảng ngày [from, to], kèm số đơn theo status")
+    @SecurityRequirement(name = "bearerAuth")
+    @GetMapping("/seller/orders")
+    public ResponseEntity<SellerOrderInboxDTO> getSellerOrders(
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size,
+            Authentication authentication) {
+        if (authentication == null || !authentication.isAuthenticated()) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+
+        try {
+            ZoneId zone = ZoneId.systemDefault();
+            Date fromDate = from == null ? null : Date.from(from.atStartOfDay(zone).toInstant());
+            // "to" tính cả ngày đó
+            Date toDate = to == null ? null : Date.from(to.plusDays(1).atStartOfDay(zone).toInstant());
+            return ResponseEntity.ok(orderService.getSellerOrderInbox(
+                    authentication.getName(), status, fromDate, toDate, cursor, size));
+        } catch (RuntimeException e) {
+            logger.error("Error getting seller orders: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
+        }
+    }
+
     @Operation(summary = "Lấy chi tiết đơn hàng", description = "Xem thông tin chi tiết của một đơn hàng")
     @SecurityRequirement(name = "bearerAuth")
     @GetMapping("/orders/{id}")
@@ -134,4 +238,15 @@ public class OrderController {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
         }
     }
+
+    @Operation(summary = "Hủy đơn hàng loạt (Admin)",
+               description = "Hủy các đơn còn PENDING chưa nhận tiền, hết hạn giao dịch và trả listing về ACTIVE; đơn không hủy được sẽ bị bỏ qua")
+    @SecurityRequirement(name = "bearerAuth")
+    @PreAuthorize("hasRole('ADMIN')")
+    @PostMapping("/admin/orders/cancel")
+    public ResponseEntity<StatusTransitionService.Result> cancelOrders(@Valid @RequestBody OrderBulkCancelDTO request) {
+        StatusTransitionService.Result result = statusTransitionService.cancelOrders(request.getOrderIds());
+        logger.info("Admin bulk cancel: {}", result);
+        return ResponseEntity.ok(result);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,53 @@
+package com.evtrading.swp391.controller;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.evtrading.swp391.service.PaymentCallbackService;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+
+/**
+ * Endpoint public cho payment provider báo kết quả. Chỉ xác thực chữ ký và ghi vào inbox,
+ * việc cập nhật Payment/Transaction chạy nền trong PaymentCallbackService.
+ */
+@RestController
+@RequestMapping("/api/payments/callback")
+@Tag(name = "Payment callbacks", description = "Callback từ cổng thanh toán")
+public class PaymentCallbackController {
+    private static final Logger logger = LoggerFactory.getLogger(PaymentCallbackController.class);
+
+    private final PaymentCallbackService callbackService;
+
+    public PaymentCallbackController(PaymentCallbackService callbackService) {
+        this.callbackService = callbackService;
+    }
+
+    @Operation(summary = "Nhận callback thanh toán", description = "Provider gọi khi thanh toán thành công / thất bại")
+    @PostMapping("/{provider}")
+    public ResponseEntity<?> receive(@PathVariable String provider,
+                                     @RequestHeader Map<String, String> headers,
+                                     @RequestBody String body) {
+        Map<String, String> normalized = new HashMap<>();
+        headers.forEach((name, value) -> normalized.put(name.toLowerCase(Locale.ROOT), value));
+        try {
+            boolean accepted = callbackService.receive(provider, normalized, body);
+            return ResponseEntity.ok(Map.of("received", true, "duplicate", !accepted));
+        } catch (IllegalArgumentException e) {
+            logger.warn("Rejected payment callback from {}: {}", provider, e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+}
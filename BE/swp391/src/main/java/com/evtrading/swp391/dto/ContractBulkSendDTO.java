@@ -0,0 +1,31 @@
+package com.evtrading.swp391.dto;
+
+import java.util.List;
+import java.util.Map;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+
+public class ContractBulkSendDTO {
+    @NotEmpty(message = "Order IDs cannot be empty")
+    @Size(max = 1000, message = "At most 1000 orders per request")
+    private List<Integer> orderIds;
+
+    // Áp dụng chung cho mọi đơn; đơn đã có hợp đồng thì mặc định dùng lại template cũ
+    private String templateId;
+    private String content;
+    private Map<String, Object> metadata;
+    private Map<String, Object> variables;
+
+    // Getters and Setters
+    public List<Integer> getOrderIds() { return orderIds; }
+    public void setOrderIds(List<Integer> orderIds) { this.orderIds = orderIds; }
+    public String getTemplateId() { return templateId; }
+    public void setTemplateId(String templateId) { this.templateId = templateId; }
+    public String getContent() { return content; }
+    public void setContent(String content) { this.content = content; }
+    public Map<String, Object> getMetadata() { return metadata; }
+    public void setMetadata(Map<String, Object> metadata) { this.metadata = metadata; }
+    public Map<String, Object> getVariables() { return variables; }
+    public void setVariables(Map<String, Object> variables) { this.variables = variables; }
+}
@@ -0,0 +1,13 @@
+package com.evtrading.swp391.dto;
+
+/**
+ * Kết quả gửi hợp đồng của một đơn trong lần gửi hàng loạt (một dòng NDJSON).
+ * status: PENDING_BOTH khi DocuSeal đã nhận, SEND_FAILED khi gọi DocuSeal lỗi, REJECTED khi đơn không hợp lệ.
+ */
+public record ContractSendResult(Integer orderId, Integer contractId, String status, String envelopeId,
+                                 String error) {
+
+    public static ContractSendResult rejected(Integer orderId, String error) {
+        return new ContractSendResult(orderId, null, "REJECTED", null, error);
+    }
+}
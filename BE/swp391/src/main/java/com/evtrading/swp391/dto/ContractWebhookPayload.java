@@ -0,0 +1,150 @@
+package com.evtrading.swp391.dto;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * Các trường cần dùng từ một webhook DocuSeal. DocuSeal đặt cùng một thông tin ở nhiều chỗ tùy loại
+ * sự kiện (gốc JSON hoặc trong "data"), nên mỗi trường được tìm theo thứ tự ưu tiên.
+ *
+ * Payload được đọc bằng {@link JsonParser} trong một lượt: mỗi giá trị gặp được đem so hạng ưu tiên
+ * với giá trị đang giữ, các object/array khác bị bỏ qua mà không dựng cây JSON.
+ */
+public record ContractWebhookPayload(String envelopeId, String status, String signedFileUrl, Date signedAt,
+                                     String email, String role, String eventType, Date eventAt) {
+
+    private static final int ID = 0;
+    private static final int STATUS = 1;
+    private static final int URL = 2;
+    private static final int COMPLETED_AT = 3;
+    private static final int EMAIL = 4;
+    private static final int ROLE = 5;
+    private static final int EVENT_TYPE = 6;
+    private static final int TIMESTAMP = 7;
+    private static final int FIELDS = 8;
+
+    /** Đọc payload; trả null nếu payload không phải một JSON object. */
+    public static ContractWebhookPayload parse(JsonFactory factory, String json) throws IOException {
+        try (JsonParser parser = factory.createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            String[] values = new String[FIELDS];
+            int[] ranks = new int[FIELDS];
+            Arrays.fill(ranks, Integer.MAX_VALUE);
+            readObject(parser, values, ranks, false);
+
+            String status = values[STATUS];
+            String eventType = values[EVENT_TYPE];
+            if (status == null && eventType != null) {
+                if (eventType.contains("completed")) status = "Signed";
+                else if (eventType.contains("declined")) status = "Declined";
+            }
+            return new ContractWebhookPayload(values[ID], status, values[URL], parseDate(values[COMPLETED_AT]),
+                    values[EMAIL], values[ROLE], eventType, parseDate(values[TIMESTAMP]));
+        }
+    }
+
+    /** Khóa sắp thứ tự: submission id, hoặc email khi sự kiện form.* không kèm id. */
+    public String envelopeKey() {
+        if (envelopeId != null) return envelopeId;
+        return email != null && !email.isBlank() ? "email:" + email.toLowerCase() : null;
+    }
+
+    private static void readObject(JsonParser parser, String[] values, int[] ranks, boolean inData) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_OBJECT) {
+                if (!inData && "data".equals(name)) {
+                    readObject(parser, values, ranks, true);
+                } else {
+                    parser.skipChildren();
+                }
+                continue;
+            }
+            if (token == JsonToken.START_ARRAY) {
+                parser.skipChildren();
+                continue;
+            }
+            if (token == JsonToken.VALUE_NULL) {
+                continue;
+            }
+            if (inData) {
+                offerData(name, parser, values, ranks);
+            } else {
+                offerRoot(name, parser, values, ranks);
+            }
+        }
+    }
+
+    // Hạng nhỏ hơn thắng. Id/status ưu tiên gốc JSON (tránh lấy nhầm form.id), email/role/url ưu tiên "data"
+    private static void offerRoot(String name, JsonParser parser, String[] values, int[] ranks) throws IOException {
+        switch (name) {
+            case "submission_id" -> offer(values, ranks, ID, 0, parser.getText(), false);
+            case "envelope_id" -> offer(values, ranks, ID, 1, parser.getText(), false);
+            case "id" -> offer(values, ranks, ID, 2, parser.getText(), false);
+            case "status" -> offer(values, ranks, STATUS, 0, parser.getText(), false);
+            case "event_type" -> offer(values, ranks, EVENT_TYPE, 0, parser.getText(), true);
+            case "type" -> offer(values, ranks, EVENT_TYPE, 1, parser.getText(), true);
+            case "combined_document_url" -> offer(values, ranks, URL, 2, parser.getText(), false);
+            case "completed_at" -> offer(values, ranks, COMPLETED_AT, 1, parser.getText(), false);
+            case "timestamp" -> offer(values, ranks, TIMESTAMP, 0, parser.getText(), false);
+            case "email" -> offer(values, ranks, EMAIL, 3, parser.getText(), true);
+            case "submitter_email" -> offer(values, ranks, EMAIL, 4, parser.getText(), true);
+            case "signer_email" -> offer(values, ranks, EMAIL, 5, parser.getText(), true);
+            case "role" -> offer(values, ranks, ROLE, 3, parser.getText(), true);
+            case "submitter_role" -> offer(values, ranks, ROLE, 4, parser.getText(), true);
+            case "signer_role" -> offer(values, ranks, ROLE, 5, parser.getText(), true);
+            default -> { }
+        }
+    }
+
+    private static void offerData(String name, JsonParser parser, String[] values, int[] ranks) throws IOException {
+        switch (name) {
+            case "submission_id" -> offer(values, ranks, ID, 3, parser.getText(), false);
+            case "envelope_id" -> offer(values, ranks, ID, 4, parser.getText(), false);
+            case "id" -> offer(values, ranks, ID, 5, parser.getText(), false);
+            case "status" -> offer(values, ranks, STATUS, 1, parser.getText(), false);
+            case "combined_document_url" -> offer(values, ranks, URL, 0, parser.getText(), true);
+            case "signed_file_url" -> offer(values, ranks, URL, 1, parser.getText(), true);
+            case "completed_at" -> offer(values, ranks, COMPLETED_AT, 0, parser.getText(), false);
+            case "email" -> offer(values, ranks, EMAIL, 0, parser.getText(), true);
+            case "submitter_email" -> offer(values, ranks, EMAIL, 1, parser.getText(), true);
+            case "signer_email" -> offer(values, ranks, EMAIL, 2, parser.getText(), true);
+            case "role" -> offer(values, ranks, ROLE, 0, parser.getText(), true);
+            case "submitter_role" -> offer(values, ranks, ROLE, 1, parser.getText(), true);
+            case "signer_role" -> offer(values, ranks, ROLE, 2, parser.getText(), true);
+            default -> { }
+        }
+    }
+
+    private static void offer(String[] values, int[] ranks, int field, int rank, String value, boolean nonBlank) {
+        if (rank >= ranks[field] || value == null || (nonBlank && value.isBlank())) {
+            return;
+        }
+        values[field] = value;
+        ranks[field] = rank;
+    }
+
+    private static Date parseDate(String v) {
+        if (v == null) {
+            return null;
+        }
+        try {
+            return Date.from(OffsetDateTime.parse(v).toInstant());
+        } catch (Exception ignored) {
+            try {
+                return Date.from(Instant.parse(v));
+            } catch (Exception ignored2) { /* ignore */ }
+        }
+        return null;
+    }
+}
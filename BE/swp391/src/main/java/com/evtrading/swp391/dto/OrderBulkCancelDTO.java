@@ -0,0 +1,16 @@
+package com.evtrading.swp391.dto;
+
+import java.util.List;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+
+public class OrderBulkCancelDTO {
+    @NotEmpty(message = "Order IDs cannot be empty")
+    @Size(max = 50000, message = "At most 50000 orders per request")
+    private List<Integer> orderIds;
+
+    // Getters and Setters
+    public List<Integer> getOrderIds() { return orderIds; }
+    public void setOrderIds(List<Integer> orderIds) { this.orderIds = orderIds; }
+}
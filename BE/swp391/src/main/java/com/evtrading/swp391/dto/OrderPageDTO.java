@@ -0,0 +1,26 @@
+package com.evtrading.swp391.dto;
+
+import java.util.List;
+
+/**
+ * Một trang lịch sử đơn hàng. {@code nextCursor} là null khi đã hết dữ liệu;
+ * client gửi lại giá trị này trong tham số {@code cursor} để lấy trang kế tiếp.
+ */
+public class OrderPageDTO {
+    private List<OrderResponseDTO> items;
+    private String nextCursor;
+
+    public OrderPageDTO() {
+    }
+
+    public OrderPageDTO(List<OrderResponseDTO> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    // Getters and Setters
+    public List<OrderResponseDTO> getItems() { return items; }
+    public void setItems(List<OrderResponseDTO> items) { this.items = items; }
+    public String getNextCursor() { return nextCursor; }
+    public void setNextCursor(String nextCursor) { this.nextCursor = nextCursor; }
+}
@@ -3,6 +3,8 @@ package com.evtrading.swp391.dto;
 import java.math.BigDecimal;
 import java.util.Date;
 
+import com.evtrading.swp391.util.Money;
+
 public class OrderResponseDTO {
     private Integer orderId;
     private Integer buyerId;
@@ -14,6 +16,27 @@ public class OrderResponseDTO {
     private String status;
     private Integer transactionId;
     private Date createdAt;
+    private Date dueTime;
+
+    public OrderResponseDTO() {
+    }
+
+    // Dùng cho truy vấn projection "select new" trong OrderRepository (cột tiền đã qua MoneyConverter)
+    public OrderResponseDTO(Integer orderId, Integer buyerId, Integer sellerId, Integer listingId,
+                            Integer quantity, Money price, Money totalAmount, String status,
+                            Integer transactionId, Date createdAt, Date dueTime) {
+        this.orderId = orderId;
+        this.buyerId = buyerId;
+        this.sellerId = sellerId;
+        this.listingId = listingId;
+        this.quantity = quantity;
+        this.price = price == null ? null : price.toBigDecimal();
+        this.totalAmount = totalAmount == null ? null : totalAmount.toBigDecimal();
+        this.status = status;
+        this.transactionId = transactionId;
+        this.createdAt = createdAt;
+        this.dueTime = dueTime;
+    }
 
     // Getters and Setters
     public Integer getOrderId() { return orderId; }
@@ -36,4 +59,6 @@ public class OrderResponseDTO {
     public void setTransactionId(Integer transactionId) { this.transactionId = transactionId; }
     public Date getCreatedAt() { return createdAt; }
     public void setCreatedAt(Date createdAt) { this.createdAt = createdAt; }
+    public Date getDueTime() { return dueTime; }
+    public void setDueTime(Date dueTime) { this.dueTime = dueTime; }
 }
\ No newline at end of file
@@ -0,0 +1,31 @@
+package com.evtrading.swp391.dto;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Một trang hộp đơn của người bán kèm số đơn theo từng status trong cùng khoảng ngày.
+ * {@code nextCursor} là null khi đã hết dữ liệu.
+ */
+public class SellerOrderInboxDTO {
+    private List<OrderResponseDTO> items;
+    private String nextCursor;
+    private Map<String, Long> statusCounts;
+
+    public SellerOrderInboxDTO() {
+    }
+
+    public SellerOrderInboxDTO(List<OrderResponseDTO> items, String nextCursor, Map<String, Long> statusCounts) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+        this.statusCounts = statusCounts;
+    }
+
+    // Getters and Setters
+    public List<OrderResponseDTO> getItems() { return items; }
+    public void setItems(List<OrderResponseDTO> items) { this.items = items; }
+    public String getNextCursor() { return nextCursor; }
+    public void setNextCursor(String nextCursor) { this.nextCursor = nextCursor; }
+    public Map<String, Long> getStatusCounts() { return statusCounts; }
+    public void setStatusCounts(Map<String, Long> statusCounts) { this.statusCounts = statusCounts; }
+}
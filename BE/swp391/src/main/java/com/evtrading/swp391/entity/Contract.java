@@ -4,6 +4,10 @@ import jakarta.persistence.*;
 import java.util.Date;
 
 @Entity
+@Table(indexes = {
+        @Index(name = "ix_contract_archive_due", columnList = "status, archiveSha256, archiveRetryAt"),
+        @Index(name = "ix_contract_send_due", columnList = "status, sendRequestedAt")
+})
 public class Contract {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -17,6 +21,7 @@ public class Contract {
     private String content;
 
     private String docusealTemplateID;
+    // Unique khi khác NULL: filtered index ux_contract_docuseal_envelope (xem ContractParticipantBackfill)
     private String docusealEnvelopeID;
     private String sellerEmail;
     private String sellerName;
@@ -34,6 +39,28 @@ public class Contract {
     private Date createAt;
     private Date updateAt;
 
+    // Thời điểm (theo DocuSeal) của sự kiện webhook mới nhất đã áp dụng, theo từng bên và cho cả envelope
+    private Date sellerEventAt;
+    private Date buyerEventAt;
+    private Date envelopeEventAt;
+
+    // Lần yêu cầu gửi gần nhất; kết quả gửi bất đồng bộ chỉ được ghi nếu vẫn khớp (chưa bị gửi lại)
+    private Date sendRequestedAt;
+
+    // Dữ liệu gửi DocuSeal (JSON variables/metadata) giữ tới khi gửi thành công, để gửi lại sau restart
+    @Column(columnDefinition = "NVARCHAR(MAX)")
+    private String sendPayload;
+    private Integer sendAttempts;
+    private Date sendRetryAt;
+
+    // Bản PDF đã ký lưu cục bộ (ContractDocumentStore); null khi chưa lưu xong
+    @Column(length = 64)
+    private String archiveSha256;
+    private Long archiveSize;
+    private Date archivedAt;
+    private Integer archiveAttempts;
+    private Date archiveRetryAt;
+
     // Getters and Setters
     public Integer getContractID() { return contractID; }
     public void setContractID(Integer contractID) { this.contractID = contractID; }
@@ -75,5 +102,29 @@ public class Contract {
     public void setCreateAt(Date createAt) { this.createAt = createAt; }
     public Date getUpdateAt() { return updateAt; }
     public void setUpdateAt(Date updateAt) { this.updateAt = updateAt; }
+    public Date getSellerEventAt() { return sellerEventAt; }
+    public void setSellerEventAt(Date sellerEventAt) { this.sellerEventAt = sellerEventAt; }
+    public Date getBuyerEventAt() { return buyerEventAt; }
+    public void setBuyerEventAt(Date buyerEventAt) { this.buyerEventAt = buyerEventAt; }
+    public Date getEnvelopeEventAt() { return envelopeEventAt; }
+    public void setEnvelopeEventAt(Date envelopeEventAt) { this.envelopeEventAt = envelopeEventAt; }
+    public Date getSendRequestedAt() { return sendRequestedAt; }
+    public void setSendRequestedAt(Date sendRequestedAt) { this.sendRequestedAt = sendRequestedAt; }
+    public String getSendPayload() { return sendPayload; }
+    public void setSendPayload(String sendPayload) { this.sendPayload = sendPayload; }
+    public Integer getSendAttempts() { return sendAttempts; }
+    public void setSendAttempts(Integer sendAttempts) { this.sendAttempts = sendAttempts; }
+    public Date getSendRetryAt() { return sendRetryAt; }
+    public void setSendRetryAt(Date sendRetryAt) { this.sendRetryAt = sendRetryAt; }
+    public String getArchiveSha256() { return archiveSha256; }
+    public void setArchiveSha256(String archiveSha256) { this.archiveSha256 = archiveSha256; }
+    public Long getArchiveSize() { return archiveSize; }
+    public void setArchiveSize(Long archiveSize) { this.archiveSize = archiveSize; }
+    public Date getArchivedAt() { return archivedAt; }
+    public void setArchivedAt(Date archivedAt) { this.archivedAt = archivedAt; }
+    public Integer getArchiveAttempts() { return archiveAttempts; }
+    public void setArchiveAttempts(Integer archiveAttempts) { this.archiveAttempts = archiveAttempts; }
+    public Date getArchiveRetryAt() { return archiveRetryAt; }
+    public void setArchiveRetryAt(Date archiveRetryAt) { this.archiveRetryAt = archiveRetryAt; }
     
 }
\ No newline at end of file
@@ -0,0 +1,53 @@
+package com.evtrading.swp391.entity;
+
+import jakarta.persistence.*;
+import java.util.Date;
+
+/**
+ * Chỉ mục người ký của hợp đồng, dùng khi webhook DocuSeal chỉ có email (không có submission id).
+ * Email được lưu dạng chuẩn hóa (trim + lowercase); index (email, sentAt, contractID) cho phép tìm
+ * hợp đồng gửi gần nhất của một email bằng một lần seek.
+ */
+@Entity
+@Table(name = "contract_participant", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_contract_participant_role", columnNames = {"contractID", "role"})
+}, indexes = {
+        @Index(name = "ix_contract_participant_email", columnList = "email, sentAt, contractID")
+})
+public class ContractParticipant {
+    public static final String SELLER = "SELLER";
+    public static final String BUYER = "BUYER";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "contractID", nullable = false)
+    private Contract contract;
+
+    @Column(nullable = false, length = 254)
+    private String email;
+
+    @Column(nullable = false, length = 10)
+    private String role;
+
+    // Lần gửi hợp đồng gần nhất; thay cho updateAt của Contract khi chọn hợp đồng mới nhất
+    private Date sentAt;
+
+    public static String normalizeEmail(String email) {
+        return email == null ? null : email.trim().toLowerCase();
+    }
+
+    // Getters and Setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+    public Contract getContract() { return contract; }
+    public void setContract(Contract contract) { this.contract = contract; }
+    public String getEmail() { return email; }
+    public void setEmail(String email) { this.email = email; }
+    public String getRole() { return role; }
+    public void setRole(String role) { this.role = role; }
+    public Date getSentAt() { return sentAt; }
+    public void setSentAt(Date sentAt) { this.sentAt = sentAt; }
+}
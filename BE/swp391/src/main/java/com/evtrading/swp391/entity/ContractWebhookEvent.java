@@ -0,0 +1,71 @@
+package com.evtrading.swp391.entity;
+
+import jakarta.persistence.*;
+import java.util.Date;
+
+/**
+ * Inbox webhook DocuSeal. Payload được ghi nguyên văn rồi trả 200 ngay; ContractWebhookService xử lý sau.
+ * {@code envelopeKey} (submission id, hoặc email khi thiếu id) quyết định thứ tự: các sự kiện cùng key
+ * được xử lý tuần tự theo id. {@code payloadHash} (SHA-256 của payload) chặn lưu trùng khi DocuSeal gửi lại.
+ */
+@Entity
+@Table(name = "contract_webhook_inbox", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_contract_webhook_hash", columnNames = "payloadHash")
+}, indexes = {
+        @Index(name = "ix_contract_webhook_state_next", columnList = "state, nextAttemptAt, id"),
+        @Index(name = "ix_contract_webhook_key_state", columnList = "envelopeKey, state, id")
+})
+public class ContractWebhookEvent {
+    public static final String NEW = "NEW";
+    public static final String DONE = "DONE";
+    public static final String DEAD = "DEAD";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(length = 150)
+    private String envelopeKey;
+
+    @Column(length = 64)
+    private String payloadHash;
+
+    @Column(columnDefinition = "NVARCHAR(MAX)")
+    private String payload;
+
+    @Column(nullable = false, length = 10)
+    private String state = NEW;
+
+    private int attempts;
+
+    @Column(nullable = false)
+    private Date nextAttemptAt;
+
+    @Column(length = 500)
+    private String lastError;
+
+    private Date receivedAt;
+    private Date processedAt;
+
+    // Getters and Setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+    public String getEnvelopeKey() { return envelopeKey; }
+    public void setEnvelopeKey(String envelopeKey) { this.envelopeKey = envelopeKey; }
+    public String getPayloadHash() { return payloadHash; }
+    public void setPayloadHash(String payloadHash) { this.payloadHash = payloadHash; }
+    public String getPayload() { return payload; }
+    public void setPayload(String payload) { this.payload = payload; }
+    public String getState() { return state; }
+    public void setState(String state) { this.state = state; }
+    public int getAttempts() { return attempts; }
+    public void setAttempts(int attempts) { this.attempts = attempts; }
+    public Date getNextAttemptAt() { return nextAttemptAt; }
+    public void setNextAttemptAt(Date nextAttemptAt) { this.nextAttemptAt = nextAttemptAt; }
+    public String getLastError() { return lastError; }
+    public void setLastError(String lastError) { this.lastError = lastError; }
+    public Date getReceivedAt() { return receivedAt; }
+    public void setReceivedAt(Date receivedAt) { this.receivedAt = receivedAt; }
+    public Date getProcessedAt() { return processedAt; }
+    public void setProcessedAt(Date processedAt) { this.processedAt = processedAt; }
+}
@@ -0,0 +1,67 @@
+package com.evtrading.swp391.entity;
+
+import jakarta.persistence.*;
+import java.util.Date;
+
+/**
+ * Kết quả đã lưu của một request POST có header Idempotency-Key.
+ * Khóa duy nhất theo (username, scope, idemKey) để hai người dùng có thể trùng key mà không ảnh hưởng nhau.
+ */
+@Entity
+@Table(name = "idempotency_keys",
+       uniqueConstraints = @UniqueConstraint(name = "uk_idempotency_keys_user_scope_key",
+                                             columnNames = {"username", "scope", "idemKey"}),
+       indexes = @Index(name = "ix_idempotency_keys_expires", columnList = "expiresAt"))
+public class IdempotencyRecord {
+    public static final String IN_PROGRESS = "IN_PROGRESS";
+    public static final String COMPLETED = "COMPLETED";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, length = 50)
+    private String username;
+
+    @Column(nullable = false, length = 30)
+    private String scope;                      // orders | payments
+
+    @Column(nullable = false, length = 100)
+    private String idemKey;
+
+    @Column(nullable = false, length = 64)
+    private String fingerprint;                // SHA-256 (hex) của request body
+
+    @Column(nullable = false, length = 20)
+    private String state;
+
+    private Integer responseStatus;
+
+    @Column(columnDefinition = "NVARCHAR(MAX)")
+    private String responseBody;
+
+    private Date createdAt;
+    private Date expiresAt;
+
+    // Getters and Setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+    public String getUsername() { return username; }
+    public void setUsername(String username) { this.username = username; }
+    public String getScope() { return scope; }
+    public void setScope(String scope) { this.scope = scope; }
+    public String getIdemKey() { return idemKey; }
+    public void setIdemKey(String idemKey) { this.idemKey = idemKey; }
+    public String getFingerprint() { return fingerprint; }
+    public void setFingerprint(String fingerprint) { this.fingerprint = fingerprint; }
+    public String getState() { return state; }
+    public void setState(String state) { this.state = state; }
+    public Integer getResponseStatus() { return responseStatus; }
+    public void setResponseStatus(Integer responseStatus) { this.responseStatus = responseStatus; }
+    public String getResponseBody() { return responseBody; }
+    public void setResponseBody(String responseBody) { this.responseBody = responseBody; }
+    public Date getCreatedAt() { return createdAt; }
+    public void setCreatedAt(Date createdAt) { this.createdAt = createdAt; }
+    public Date getExpiresAt() { return expiresAt; }
+    public void setExpiresAt(Date expiresAt) { this.expiresAt = expiresAt; }
+}
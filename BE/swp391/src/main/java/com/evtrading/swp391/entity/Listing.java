@@ -1,7 +1,7 @@
 package com.evtrading.swp391.entity;
 
 import jakarta.persistence.*;
-import java.math.BigDecimal;
+import com.evtrading.swp391.util.Money;
 import java.util.Date;
 
 @Entity
@@ -41,7 +41,7 @@ public class Listing {
     private String description;
 
     @Column(nullable = false)
-    private BigDecimal price;
+    private Money price;
 
     private String status;
     private Date createdAt;
@@ -55,6 +55,11 @@ public class Listing {
     @Column(columnDefinition = "NVARCHAR(MAX)")
     private String rejectionReason;
 
+    // Optimistic locking: mọi thay đổi trạng thái (kể cả UPDATE có điều kiện khi đặt mua) đều tăng version
+    @Version
+    @Column(nullable = false, columnDefinition = "INT NOT NULL DEFAULT 0")
+    private Integer version = 0;
+
     // Getters and Setters
     public Integer getListingID() { return listingID; }
     public void setListingID(Integer listingID) { this.listingID = listingID;}
@@ -72,8 +77,8 @@ public class Listing {
     public void setTitle(String title) { this.title = title; }
     public String getDescription() { return description; }
     public void setDescription(String description) { this.description = description; }
-    public BigDecimal getPrice() { return price; }
-    public void setPrice(BigDecimal price) { this.price = price; }
+    public Money getPrice() { return price; }
+    public void setPrice(Money price) { this.price = price; }
     public String getStatus() { return status; }
     public void setStatus(String status) { this.status = status; }
     public Date getCreatedAt() { return createdAt; }
@@ -92,5 +97,7 @@ public class Listing {
     }
     public Double getAverageRating() { return averageRating; }
     public void setAverageRating(Double averageRating) { this.averageRating = averageRating; }
+    public Integer getVersion() { return version; }
+    public void setVersion(Integer version) { this.version = version; }
     
 }
\ No newline at end of file
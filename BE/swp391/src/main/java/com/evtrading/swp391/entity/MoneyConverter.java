@@ -0,0 +1,25 @@
+package com.evtrading.swp391.entity;
+
+import com.evtrading.swp391.util.Money;
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+import java.math.BigDecimal;
+
+/**
+ * Ánh xạ {@link Money} sang cột decimal sẵn có, nên không cần đổi schema.
+ * Các cột tiền hiện chỉ chứa một loại tiền ({@link Money#DEFAULT_CURRENCY}), không lưu mã tiền tệ.
+ */
+@Converter(autoApply = true)
+public class MoneyConverter implements AttributeConverter<Money, BigDecimal> {
+
+    @Override
+    public BigDecimal convertToDatabaseColumn(Money money) {
+        return money == null ? null : money.toBigDecimal();
+    }
+
+    @Override
+    public Money convertToEntityAttribute(BigDecimal value) {
+        return Money.of(value);
+    }
+}
@@ -1,11 +1,16 @@
 package com.evtrading.swp391.entity;
 
 import jakarta.persistence.*;
-import java.math.BigDecimal;
+import com.evtrading.swp391.util.Money;
 import java.util.Date;
 
 @Entity
-@Table(name = "orders")
+@Table(name = "orders", indexes = {
+        // Lịch sử đơn của người mua, phân trang keyset theo (createdAt, orderID)
+        @Index(name = "ix_orders_buyer_created", columnList = "buyerID, createdAt, orderID"),
+        // Hộp đơn của người bán: lọc theo status + khoảng ngày, đếm theo status
+        @Index(name = "ix_orders_seller_status_created", columnList = "sellerID, status, createdAt, orderID")
+})
 public class Order {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -19,10 +24,16 @@ public class Order {
     @JoinColumn(name = "listingID", nullable = false)
     private Listing listing;
 
+    // Chủ listing tại thời điểm đặt hàng, lưu trùng để truy vấn phía người bán không phải join qua listing.
+    // Đơn cũ được OrderSellerBackfill điền khi khởi động.
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "sellerID")
+    private User seller;
+
     private Integer quantity;
-    private BigDecimal price;
+    private Money price;
     private String status;
-    private BigDecimal totalAmount;
+    private Money totalAmount;
     private Date createdAt;
 
     // Getters and Setters
@@ -32,14 +43,16 @@ public class Order {
     public void setBuyer(User buyer) { this.buyer = buyer; }
     public Listing getListing() { return listing; }
     public void setListing(Listing listing) { this.listing = listing; }
+    public User getSeller() { return seller; }
+    public void setSeller(User seller) { this.seller = seller; }
     public Integer getQuantity() { return quantity; }
     public void setQuantity(Integer quantity) { this.quantity = quantity; }
-    public BigDecimal getPrice() { return price; }
-    public void setPrice(BigDecimal price) { this.price = price; }
+    public Money getPrice() { return price; }
+    public void setPrice(Money price) { this.price = price; }
     public String getStatus() { return status; }
     public void setStatus(String status) { this.status = status; }
-    public BigDecimal getTotalAmount() { return totalAmount; }
-    public void setTotalAmount(BigDecimal totalAmount) { this.totalAmount = totalAmount; }
+    public Money getTotalAmount() { return totalAmount; }
+    public void setTotalAmount(Money totalAmount) { this.totalAmount = totalAmount; }
     public Date getCreatedAt() { return createdAt; }
     public void setCreatedAt(Date createdAt) { this.createdAt = createdAt; }
 }
\ No newline at end of file
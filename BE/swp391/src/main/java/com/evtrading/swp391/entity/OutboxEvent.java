@@ -0,0 +1,56 @@
+package com.evtrading.swp391.entity;
+
+import jakarta.persistence.*;
+import java.util.Date;
+
+/**
+ * Sự kiện domain được ghi cùng transaction với thay đổi trạng thái (transactional outbox).
+ * OutboxRelay đọc các dòng chưa publish theo thứ tự id và phát cho subscriber.
+ */
+@Entity
+@Table(name = "outbox_events",
+       indexes = @Index(name = "ix_outbox_events_unpublished", columnList = "publishedAt, id"))
+public class OutboxEvent {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, length = 30)
+    private String aggregateType;              // ORDER | LISTING | TRANSACTION ...
+
+    @Column(nullable = false, length = 50)
+    private String aggregateId;
+
+    @Column(nullable = false, length = 50)
+    private String eventType;
+
+    @Column(columnDefinition = "NVARCHAR(MAX)")
+    private String payload;                    // JSON
+
+    private Date createdAt;
+    private Date publishedAt;                  // null = chưa phát
+    private int attempts;
+
+    @Column(length = 500)
+    private String lastError;
+
+    // Getters and Setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+    public String getAggregateType() { return aggregateType; }
+    public void setAggregateType(String aggregateType) { this.aggregateType = aggregateType; }
+    public String getAggregateId() { return aggregateId; }
+    public void setAggregateId(String aggregateId) { this.aggregateId = aggregateId; }
+    public String getEventType() { return eventType; }
+    public void setEventType(String eventType) { this.eventType = eventType; }
+    public String getPayload() { return payload; }
+    public void setPayload(String payload) { this.payload = payload; }
+    public Date getCreatedAt() { return createdAt; }
+    public void setCreatedAt(Date createdAt) { this.createdAt = createdAt; }
+    public Date getPublishedAt() { return publishedAt; }
+    public void setPublishedAt(Date publishedAt) { this.publishedAt = publishedAt; }
+    public int getAttempts() { return attempts; }
+    public void setAttempts(int attempts) { this.attempts = attempts; }
+    public String getLastError() { return lastError; }
+    public void setLastError(String lastError) { this.lastError = lastError; }
+}
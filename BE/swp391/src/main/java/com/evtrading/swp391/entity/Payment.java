@@ -1,10 +1,16 @@
 package com.evtrading.swp391.entity;
 
 import jakarta.persistence.*;
-import java.math.BigDecimal;
+import com.evtrading.swp391.util.Money;
 import java.util.Date;
 
 @Entity
+@Table(indexes = {
+        // Tra payment theo mã tham chiếu khi nhận callback của provider
+        @Index(name = "ix_payment_provider_reference", columnList = "provider, reference"),
+        // Đối soát các payment PENDING bị treo
+        @Index(name = "ix_payment_status_paid_at", columnList = "status, paidAt")
+})
 public class Payment {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -14,19 +20,23 @@ public class Payment {
     @JoinColumn(name = "transactionID", nullable = false)
     private Transaction transaction;
 
-    private BigDecimal amount;
+    private Money amount;
     private String method;
     private String provider;
-    private String status;
-    private Date paidAt;
+    private String status;     // PENDING | SUCCEEDED | FAILED | REJECTED
+    private Date paidAt;       // thời điểm tạo, cập nhật thành thời điểm provider xác nhận
+
+    // Mã tham chiếu gửi sang provider, provider trả lại trong callback
+    @Column(length = 64)
+    private String reference;
 
     // Getters and Setters
     public Integer getPaymentID() { return paymentID; }
     public void setPaymentID(Integer paymentID) { this.paymentID = paymentID; }
     public Transaction getTransaction() { return transaction; }
     public void setTransaction(Transaction transaction) { this.transaction = transaction; }
-    public BigDecimal getAmount() { return amount; }
-    public void setAmount(BigDecimal amount) { this.amount = amount; }
+    public Money getAmount() { return amount; }
+    public void setAmount(Money amount) { this.amount = amount; }
     public String getMethod() { return method; }
     public void setMethod(String method) { this.method = method; }
     public String getProvider() { return provider; }
@@ -35,5 +45,6 @@ public class Payment {
     public void setStatus(String status) { this.status = status; }
     public Date getPaidAt() { return paidAt; }
     public void setPaidAt(Date paidAt) { this.paidAt = paidAt; }
-    
-}
\ No newline at end of file
+    public String getReference() { return reference; }
+    public void setReference(String reference) { this.reference = reference; }
+}
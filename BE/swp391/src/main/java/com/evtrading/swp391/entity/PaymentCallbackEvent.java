@@ -0,0 +1,73 @@
+package com.evtrading.swp391.entity;
+
+import jakarta.persistence.*;
+import java.math.BigDecimal;
+import java.util.Date;
+
+/**
+ * Inbox các callback của payment provider. Callback được ghi ở đây rồi trả 200 ngay;
+ * PaymentCallbackService xử lý theo lô. Khóa duy nhất (provider, eventId) loại bỏ callback gửi lặp.
+ */
+@Entity
+@Table(name = "payment_callback_inbox",
+       uniqueConstraints = @UniqueConstraint(name = "uk_payment_callback_provider_event",
+                                             columnNames = {"provider", "eventId"}),
+       indexes = @Index(name = "ix_payment_callback_state", columnList = "state, id"))
+public class PaymentCallbackEvent {
+    public static final String NEW = "NEW";
+    public static final String DONE = "DONE";
+    public static final String FAILED = "FAILED";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, length = 20)
+    private String provider;
+
+    @Column(nullable = false, length = 100)
+    private String eventId;
+
+    @Column(nullable = false, length = 64)
+    private String reference;
+
+    @Column(nullable = false, length = 20)
+    private String status;
+
+    private BigDecimal amount;
+
+    @Column(nullable = false, length = 20)
+    private String state = NEW;
+
+    private int attempts;
+
+    @Column(length = 500)
+    private String lastError;
+
+    private Date receivedAt;
+    private Date processedAt;
+
+    // Getters and Setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+    public String getProvider() { return provider; }
+    public void setProvider(String provider) { this.provider = provider; }
+    public String getEventId() { return eventId; }
+    public void setEventId(String eventId) { this.eventId = eventId; }
+    public String getReference() { return reference; }
+    public void setReference(String reference) { this.reference = reference; }
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+    public BigDecimal getAmount() { return amount; }
+    public void setAmount(BigDecimal amount) { this.amount = amount; }
+    public String getState() { return state; }
+    public void setState(String state) { this.state = state; }
+    public int getAttempts() { return attempts; }
+    public void setAttempts(int attempts) { this.attempts = attempts; }
+    public String getLastError() { return lastError; }
+    public void setLastError(String lastError) { this.lastError = lastError; }
+    public Date getReceivedAt() { return receivedAt; }
+    public void setReceivedAt(Date receivedAt) { this.receivedAt = receivedAt; }
+    public Date getProcessedAt() { return processedAt; }
+    public void setProcessedAt(Date processedAt) { this.processedAt = processedAt; }
+}
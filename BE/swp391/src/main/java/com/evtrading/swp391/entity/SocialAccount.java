@@ -5,6 +5,7 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.Table;
@@ -14,7 +15,9 @@ import java.util.Date;
 
 @Entity
 @Table(name = "social_accounts",
-       uniqueConstraints = @UniqueConstraint(columnNames = {"provider","provider_user_id"}))
+       uniqueConstraints = @UniqueConstraint(name = "uk_social_accounts_provider_user",
+                                             columnNames = {"provider","provider_user_id"}),
+       indexes = @Index(name = "ix_social_accounts_user", columnList = "user_id"))
 public class SocialAccount {
  @Id @GeneratedValue(strategy = GenerationType.IDENTITY)
   private Integer id;
@@ -1,11 +1,14 @@
 package com.evtrading.swp391.entity;
 
 import jakarta.persistence.*;
-import java.math.BigDecimal;
+import com.evtrading.swp391.util.Money;
 import java.util.Date;
 
 @Entity
-@Table(name = "transactions")
+@Table(name = "transactions", indexes = {
+        // Dùng khi nạp các giao dịch chờ thanh toán vào ReservationExpiryScheduler lúc khởi động
+        @Index(name = "ix_transactions_status_due", columnList = "status, dueTime")
+})
 public class Transaction {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -15,8 +18,8 @@ public class Transaction {
     @JoinColumn(name = "orderID", unique = true)
     private Order order;
 
-    private BigDecimal totalAmount;
-    private BigDecimal paidAmount;
+    private Money totalAmount;
+    private Money paidAmount;
     private Date transactionDate;
     private String status;
     private Date createdAt;
@@ -27,10 +30,10 @@ public class Transaction {
     public void setTransactionID(Integer transactionID) { this.transactionID = transactionID; }
     public Order getOrder() { return order; }
     public void setOrder(Order order) { this.order = order; }
-    public BigDecimal getTotalAmount() { return totalAmount; }
-    public void setTotalAmount(BigDecimal totalAmount) { this.totalAmount = totalAmount;}
-    public BigDecimal getPaidAmount() { return paidAmount; }
-    public void setPaidAmount(BigDecimal paidAmount) { this.paidAmount = paidAmount; }
+    public Money getTotalAmount() { return totalAmount; }
+    public void setTotalAmount(Money totalAmount) { this.totalAmount = totalAmount;}
+    public Money getPaidAmount() { return paidAmount; }
+    public void setPaidAmount(Money paidAmount) { this.paidAmount = paidAmount; }
     public Date getTransactionDate() { return transactionDate; }
     public void setTransactionDate(Date transactionDate) { this.transactionDate = transactionDate; }
     public String getStatus() { return status; }
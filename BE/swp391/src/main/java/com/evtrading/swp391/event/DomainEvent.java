@@ -0,0 +1,29 @@
+package com.evtrading.swp391.event;
+
+import java.util.Date;
+
+/**
+ * Sự kiện đã commit, được OutboxRelay phát cho các {@link DomainEventSubscriber}.
+ * {@code payload} là JSON; {@code id} tăng dần và dùng được làm khóa chống trùng
+ * (giao nhận at-least-once nên subscriber có thể nhận lại cùng một sự kiện).
+ */
+public record DomainEvent(long id, String aggregateType, String aggregateId, String type,
+                          String payload, Date createdAt) {
+
+    public static final String ORDER = "ORDER";
+    public static final String LISTING = "LISTING";
+    public static final String TRANSACTION = "TRANSACTION";
+    public static final String CONTRACT = "CONTRACT";
+
+    public static final String ORDER_CREATED = "ORDER_CREATED";
+    public static final String ORDER_COMPLETED = "ORDER_COMPLETED";
+    public static final String ORDER_CANCELLED = "ORDER_CANCELLED";
+    public static final String LISTING_SOLD = "LISTING_SOLD";
+    public static final String LISTING_RELEASED = "LISTING_RELEASED";
+    public static final String LISTING_APPROVED = "LISTING_APPROVED";
+    public static final String LISTING_REJECTED = "LISTING_REJECTED";
+    public static final String TRANSACTION_FULLY_PAID = "TRANSACTION_FULLY_PAID";
+    public static final String TRANSACTION_REFUND_DUE = "TRANSACTION_REFUND_DUE";
+    public static final String PAYMENT_CREATED = "PAYMENT_CREATED";
+    public static final String CONTRACT_UPDATED = "CONTRACT_UPDATED";
+}
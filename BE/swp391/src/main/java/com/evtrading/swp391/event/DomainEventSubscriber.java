@@ -0,0 +1,10 @@
+package com.evtrading.swp391.event;
+
+/**
+ * Subscriber in-process của outbox. Các sự kiện cùng aggregate được giao theo đúng thứ tự ghi;
+ * ném exception thì sự kiện (và các sự kiện sau của cùng aggregate) được giao lại ở lượt sau.
+ */
+public interface DomainEventSubscriber {
+
+    void onEvent(DomainEvent event);
+}
@@ -0,0 +1,261 @@
+package com.evtrading.swp391.event;
+
+import com.evtrading.swp391.repository.OrderRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Đẩy sự kiện outbox tới người mua/người bán liên quan qua Server-Sent Events.
+ *
+ * Kết nối SSE là async servlet nên kết nối rảnh không giữ luồng nào. Mỗi kết nối có hàng đợi giới hạn
+ * {@code bufferSize}; {@link #onEvent} (luồng OutboxRelay) chỉ đưa vào hàng đợi, không bao giờ chờ mạng.
+ * Việc ghi ra socket chạy trên virtual thread, mỗi kết nối tối đa một luồng ghi tại một thời điểm.
+ * Client đọc chậm làm hàng đợi đầy: các sự kiện cũ bị bỏ và client nhận sự kiện {@code resync} để tải
+ * lại dữ liệu thay vì làm chậm các kết nối khác.
+ */
+@Component
+public class NotificationHub implements DomainEventSubscriber {
+    private static final Logger log = LoggerFactory.getLogger(NotificationHub.class);
+
+    public static final String RESYNC = "resync";
+
+    private final OrderRepository orderRepository;
+    private final ObjectMapper mapper;
+    private final Map<Integer, Set<Connection>> connections = new ConcurrentHashMap<>();
+    private final AtomicInteger connectionCount = new AtomicInteger();
+    private final ExecutorService writers = Executors.newVirtualThreadPerTaskExecutor();
+
+    @Value("${app.notifications.bufferSize:64}")
+    private int bufferSize;
+    @Value("${app.notifications.maxConnections:10000}")
+    private int maxConnections;
+    @Value("${app.notifications.maxConnectionsPerUser:5}")
+    private int maxConnectionsPerUser;
+    @Value("${app.notifications.timeoutMs:1800000}")
+    private long timeoutMs;
+
+    public NotificationHub(OrderRepository orderRepository, ObjectMapper mapper) {
+        this.orderRepository = orderRepository;
+        this.mapper = mapper;
+    }
+
+    /** Mở kết nối cho user; trả null nếu đã vượt giới hạn kết nối. */
+    public SseEmitter subscribe(Integer userId) {
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        Connection connection = new Connection(userId, emitter);
+        // Kiểm tra giới hạn và thêm trong cùng compute: remove() không thể bỏ set giữa hai bước
+        AtomicBoolean accepted = new AtomicBoolean();
+        connections.compute(userId, (k, set) -> {
+            if (set != null && set.size() >= maxConnectionsPerUser) {
+                return set;
+            }
+            if (connectionCount.incrementAndGet() > maxConnections) {
+                connectionCount.decrementAndGet();
+                return set;
+            }
+            Set<Connection> target = set == null ? new CopyOnWriteArraySet<>() : set;
+            target.add(connection);
+            accepted.set(true);
+            return target;
+        });
+        if (!accepted.get()) {
+            return null;
+        }
+        emitter.onCompletion(() -> remove(connection));
+        emitter.onTimeout(() -> remove(connection));
+        emitter.onError(e -> remove(connection));
+        connection.offer(new Message(null, "ready", "{}"));
+        return emitter;
+    }
+
+    @Override
+    public void onEvent(DomainEvent event) {
+        // Lỗi ở đây không được làm OutboxRelay giao lại sự kiện cho các subscriber khác
+        try {
+            Set<Integer> recipients = recipients(event);
+            if (recipients.isEmpty()) {
+                return;
+            }
+            Message message = new Message(String.valueOf(event.id()), event.type(),
+                    event.payload() == null ? "{}" : event.payload());
+            for (Integer userId : recipients) {
+                Set<Connection> targets = connections.get(userId);
+                if (targets != null) {
+                    targets.forEach(c -> c.offer(message));
+                }
+            }
+        } catch (RuntimeException e) {
+            log.warn("Cannot push notification for outbox event {}: {}", event.id(), e.getMessage());
+        }
+    }
+
+    private Set<Integer> recipients(DomainEvent event) {
+        if (connections.isEmpty()) {
+            return Set.of();
+        }
+        JsonNode payload;
+        try {
+            payload = event.payload() == null ? mapper.createObjectNode() : mapper.readTree(event.payload());
+        } catch (IOException e) {
+            return Set.of();
+        }
+        Set<Integer> users = new LinkedHashSet<>();
+        switch (event.type()) {
+            case DomainEvent.LISTING_APPROVED, DomainEvent.LISTING_REJECTED -> addUser(users, payload, "sellerId");
+            case DomainEvent.ORDER_CREATED, DomainEvent.PAYMENT_CREATED -> {
+                addUser(users, payload, "buyerId");
+                addUser(users, payload, "sellerId");
+            }
+            case DomainEvent.ORDER_COMPLETED, DomainEvent.ORDER_CANCELLED, DomainEvent.TRANSACTION_FULLY_PAID,
+                 DomainEvent.TRANSACTION_REFUND_DUE, DomainEvent.CONTRACT_UPDATED -> {
+                // Payload chỉ có orderId: tra người mua/người bán (một query nhỏ trên luồng relay)
+                if (payload.hasNonNull("orderId")) {
+                    for (Object[] row : orderRepository.findParticipantIds(payload.get("orderId").asInt())) {
+                        if (row[0] != null) users.add((Integer) row[0]);
+                        if (row[1] != null) users.add((Integer) row[1]);
+                    }
+                }
+            }
+            default -> { }
+        }
+        users.retainAll(connections.keySet());
+        return users;
+    }
+
+    private static void addUser(Set<Integer> users, JsonNode payload, String field) {
+        if (payload.hasNonNull(field)) {
+            users.add(payload.get(field).asInt());
+        }
+    }
+
+    // Giữ kết nối qua proxy/load balancer và phát hiện client đã ngắt
+    @Scheduled(fixedDelayString = "${app.notifications.heartbeatMs:15000}")
+    public void heartbeat() {
+        connections.values().forEach(set -> set.forEach(Connection::heartbeat));
+    }
+
+    private void remove(Connection connection) {
+        connections.computeIfPresent(connection.userId, (k, set) -> {
+            if (set.remove(connection)) {
+                connectionCount.decrementAndGet();
+            }
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        connections.values().forEach(set -> set.forEach(c -> c.emitter.complete()));
+        writers.shutdown();
+    }
+
+    /**
+     * Sự kiện trong hàng đợi. Không dùng chung SseEventBuilder giữa các kết nối: build() của nó thay đổi
+     * chính builder nên mỗi lần gửi phải tạo builder mới.
+     */
+    private record Message(String id, String name, String data) {
+        static final Message PING = new Message(null, null, null);
+
+        SseEmitter.SseEventBuilder toEvent() {
+            if (this == PING) {
+                return SseEmitter.event().comment("ping");
+            }
+            SseEmitter.SseEventBuilder event = SseEmitter.event();
+            if (id != null) {
+                event.id(id);
+            }
+            return event.name(name).data(data);
+        }
+    }
+
+    private final class Connection {
+        final Integer userId;
+        final SseEmitter emitter;
+        private final ArrayDeque<Message> queue = new ArrayDeque<>();
+        private boolean writing;
+        private boolean overflowed;
+
+        Connection(Integer userId, SseEmitter emitter) {
+            this.userId = userId;
+            this.emitter = emitter;
+        }
+
+        void offer(Message message) {
+            synchronized (this) {
+                if (queue.size() >= bufferSize) {
+                    queue.pollFirst();
+                    overflowed = true;
+                }
+                queue.addLast(message);
+                if (writing) {
+                    return;
+                }
+                writing = true;
+            }
+            writers.execute(this::drain);
+        }
+
+        void heartbeat() {
+            synchronized (this) {
+                if (!queue.isEmpty()) {
+                    return;
+                }
+            }
+            offer(Message.PING);
+        }
+
+        private void drain() {
+            while (true) {
+                List<Message> batch;
+                boolean resync;
+                synchronized (this) {
+                    if (queue.isEmpty()) {
+                        writing = false;
+                        return;
+                    }
+                    batch = List.copyOf(queue);
+                    queue.clear();
+                    resync = overflowed;
+                    overflowed = false;
+                }
+                try {
+                    if (resync) {
+                        emitter.send(SseEmitter.event().name(RESYNC).data("{}"));
+                    }
+                    for (Message message : batch) {
+                        emitter.send(message.toEvent());
+                    }
+                } catch (IOException | IllegalStateException e) {
+                    // Client đã ngắt; onError/onCompletion sẽ gỡ kết nối
+                    synchronized (this) {
+                        queue.clear();
+                        writing = false;
+                    }
+                    emitter.completeWithError(e);
+                    remove(this);
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.evtrading.swp391.event;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Ghi mọi sự kiện outbox ra file NDJSON (mỗi dòng một sự kiện) khi đặt {@code app.outbox.file.path}.
+ * Dùng cho công cụ ngoài tiến trình (tail, log shipper). Giao nhận at-least-once nên file có thể có dòng
+ * trùng id; bên đọc tự loại theo id.
+ */
+@Component
+@ConditionalOnProperty(name = "app.outbox.file.path")
+public class OutboxFileSink implements DomainEventSubscriber {
+
+    private final ObjectMapper mapper;
+    private final BufferedWriter writer;
+    // Không dùng synchronized: ghi file trong monitor sẽ ghim virtual thread của scheduler vào carrier thread
+    private final ReentrantLock lock = new ReentrantLock();
+
+    public OutboxFileSink(ObjectMapper mapper, @Value("${app.outbox.file.path}") String path) throws IOException {
+        this.mapper = mapper;
+        Path file = Path.of(path);
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    @Override
+    public void onEvent(DomainEvent event) {
+        lock.lock();
+        try {
+            ObjectNode line = mapper.createObjectNode();
+            line.put("id", event.id());
+            line.put("aggregateType", event.aggregateType());
+            line.put("aggregateId", event.aggregateId());
+            line.put("type", event.type());
+            line.put("createdAt", event.createdAt() == null ? null : event.createdAt().toInstant().toString());
+            line.set("payload", event.payload() == null ? null : mapper.readTree(event.payload()));
+            writer.write(mapper.writeValueAsString(line));
+            writer.newLine();
+            writer.flush();
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot write outbox event " + event.id(), e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @PreDestroy
+    void close() throws IOException {
+        lock.lock();
+        try {
+            writer.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
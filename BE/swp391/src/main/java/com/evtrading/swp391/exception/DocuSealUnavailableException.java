@@ -0,0 +1,16 @@
+package com.evtrading.swp391.exception;
+
+/**
+ * DocuSeal tạm thời không khả dụng: hết số lần thử lại, timeout hoặc circuit breaker đang mở.
+ * Khác với lỗi 4xx (dữ liệu gửi sai), gửi lại sau có thể thành công.
+ */
+public class DocuSealUnavailableException extends RuntimeException {
+
+    public DocuSealUnavailableException(String message) {
+        super(message);
+    }
+
+    public DocuSealUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,25 @@
+package com.evtrading.swp391.exception;
+
+/**
+ * Xung đột khi đặt mua/thanh toán đồng thời (listing đã được người khác giữ chỗ, giao dịch đã đổi trạng thái...).
+ * Controller trả về 409 Conflict để client biết cần tải lại dữ liệu thay vì gửi lại y nguyên.
+ * {@code retryable} = xung đột tạm thời (hết số lần thử lại khi DB đang tranh chấp): gửi lại y nguyên sau
+ * một lúc có thể thành công, nên kết quả này không được lưu làm response idempotent.
+ */
+public class OrderConflictException extends RuntimeException {
+
+    private final boolean retryable;
+
+    public OrderConflictException(String message) {
+        this(message, false);
+    }
+
+    public OrderConflictException(String message, boolean retryable) {
+        super(message);
+        this.retryable = retryable;
+    }
+
+    public boolean isRetryable() {
+        return retryable;
+    }
+}
@@ -26,7 +26,7 @@ public class ListingMapper {
         dto.setTitle(listing.getTitle());
         dto.setDescription(listing.getDescription());
         dto.setStatus(listing.getStatus());
-        dto.setPrice(listing.getPrice());
+        dto.setPrice(listing.getPrice() == null ? null : listing.getPrice().toBigDecimal());
         dto.setCreatedAt(listing.getCreatedAt());
         dto.setStartDate(listing.getStartDate());
         dto.setExpiryDate(listing.getExpiryDate());
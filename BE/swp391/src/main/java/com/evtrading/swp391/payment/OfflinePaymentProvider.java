@@ -0,0 +1,55 @@
+package com.evtrading.swp391.payment;
+
+import com.evtrading.swp391.service.PaymentCallbackService;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Thanh toán ngoài hệ thống (chuyển khoản, tiền mặt): khoản thanh toán được ghi nhận ngay khi người mua
+ * tạo, như luồng ban đầu trước khi có cổng thanh toán. Chạy ở mọi profile để tạo payment không phụ thuộc
+ * bộ giả lập; tắt bằng {@code app.payment.offline.enabled=false}.
+ *
+ * Kết quả được ghi thẳng vào inbox (không qua HTTP), nên {@link #parseCallback} từ chối mọi callback:
+ * endpoint callback public không dùng được để xác nhận payment OFFLINE.
+ */
+@Component
+@ConditionalOnProperty(name = "app.payment.offline.enabled", havingValue = "true", matchIfMissing = true)
+public class OfflinePaymentProvider implements PaymentProvider {
+
+    public static final String NAME = "OFFLINE";
+
+    private final ObjectProvider<PaymentCallbackService> callbackService;
+
+    public OfflinePaymentProvider(ObjectProvider<PaymentCallbackService> callbackService) {
+        this.callbackService = callbackService;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public void initiate(PaymentInitiation initiation) {
+        // Nếu ghi inbox lỗi, PaymentReconciler gọi query() và ghi lại cùng eventId
+        callbackService.getObject().enqueue(NAME, confirmed(initiation.reference()));
+    }
+
+    @Override
+    public PaymentCallback parseCallback(Map<String, String> headers, String body) {
+        throw new IllegalArgumentException("Offline payments do not accept provider callbacks");
+    }
+
+    @Override
+    public PaymentCallback query(String reference) {
+        return confirmed(reference);
+    }
+
+    // eventId cố định theo reference để inbox bỏ bản ghi trùng; amount null: số tiền lấy từ Payment
+    private static PaymentCallback confirmed(String reference) {
+        return new PaymentCallback("offline-" + reference, reference, PaymentCallback.SUCCEEDED, null);
+    }
+}
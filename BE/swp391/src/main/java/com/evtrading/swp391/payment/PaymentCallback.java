@@ -0,0 +1,16 @@
+package com.evtrading.swp391.payment;
+
+import java.math.BigDecimal;
+
+/**
+ * Kết quả thanh toán do provider báo về.
+ *
+ * @param eventId   id duy nhất của callback phía provider, dùng để bỏ callback gửi lặp
+ * @param reference mã tham chiếu của Payment
+ * @param status    {@link #SUCCEEDED}, {@link #FAILED} hoặc {@link #PENDING} (chỉ khi đối soát)
+ */
+public record PaymentCallback(String eventId, String reference, String status, BigDecimal amount) {
+    public static final String SUCCEEDED = "SUCCEEDED";
+    public static final String FAILED = "FAILED";
+    public static final String PENDING = "PENDING";
+}
@@ -0,0 +1,7 @@
+package com.evtrading.swp391.payment;
+
+import java.math.BigDecimal;
+
+/** Yêu cầu thu tiền gửi sang provider; {@code reference} là mã tham chiếu do hệ thống sinh. */
+public record PaymentInitiation(String reference, BigDecimal amount, String method) {
+}
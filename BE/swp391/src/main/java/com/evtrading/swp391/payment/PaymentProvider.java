@@ -0,0 +1,28 @@
+package com.evtrading.swp391.payment;
+
+import java.util.Map;
+
+/**
+ * Cổng thanh toán bên ngoài (VNPay, MoMo, ... hoặc bộ giả lập local).
+ *
+ * Luồng: {@link #initiate} được gọi sau khi Payment PENDING đã commit; provider xác nhận kết quả
+ * bất đồng bộ qua callback HTTP, được {@link #parseCallback} xác thực và chuyển thành
+ * {@link PaymentCallback}. {@link #query} dùng cho đối soát các payment bị treo.
+ */
+public interface PaymentProvider {
+
+    /** Tên provider, khớp với Payment.provider và path /api/payments/callback/{provider}. */
+    String name();
+
+    void initiate(PaymentInitiation initiation);
+
+    /**
+     * Xác thực chữ ký và đọc callback. Tên header trong {@code headers} đã được chuyển về chữ thường.
+     *
+     * @throws IllegalArgumentException nếu chữ ký sai hoặc body không hợp lệ
+     */
+    PaymentCallback parseCallback(Map<String, String> headers, String body);
+
+    /** Trạng thái hiện tại của payment phía provider, dùng cho đối soát. */
+    PaymentCallback query(String reference);
+}
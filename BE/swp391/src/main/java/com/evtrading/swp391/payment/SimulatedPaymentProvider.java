@@ -0,0 +1,159 @@
+package com.evtrading.swp391.payment;
+
+import com.evtrading.swp391.service.PaymentCallbackService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Provider giả lập cho môi trường local / demo.
+ *
+ * Sau {@code app.payment.simulator.delayMs} ms, gửi callback đã ký HMAC-SHA256 vào
+ * {@link PaymentCallbackService} — đi qua đúng đường xác thực + inbox như callback HTTP thật.
+ * Tỉ lệ thất bại chỉnh bằng {@code app.payment.simulator.failureRate} (0..1).
+ *
+ * Endpoint callback là public, nên ai biết {@code reference} và secret đều giả được callback SUCCEEDED:
+ * bộ giả lập chỉ chạy với profile {@code local}/{@code dev} (tắt được bằng
+ * {@code app.payment.simulator.enabled=false}) và bắt buộc cấu hình {@code app.payment.simulator.secret}.
+ */
+@Component
+@Profile({"local", "dev"})
+@ConditionalOnProperty(name = "app.payment.simulator.enabled", havingValue = "true", matchIfMissing = true)
+public class SimulatedPaymentProvider implements PaymentProvider {
+    private static final Logger log = LoggerFactory.getLogger(SimulatedPaymentProvider.class);
+
+    public static final String NAME = "SIMULATOR";
+    static final String SIGNATURE_HEADER = "x-simulator-signature";
+
+    private static final int MIN_SECRET_LENGTH = 16;
+
+    /** Giới hạn số kết quả giữ lại cho query(); chỉ là bộ giả lập nên bỏ hết khi đầy. */
+    private static final int MAX_REMEMBERED = 100_000;
+
+    private final ObjectProvider<PaymentCallbackService> callbackService;
+    private final ObjectMapper mapper;
+    private final Map<String, PaymentCallback> results = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "payment-simulator");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Không có giá trị mặc định: secret cố định trong code thì ai cũng ký được callback
+    @Value("${app.payment.simulator.secret:}")
+    private String secret;
+
+    @Value("${app.payment.simulator.delayMs:1500}")
+    private long delayMs;
+
+    @Value("${app.payment.simulator.failureRate:0}")
+    private double failureRate;
+
+    public SimulatedPaymentProvider(ObjectProvider<PaymentCallbackService> callbackService, ObjectMapper mapper) {
+        this.callbackService = callbackService;
+        this.mapper = mapper;
+    }
+
+    @PostConstruct
+    void checkSecret() {
+        if (secret == null || secret.length() < MIN_SECRET_LENGTH) {
+            throw new IllegalStateException("app.payment.simulator.secret must be set (at least "
+                    + MIN_SECRET_LENGTH + " characters) when the payment simulator is enabled");
+        }
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public void initiate(PaymentInitiation initiation) {
+        if (results.size() >= MAX_REMEMBERED) {
+            results.clear();
+        }
+        results.put(initiation.reference(),
+                new PaymentCallback(null, initiation.reference(), PaymentCallback.PENDING, initiation.amount()));
+        String status = ThreadLocalRandom.current().nextDouble() < failureRate
+                ? PaymentCallback.FAILED : PaymentCallback.SUCCEEDED;
+        PaymentCallback outcome = new PaymentCallback(UUID.randomUUID().toString(), initiation.reference(),
+                status, initiation.amount());
+        scheduler.schedule(() -> deliver(outcome), delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void deliver(PaymentCallback outcome) {
+        try {
+            results.put(outcome.reference(), outcome);
+            String body = mapper.writeValueAsString(outcome);
+            callbackService.getObject().receive(NAME, Map.of(SIGNATURE_HEADER, sign(body)), body);
+        } catch (RuntimeException | JsonProcessingException e) {
+            // Payment sẽ được PaymentReconciler xử lý qua query()
+            log.warn("Simulator could not deliver callback for {}: {}", outcome.reference(), e.getMessage());
+        }
+    }
+
+    @Override
+    public PaymentCallback parseCallback(Map<String, String> headers, String body) {
+        String signature = headers.get(SIGNATURE_HEADER);
+        if (signature == null || !MessageDigest.isEqual(
+                signature.getBytes(StandardCharsets.UTF_8), sign(body).getBytes(StandardCharsets.UTF_8))) {
+            throw new IllegalArgumentException("Invalid callback signature");
+        }
+        try {
+            PaymentCallback callback = mapper.readValue(body, PaymentCallback.class);
+            if (callback.eventId() == null || callback.reference() == null || callback.status() == null) {
+                throw new IllegalArgumentException("Incomplete callback");
+            }
+            return callback;
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Malformed callback body");
+        }
+    }
+
+    @Override
+    public PaymentCallback query(String reference) {
+        PaymentCallback known = results.get(reference);
+        if (known == null || PaymentCallback.PENDING.equals(known.status())) {
+            return known;
+        }
+        // Đối soát cần eventId riêng nhưng ổn định để inbox bỏ được bản trùng
+        return new PaymentCallback("query-" + known.eventId(), known.reference(), known.status(), known.amount());
+    }
+
+    private String sign(String body) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            return HexFormat.of().formatHex(mac.doFinal(body.getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 unavailable", e);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,44 @@
+package com.evtrading.swp391.repository;
+
+import com.evtrading.swp391.entity.Contract;
+import com.evtrading.swp391.entity.ContractParticipant;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface ContractParticipantRepository extends JpaRepository<ContractParticipant, Long> {
+
+    List<ContractParticipant> findByContract(Contract contract);
+
+    List<ContractParticipant> findByContractIn(Collection<Contract> contracts);
+
+    // email phải đã chuẩn hóa (ContractParticipant.normalizeEmail)
+    @Query("select p.contract from ContractParticipant p where p.email = :email order by p.sentAt desc, p.id desc")
+    List<Contract> findLatestContractsByEmail(@Param("email") String email, Pageable pageable);
+
+    @Query("select max(c.contractID) from Contract c " +
+           "where (c.sellerEmail is not null or c.buyerEmail is not null) and not exists " +
+           "(select p.id from ContractParticipant p where p.contract = c)")
+    Integer findMaxContractIdWithoutParticipants();
+
+    @Modifying
+    @Query("insert into ContractParticipant (contract, email, role, sentAt) " +
+           "select c, lower(trim(c.sellerEmail)), 'SELLER', c.updateAt from Contract c " +
+           "where c.contractID > :fromId and c.contractID <= :toId and c.sellerEmail is not null " +
+           "and not exists (select p.id from ContractParticipant p where p.contract = c and p.role = 'SELLER')")
+    int backfillSellers(@Param("fromId") Integer fromId, @Param("toId") Integer toId);
+
+    @Modifying
+    @Query("insert into ContractParticipant (contract, email, role, sentAt) " +
+           "select c, lower(trim(c.buyerEmail)), 'BUYER', c.updateAt from Contract c " +
+           "where c.contractID > :fromId and c.contractID <= :toId and c.buyerEmail is not null " +
+           "and not exists (select p.id from ContractParticipant p where p.contract = c and p.role = 'BUYER')")
+    int backfillBuyers(@Param("fromId") Integer fromId, @Param("toId") Integer toId);
+}
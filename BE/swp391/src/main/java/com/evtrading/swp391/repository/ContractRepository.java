@@ -2,15 +2,54 @@ package com.evtrading.swp391.repository;
 
 import com.evtrading.swp391.entity.Contract;
 import com.evtrading.swp391.entity.Order;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
 import java.util.Optional;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 @Repository
 public interface ContractRepository extends JpaRepository<Contract, Integer> {
     Optional<Contract> findByOrder(Order order);
     Optional<Contract> findByOrder_OrderID(Integer orderID);
+    List<Contract> findByOrder_OrderIDIn(Collection<Integer> orderIDs);
     Optional<Contract> findByDocusealEnvelopeID(String docusealEnvelopeID);
-    Optional<Contract> findTopBySellerEmailOrderByUpdateAtDesc(String sellerEmail);
-    Optional<Contract> findTopByBuyerEmailOrderByUpdateAtDesc(String buyerEmail);
+
+    // Hợp đồng kẹt ở Draft/SEND_FAILED: lần gửi gần nhất đã quá cũ (mất khi restart) hoặc thất bại và tới hạn thử lại
+    @Query("select c.contractID from Contract c where c.status in :statuses and c.sendRequestedAt <= :staleBefore " +
+           "and coalesce(c.sendAttempts, 0) < :maxAttempts " +
+           "and (c.sendRetryAt is null or c.sendRetryAt <= :now) order by c.sendRequestedAt")
+    List<Integer> findSendDue(@Param("statuses") Collection<String> statuses, @Param("staleBefore") Date staleBefore,
+                              @Param("now") Date now, @Param("maxAttempts") int maxAttempts, Pageable pageable);
+
+    // Nhận lần gửi lại bằng cách đổi token sendRequestedAt; chỉ một instance thắng, kết quả lần gửi cũ bị bỏ
+    @Modifying
+    @Query("update Contract c set c.sendRequestedAt = :token where c.contractID = :id " +
+           "and c.sendRequestedAt = :previous and c.status in :statuses")
+    int claimResend(@Param("id") Integer id, @Param("previous") Date previous, @Param("token") Date token,
+                    @Param("statuses") Collection<String> statuses);
+
+    // [contractID, signedFileUrl, archiveAttempts]; không nạp entity để tránh kéo theo Order (eager)
+    @Query("select c.contractID, c.signedFileUrl, coalesce(c.archiveAttempts, 0) from Contract c " +
+           "where c.status = 'SIGNED_BOTH' and c.signedFileUrl is not null " +
+           "and c.archiveSha256 is null and coalesce(c.archiveAttempts, 0) < :maxAttempts " +
+           "and (c.archiveRetryAt is null or c.archiveRetryAt <= :now) order by c.contractID")
+    List<Object[]> findArchiveDue(@Param("now") Date now, @Param("maxAttempts") int maxAttempts, Pageable pageable);
+
+    // Chỉ ghi nếu link chưa đổi (hợp đồng chưa bị gửi lại trong lúc tải)
+    @Modifying
+    @Query("update Contract c set c.archiveSha256 = :sha256, c.archiveSize = :size, c.archivedAt = :now " +
+           "where c.contractID = :id and c.signedFileUrl = :url")
+    int markArchived(@Param("id") Integer id, @Param("url") String url, @Param("sha256") String sha256,
+                     @Param("size") long size, @Param("now") Date now);
+
+    @Modifying
+    @Query("update Contract c set c.archiveAttempts = coalesce(c.archiveAttempts, 0) + 1, c.archiveRetryAt = :retryAt " +
+           "where c.contractID = :id")
+    int recordArchiveFailure(@Param("id") Integer id, @Param("retryAt") Date retryAt);
 }
@@ -0,0 +1,42 @@
+package com.evtrading.swp391.repository;
+
+import com.evtrading.swp391.entity.ContractWebhookEvent;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Date;
+import java.util.List;
+
+@Repository
+public interface ContractWebhookEventRepository extends JpaRepository<ContractWebhookEvent, Long> {
+
+    // Sự kiện đến hạn, trừ những sự kiện đứng sau một sự kiện cùng envelope đang chờ thử lại
+    @Query("select e from ContractWebhookEvent e where e.state = 'NEW' and e.nextAttemptAt <= :now " +
+           "and not exists (select p.id from ContractWebhookEvent p where p.envelopeKey = e.envelopeKey " +
+           "and p.state = 'NEW' and p.id < e.id and p.nextAttemptAt > :now) " +
+           "order by e.id")
+    List<ContractWebhookEvent> findDue(@Param("now") Date now, Pageable pageable);
+
+    @Modifying
+    @Query("update ContractWebhookEvent e set e.state = 'DONE', e.processedAt = :now where e.id = :id")
+    int markDone(@Param("id") Long id, @Param("now") Date now);
+
+    // Hết số lần thử thì chuyển DEAD (dead letter) để các sự kiện sau của envelope được xử lý tiếp
+    @Modifying
+    @Query("update ContractWebhookEvent e set e.attempts = e.attempts + 1, e.lastError = :error, " +
+           "e.nextAttemptAt = :nextAttemptAt, " +
+           "e.state = case when e.attempts + 1 >= :maxAttempts then 'DEAD' else 'NEW' end " +
+           "where e.id = :id")
+    int recordFailure(@Param("id") Long id, @Param("error") String error,
+                      @Param("nextAttemptAt") Date nextAttemptAt, @Param("maxAttempts") int maxAttempts);
+
+    @Modifying
+    @Query("delete from ContractWebhookEvent e where e.state = 'DONE' and e.processedAt < :before")
+    int deleteDoneBefore(@Param("before") Date before);
+
+    long countByState(String state);
+}
@@ -0,0 +1,32 @@
+package com.evtrading.swp391.repository;
+
+import com.evtrading.swp391.entity.IdempotencyRecord;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Date;
+import java.util.Optional;
+
+@Repository
+public interface IdempotencyRecordRepository extends JpaRepository<IdempotencyRecord, Long> {
+    Optional<IdempotencyRecord> findByUsernameAndScopeAndIdemKey(String username, String scope, String idemKey);
+
+    @Modifying
+    @Query("update IdempotencyRecord r set r.state = 'COMPLETED', r.responseStatus = :status, " +
+           "r.responseBody = :body where r.id = :id")
+    int complete(@Param("id") Long id, @Param("status") int status, @Param("body") String body);
+
+    // Tiếp quản claim IN_PROGRESS quá hạn lease; createdAt được làm mới nên chỉ một request thắng
+    @Modifying
+    @Query("update IdempotencyRecord r set r.createdAt = :now, r.expiresAt = :expiresAt " +
+           "where r.id = :id and r.state = 'IN_PROGRESS' and r.createdAt <= :staleBefore")
+    int takeOver(@Param("id") Long id, @Param("staleBefore") Date staleBefore,
+                 @Param("now") Date now, @Param("expiresAt") Date expiresAt);
+
+    @Modifying
+    @Query("delete from IdempotencyRecord r where r.expiresAt < :now")
+    int deleteExpired(@Param("now") Date now);
+}
@@ -4,10 +4,15 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.evtrading.swp391.entity.Listing;
 
+import java.util.Collection;
+
 @Repository
 public interface ListingRepository extends JpaRepository<Listing, Integer>, JpaSpecificationExecutor<Listing> {
     Page<Listing> findByStatus(String status, Pageable pageable);
@@ -25,4 +30,20 @@ public interface ListingRepository extends JpaRepository<Listing, Integer>, JpaS
 
     // Find all listings in a category (used for price anomaly checks)
     java.util.List<Listing> findAllByCategoryCategoryID(Integer categoryId);
+
+    // Giữ chỗ listing khi đặt mua: chỉ một request thắng vì điều kiện status = 'ACTIVE' được kiểm tra
+    // trong chính câu UPDATE (row lock ngắn của DB), trả về 1 nếu thành công, 0 nếu listing đã bị mua/ẩn
+    @Modifying(flushAutomatically = true)
+    @Query("update Listing l set l.status = 'SOLD', l.version = l.version + 1 " +
+           "where l.listingID = :listingId and l.status = 'ACTIVE'")
+    int reserveIfActive(@Param("listingId") Integer listingId);
+
+    // Chuyển trạng thái listing của các đơn đã cho (vd. SOLD -> ACTIVE khi đơn giữ chỗ bị hủy)
+    @Modifying
+    @Query("update Listing l set l.status = :to, l.version = l.version + 1 " +
+           "where l.status in :from and l.listingID in " +
+           "(select o.listing.listingID from Order o where o.orderID in :orderIds)")
+    int transitionByOrderIds(@Param("orderIds") Collection<Integer> orderIds,
+                             @Param("from") Collection<String> from,
+                             @Param("to") String to);
 }
@@ -1,17 +1,118 @@
 package com.evtrading.swp391.repository;
 
+import com.evtrading.swp391.dto.OrderResponseDTO;
 import com.evtrading.swp391.entity.Order;
+import org.springframework.data.domain.Pageable;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import com.evtrading.swp391.entity.User;
 import com.evtrading.swp391.entity.Listing;
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface OrderRepository extends JpaRepository<Order, Integer> {
+    // Một query trả về order + seller + transaction, không walk lazy association theo từng dòng
+    String ORDER_VIEW = "select new com.evtrading.swp391.dto.OrderResponseDTO(" +
+            "o.orderID, o.buyer.userID, l.user.userID, l.listingID, o.quantity, o.price, o.totalAmount, " +
+            "o.status, t.transactionID, o.createdAt, t.dueTime) " +
+            "from Order o join o.listing l left join Transaction t on t.order = o ";
+
+    // Nạp sẵn buyer, listing và seller (cùng các quan hệ eager của listing) cho việc gửi hợp đồng hàng loạt
+    @Query("select o from Order o left join fetch o.buyer left join fetch o.listing l left join fetch l.user " +
+           "left join fetch l.vehicle left join fetch l.battery where o.orderID in :ids")
+    List<Order> findForContracts(@Param("ids") Collection<Integer> ids);
+
     List<Order> findByBuyerOrderByCreatedAtDesc(User buyer);
     List<Order> findByBuyer(User buyer);
     
     // Find orders for a given buyer and listing with exact status
     List<Order> findByBuyerAndListingAndStatus(User buyer, Listing listing, String status);
+
+    @Query(ORDER_VIEW + "where o.orderID = :orderId")
+    Optional<OrderResponseDTO> findOrderView(@Param("orderId") Integer orderId);
+
+    @Query(ORDER_VIEW + "where o.buyer.userID = :buyerId order by o.createdAt desc, o.orderID desc")
+    List<OrderResponseDTO> findBuyerOrderViews(@Param("buyerId") Integer buyerId);
+
+    // Trang đầu của lịch sử đơn (keyset)
+    @Query(ORDER_VIEW + "where o.buyer.userID = :buyerId order by o.createdAt desc, o.orderID desc")
+    List<OrderResponseDTO> findBuyerOrderPage(@Param("buyerId") Integer buyerId, Pageable pageable);
+
+    // Các trang sau: bắt đầu ngay sau (createdAt, orderID) của dòng cuối trang trước
+    @Query(ORDER_VIEW + "where o.buyer.userID = :buyerId " +
+           "and (o.createdAt < :createdAt or (o.createdAt = :createdAt and o.orderID < :orderId)) " +
+           "order by o.createdAt desc, o.orderID desc")
+    List<OrderResponseDTO> findBuyerOrderPageAfter(@Param("buyerId") Integer buyerId,
+                                                   @Param("createdAt") Date createdAt,
+                                                   @Param("orderId") Integer orderId,
+                                                   Pageable pageable);
+
+    // Hộp đơn người bán, keyset: trang đầu truyền (to, Integer.MAX_VALUE) làm mốc
+    @Query(ORDER_VIEW + "where o.seller.userID = :sellerId and o.createdAt >= :from " +
+           "and (o.createdAt < :createdAt or (o.createdAt = :createdAt and o.orderID < :orderId)) " +
+           "order by o.createdAt desc, o.orderID desc")
+    List<OrderResponseDTO> findSellerOrderPage(@Param("sellerId") Integer sellerId,
+                                               @Param("from") Date from,
+                                               @Param("createdAt") Date createdAt,
+                                               @Param("orderId") Integer orderId,
+                                               Pageable pageable);
+
+    @Query(ORDER_VIEW + "where o.seller.userID = :sellerId and o.status = :status and o.createdAt >= :from " +
+           "and (o.createdAt < :createdAt or (o.createdAt = :createdAt and o.orderID < :orderId)) " +
+           "order by o.createdAt desc, o.orderID desc")
+    List<OrderResponseDTO> findSellerOrderPageByStatus(@Param("sellerId") Integer sellerId,
+                                                       @Param("status") String status,
+                                                       @Param("from") Date from,
+                                                       @Param("createdAt") Date createdAt,
+                                                       @Param("orderId") Integer orderId,
+                                                       Pageable pageable);
+
+    // [status, count] trong khoảng [from, to)
+    @Query("select o.status, count(o) from Order o where o.seller.userID = :sellerId " +
+           "and o.createdAt >= :from and o.createdAt < :to group by o.status")
+    List<Object[]> countSellerOrdersByStatus(@Param("sellerId") Integer sellerId,
+                                             @Param("from") Date from,
+                                             @Param("to") Date to);
+
+    // [buyerID, sellerID] của đơn; người bán lấy theo listing vì đơn cũ có thể chưa có seller
+    @Query("select o.buyer.userID, l.user.userID from Order o join o.listing l where o.orderID = :orderId")
+    List<Object[]> findParticipantIds(@Param("orderId") Integer orderId);
+
+    @Query("select max(o.orderID) from Order o where o.seller is null")
+    Integer findMaxOrderIdWithoutSeller();
+
+    @Modifying
+    @Query("update Order o set o.seller = (select l.user from Listing l where l = o.listing) " +
+           "where o.seller is null and o.orderID > :fromId and o.orderID <= :toId")
+    int backfillSeller(@Param("fromId") Integer fromId, @Param("toId") Integer toId);
+
+    // [orderID, listingID] của các đơn hủy được sau khi giao dịch đã được cho hết hạn: đơn ở trạng thái nguồn
+    // và giao dịch (nếu có) đã EXPIRED. Khóa ghi (UPDLOCK trên SQL Server) giữ các dòng tới khi commit, nên
+    // các UPDATE sau đó đổi đúng những đơn này.
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select o.orderID, o.listing.listingID from Order o left join Transaction t on t.order = o " +
+           "where o.orderID in :ids and o.status in :orderStatuses " +
+           "and (t.transactionID is null or t.status = :expired)")
+    List<Object[]> lockCancellable(@Param("ids") Collection<Integer> ids,
+                                   @Param("orderStatuses") Collection<String> orderStatuses,
+                                   @Param("expired") String expired);
+
+    // Chuyển trạng thái hàng loạt; trạng thái nguồn lấy từ Transitions.ORDER
+    @Modifying
+    @Query("update Order o set o.status = :to where o.orderID in :ids and o.status in :from")
+    int transitionStatus(@Param("ids") Collection<Integer> ids,
+                         @Param("from") Collection<String> from,
+                         @Param("to") String to);
+
+    @Modifying
+    @Query("update Order o set o.status = 'COMPLETED' where o.orderID = :id and o.status = 'PENDING'")
+    int completeIfPending(@Param("id") Integer id);
 }
@@ -0,0 +1,31 @@
+package com.evtrading.swp391.repository;
+
+import com.evtrading.swp391.entity.OutboxEvent;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+@Repository
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+    @Query("select e from OutboxEvent e where e.publishedAt is null order by e.id")
+    List<OutboxEvent> findUnpublished(Pageable pageable);
+
+    @Modifying
+    @Query("update OutboxEvent e set e.publishedAt = :now where e.id in :ids")
+    int markPublished(@Param("ids") Collection<Long> ids, @Param("now") Date now);
+
+    @Modifying
+    @Query("update OutboxEvent e set e.attempts = e.attempts + 1, e.lastError = :error where e.id = :id")
+    int recordFailure(@Param("id") Long id, @Param("error") String error);
+
+    @Modifying
+    @Query("delete from OutboxEvent e where e.publishedAt < :before")
+    int deletePublishedBefore(@Param("before") Date before);
+}
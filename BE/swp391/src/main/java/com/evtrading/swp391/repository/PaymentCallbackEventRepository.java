@@ -0,0 +1,29 @@
+package com.evtrading.swp391.repository;
+
+import com.evtrading.swp391.entity.PaymentCallbackEvent;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+@Repository
+public interface PaymentCallbackEventRepository extends JpaRepository<PaymentCallbackEvent, Long> {
+    List<PaymentCallbackEvent> findByStateOrderByIdAsc(String state, Pageable pageable);
+
+    @Modifying
+    @Query("update PaymentCallbackEvent e set e.state = 'DONE', e.processedAt = :now where e.id in :ids")
+    int markDone(@Param("ids") Collection<Long> ids, @Param("now") Date now);
+
+    // Hết số lần thử thì chuyển FAILED để không chặn các callback phía sau
+    @Modifying
+    @Query("update PaymentCallbackEvent e set e.attempts = e.attempts + 1, e.lastError = :error, " +
+           "e.state = case when e.attempts + 1 >= :maxAttempts then 'FAILED' else 'NEW' end " +
+           "where e.id = :id")
+    int recordFailure(@Param("id") Long id, @Param("error") String error, @Param("maxAttempts") int maxAttempts);
+}
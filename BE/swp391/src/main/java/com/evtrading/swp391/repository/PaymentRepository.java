@@ -1,12 +1,34 @@
 package com.evtrading.swp391.repository;
 
 import com.evtrading.swp391.entity.Payment;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import com.evtrading.swp391.entity.Transaction;
+import java.util.Date;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface PaymentRepository extends JpaRepository<Payment, Integer> {
     List<Payment> findByTransactionOrderByPaidAtDesc(Transaction transaction);
+
+    Optional<Payment> findByProviderAndReference(String provider, String reference);
+
+    // Chỉ chuyển trạng thái một lần, callback gửi lặp sẽ nhận 0
+    @Modifying
+    @Query("update Payment p set p.status = :status, p.paidAt = :at where p.paymentID = :id and p.status = 'PENDING'")
+    int markIfPending(@Param("id") Integer id, @Param("status") String status, @Param("at") Date at);
+
+    @Modifying
+    @Query("update Payment p set p.status = :status where p.paymentID = :id")
+    int updateStatus(@Param("id") Integer id, @Param("status") String status);
+
+    // Payment PENDING quá lâu chưa có callback, cần đối soát với provider
+    @Query("select p from Payment p where p.status = 'PENDING' and p.reference is not null " +
+           "and p.paidAt < :cutoff order by p.paidAt")
+    List<Payment> findStalePending(@Param("cutoff") Date cutoff, Pageable pageable);
 }
\ No newline at end of file
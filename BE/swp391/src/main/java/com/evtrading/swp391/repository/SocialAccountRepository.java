@@ -1,6 +1,8 @@
 package com.evtrading.swp391.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import com.evtrading.swp391.entity.SocialAccount;
 import java.util.Optional;
@@ -8,4 +10,10 @@ import java.util.Optional;
 public interface SocialAccountRepository extends JpaRepository<SocialAccount, Integer> {
     Optional<SocialAccount> findByProviderAndProviderUserId(String provider, String providerUserId);
     boolean existsByProviderAndProviderUserId(String provider, String providerUserId);
+
+    // Một query: seek trên unique index (provider, provider_user_id) rồi join sang user + role
+    @Query("select sa from SocialAccount sa join fetch sa.user u join fetch u.role " +
+           "where sa.provider = :provider and sa.providerUserId = :providerUserId")
+    Optional<SocialAccount> findLinkedAccount(@Param("provider") String provider,
+                                              @Param("providerUserId") String providerUserId);
 }
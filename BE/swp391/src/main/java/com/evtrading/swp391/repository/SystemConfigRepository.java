@@ -3,9 +3,11 @@ package com.evtrading.swp391.repository;
 import com.evtrading.swp391.entity.SystemConfig;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface SystemConfigRepository extends JpaRepository<SystemConfig, Integer> {
     Optional<SystemConfig> findByConfigKey(String key);
+    List<SystemConfig> findByConfigKeyStartingWith(String prefix);
 }
@@ -2,12 +2,56 @@ package com.evtrading.swp391.repository;
 
 import com.evtrading.swp391.entity.Transaction;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import com.evtrading.swp391.entity.Order;
+import com.evtrading.swp391.util.Money;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface TransactionRepository extends JpaRepository<Transaction, Integer> {
     Optional<Transaction> findByOrder(Order order);
 
-}
\ No newline at end of file
+    // [transactionID, dueTime] của các giao dịch chưa thanh toán đủ, chỉ đọc 2 cột
+    @Query("select t.transactionID, t.dueTime from Transaction t " +
+           "where t.status in ('PENDING', 'PARTIALLY_PAID') and t.dueTime is not null")
+    List<Object[]> findOpenDueTimes();
+
+    // Đơn của các giao dịch vẫn chưa thanh toán đủ và đã quá hạn
+    @Query("select t.order.orderID from Transaction t " +
+           "where t.transactionID in :ids and t.status in ('PENDING', 'PARTIALLY_PAID') and t.dueTime <= :now")
+    List<Integer> findDueOrderIds(@Param("ids") Collection<Integer> ids, @Param("now") Date now);
+
+    // [transactionID, orderID, paidAmount] của giao dịch đã EXPIRED nhưng đã nhận một phần tiền (cần hoàn)
+    @Query("select t.transactionID, t.order.orderID, t.paidAmount from Transaction t " +
+           "where t.order.orderID in :orderIds and t.status = 'EXPIRED' and t.paidAmount > :zero")
+    List<Object[]> findRefundDue(@Param("orderIds") Collection<Integer> orderIds, @Param("zero") Money zero);
+
+    // Chuyển trạng thái giao dịch của các đơn đang ở trạng thái đơn cho trước (vd. PENDING -> EXPIRED khi hủy đơn).
+    // Điều kiện trên t.status được xét lúc UPDATE, nên giao dịch vừa nhận tiền không bị đổi.
+    @Modifying
+    @Query("update Transaction t set t.status = :to where t.status in :from and t.order.orderID in " +
+           "(select o.orderID from Order o where o.orderID in :orderIds and o.status in :orderStatuses)")
+    int transitionByOrderIds(@Param("orderIds") Collection<Integer> orderIds,
+                             @Param("orderStatuses") Collection<String> orderStatuses,
+                             @Param("from") Collection<String> from,
+                             @Param("to") String to);
+
+    // Cộng tiền nguyên tử: chỉ thành công khi giao dịch còn nhận tiền và không vượt tổng tiền.
+    // Vế phải của SET dùng giá trị cũ của dòng, nên CASE xét đúng tổng sau khi cộng.
+    @Modifying(flushAutomatically = true)
+    @Query("update Transaction t set t.paidAmount = t.paidAmount + :amount, " +
+           "t.status = case when t.paidAmount + :amount = t.totalAmount then 'FULLY_PAID' else 'PARTIALLY_PAID' end, " +
+           "t.transactionDate = :now " +
+           "where t.transactionID = :id and t.status in ('PENDING', 'PARTIALLY_PAID') " +
+           "and t.paidAmount + :amount <= t.totalAmount")
+    int applyPayment(@Param("id") Integer id, @Param("amount") Money amount, @Param("now") Date now);
+
+    @Query("select t.status from Transaction t where t.transactionID = :id")
+    String findStatusById(@Param("id") Integer id);
+}
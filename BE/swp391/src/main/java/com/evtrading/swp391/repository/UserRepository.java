@@ -6,6 +6,8 @@ import java.util.List;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 public interface UserRepository extends JpaRepository<User, Integer> {
     Optional<User> findByUsername(String username);
@@ -17,4 +19,8 @@ public interface UserRepository extends JpaRepository<User, Integer> {
     boolean existsByUsername(String username);
 
     boolean existsByEmail(String email);
+
+    // Lấy username trùng base hoặc có dạng base_xxx trong một lần seek trên unique index của username
+    @Query("select u.username from User u where u.username = :base or u.username like :likePrefix escape '!'")
+    List<String> findUsernamesByBase(@Param("base") String base, @Param("likePrefix") String likePrefix);
 }
@@ -1,37 +1,133 @@
 package com.evtrading.swp391.security;
-import org.apache.http.HttpStatus;
+
+import com.evtrading.swp391.util.CircuitBreaker;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.ResponseEntity;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
 
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
 import java.util.Map;
+
+/**
+ * Xác thực Facebook user access token qua Graph API (debug_token + /me).
+ *
+ * Dùng một HttpClient dùng chung (giữ kết nối keep-alive tới graph.facebook.com) với
+ * connect/read timeout, và circuit breaker để không kéo dài request đăng nhập khi Facebook chậm.
+ */
 @Service
-public class FacebookAuthVerifier {
+@ConditionalOnProperty(name = "app.social.stub.enabled", havingValue = "false", matchIfMissing = true)
+public class FacebookAuthVerifier implements SocialTokenVerifier {
+    private static final Logger log = LoggerFactory.getLogger(FacebookAuthVerifier.class);
+
+    private static final String GRAPH_URL = "https://graph.facebook.com";
+
     @Value("${spring.security.oauth2.client.registration.facebook.client-id}")
     private String appId;
     @Value("${spring.security.oauth2.client.registration.facebook.client-secret}")
     private String appSecret;
 
-    private final RestTemplate rest = new RestTemplate();
+    @Value("${app.social.facebook.connectTimeoutMs:2000}")
+    private long connectTimeoutMs;
+    @Value("${app.social.facebook.readTimeoutMs:3000}")
+    private long readTimeoutMs;
+    @Value("${app.social.breaker.failureThreshold:5}")
+    private int failureThreshold;
+    @Value("${app.social.breaker.openMs:30000}")
+    private long openMs;
 
-    /** Trả về dữ liệu /me (id,name,email,picture) nếu token hợp lệ, ngược lại null */
+    private RestTemplate rest;
+    private CircuitBreaker breaker;
+
+    @PostConstruct
+    void init() {
+        HttpClient httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .build();
+        JdkClientHttpRequestFactory factory = new JdkClientHttpRequestFactory(httpClient);
+        factory.setReadTimeout(Duration.ofMillis(readTimeoutMs));
+        this.rest = new RestTemplate(factory);
+        this.breaker = new CircuitBreaker("facebook-graph", failureThreshold, Duration.ofMillis(openMs));
+    }
+
+    @Override
+    public String provider() {
+        return "FACEBOOK";
+    }
+
+    /** Trả về profile (id,name,email,picture) nếu token hợp lệ, ngược lại null */
+    @Override
     @SuppressWarnings("unchecked")
-    public Map<String, Object> verify(String userAccessToken) {
+    public SocialProfile verify(String userAccessToken) {
+        if (userAccessToken == null || userAccessToken.isBlank()) {
+            return null;
+        }
+        if (!breaker.tryAcquire()) {
+            throw new SocialProviderUnavailableException("Facebook verification is temporarily unavailable");
+        }
+        Map<String, Object> me;
         try {
-            String appToken = appId + "|" + appSecret;
-            String debugUrl = "https://graph.facebook.com/debug_token?input_token=" +
-                    userAccessToken + "&access_token=" + appToken;
-
-            Map<String, Object> debug = rest.getForObject(debugUrl, Map.class);
-            if (debug == null) return null;
-            Map<String, Object> data = (Map<String, Object>) debug.get("data");
-            if (data == null || Boolean.FALSE.equals(data.get("is_valid"))) return null;
-
-            String meUrl = "https://graph.facebook.com/me?fields=id,name,email,picture&access_token=" + userAccessToken;
-            return rest.getForObject(meUrl, Map.class);
-        } catch (Exception e) {
-            return (Map<String, Object>) ResponseEntity.status(HttpStatus.SC_UNAUTHORIZED);
+            URI debugUri = UriComponentsBuilder.fromUriString(GRAPH_URL + "/debug_token")
+                    .queryParam("input_token", userAccessToken)
+                    .queryParam("access_token", appId + "|" + appSecret)
+                    .encode().build().toUri();
+            Map<String, Object> debug = rest.getForObject(debugUri, Map.class);
+            Map<String, Object> data = debug != null && debug.get("data") instanceof Map<?, ?> d
+                    ? (Map<String, Object>) d : null;
+            if (data == null || !Boolean.TRUE.equals(data.get("is_valid"))
+                    || (data.get("app_id") != null && !appId.equals(String.valueOf(data.get("app_id"))))) {
+                breaker.onSuccess();
+                return null;
+            }
+
+            URI meUri = UriComponentsBuilder.fromUriString(GRAPH_URL + "/me")
+                    .queryParam("fields", "id,name,email,picture")
+                    .queryParam("access_token", userAccessToken)
+                    .encode().build().toUri();
+            me = rest.getForObject(meUri, Map.class);
+            breaker.onSuccess();
+        } catch (HttpStatusCodeException e) {
+            if (e.getStatusCode().is4xxClientError()) {
+                // Facebook trả 4xx khi token hết hạn / bị thu hồi
+                breaker.onSuccess();
+                log.debug("Facebook rejected token: {}", e.getStatusCode());
+                return null;
+            }
+            breaker.onFailure();
+            throw new SocialProviderUnavailableException("Facebook Graph API error: " + e.getStatusCode(), e);
+        } catch (ResourceAccessException e) {
+            // Timeout hoặc lỗi kết nối
+            breaker.onFailure();
+            throw new SocialProviderUnavailableException("Could not reach Facebook to verify token", e);
+        } catch (RuntimeException e) {
+            // Response không đọc được (UnknownContentTypeException, JSON lạ...): vẫn phải settle breaker,
+            // nếu không lượt thử HALF_OPEN không bao giờ kết thúc
+            breaker.onFailure();
+            throw new SocialProviderUnavailableException("Unexpected response from Facebook Graph API", e);
+        }
+
+        if (me == null || me.get("id") == null) {
+            return null;
+        }
+        String avatar = null;
+        // picture: { data: { url: ... } }
+        if (me.get("picture") instanceof Map<?, ?> pic && pic.get("data") instanceof Map<?, ?> d && d.get("url") != null) {
+            avatar = d.get("url").toString();
         }
+        return new SocialProfile(
+                provider(),
+                String.valueOf(me.get("id")),
+                me.get("email") != null ? me.get("email").toString() : null,
+                me.get("name") != null ? me.get("name").toString() : null,
+                avatar);
     }
-}
\ No newline at end of file
+}
@@ -1,46 +1,117 @@
 package com.evtrading.swp391.security;
 
-import org.springframework.stereotype.Service;
-import org.apache.http.HttpStatus;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.ResponseEntity;
-
+import com.evtrading.swp391.util.CircuitBreaker;
 import com.google.api.client.googleapis.auth.oauth2.GoogleIdToken;
-import com.google.api.client.googleapis.auth.oauth2.GoogleIdToken.Payload;
 import com.google.api.client.googleapis.auth.oauth2.GoogleIdTokenVerifier;
+import com.google.api.client.googleapis.auth.oauth2.GooglePublicKeysManager;
 import com.google.api.client.http.javanet.NetHttpTransport;
 import com.google.api.client.json.gson.GsonFactory;
-
 import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.time.Duration;
 import java.util.Collections;
 
+/**
+ * Xác thực Google ID token.
+ *
+ * Verifier và transport được tạo một lần; public keys (JWKS) của Google được cache trong
+ * {@link GooglePublicKeysManager} và làm mới định kỳ ở background, nên request đăng nhập
+ * gần như không phải gọi ra Google.
+ */
 @Service
-public class GoogleAuthVerifier {
+@ConditionalOnProperty(name = "app.social.stub.enabled", havingValue = "false", matchIfMissing = true)
+public class GoogleAuthVerifier implements SocialTokenVerifier {
+    private static final Logger log = LoggerFactory.getLogger(GoogleAuthVerifier.class);
+
     @Value("${spring.security.oauth2.client.registration.google.client-id:}")
     private String clientId;
 
-      @Autowired
-  private org.springframework.core.env.Environment env;
+    @Value("${app.social.breaker.failureThreshold:5}")
+    private int failureThreshold;
+
+    @Value("${app.social.breaker.openMs:30000}")
+    private long openMs;
+
+    private GooglePublicKeysManager keysManager;
+    private GoogleIdTokenVerifier verifier;
+    private CircuitBreaker breaker;
+
     @PostConstruct
-    public void debug() {
-        System.out.println(">>> GOOGLE CLIENT ID (@Value) = [" + clientId + "]");
-    System.out.println(">>> GOOGLE CLIENT ID (env)    = [" + env.getProperty("security.oauth2.google.client-id") + "]");
+    void init() {
+        NetHttpTransport transport = new NetHttpTransport();
+        this.keysManager = new GooglePublicKeysManager(transport, GsonFactory.getDefaultInstance());
+        this.verifier = new GoogleIdTokenVerifier.Builder(keysManager)
+                .setAudience(Collections.singletonList(clientId))
+                .build();
+        this.breaker = new CircuitBreaker("google-id-token", failureThreshold, Duration.ofMillis(openMs));
+        log.debug("Google verifier initialised, client id configured: {}", clientId != null && !clientId.isBlank());
     }
 
-    public GoogleIdToken.Payload verify(String idToken) {
+    /**
+     * Làm mới public keys ở background để request đăng nhập không phải chờ tải cert.
+     * Không đụng tới breaker: breaker chỉ phản ánh lỗi của request đăng nhập, còn khi làm mới thất bại
+     * các key đã cache vẫn dùng được.
+     */
+    @Scheduled(initialDelay = 0, fixedDelayString = "${app.social.google.keysRefreshMs:3600000}")
+    public void refreshPublicKeys() {
         try {
-            var verifier = new GoogleIdTokenVerifier.Builder(
-                    new NetHttpTransport(),
-                    GsonFactory.getDefaultInstance())
-                    .setAudience(Collections.singletonList(clientId))
-                    .build();
-
-            GoogleIdToken token = verifier.verify(idToken);
-            return token != null ? token.getPayload() : null;
+            keysManager.refresh();
         } catch (Exception e) {
-            return (Payload) ResponseEntity.status(HttpStatus.SC_UNAUTHORIZED);
+            log.warn("Could not refresh Google public keys: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public String provider() {
+        return "GOOGLE";
+    }
+
+    @Override
+    public SocialProfile verify(String idToken) {
+        GoogleIdToken token;
+        try {
+            token = GoogleIdToken.parse(GsonFactory.getDefaultInstance(), idToken);
+        } catch (Exception e) {
+            // Token sai định dạng: không phải lỗi của provider, và chưa lấy lượt thử của breaker
+            log.debug("Malformed Google token: {}", e.getMessage());
+            return null;
+        }
+        // Từ đây mọi nhánh phải gọi onSuccess/onFailure, nếu không breaker kẹt ở HALF_OPEN
+        if (!breaker.tryAcquire()) {
+            throw new SocialProviderUnavailableException("Google verification is temporarily unavailable");
+        }
+        try {
+            boolean valid = verifier.verify(token);
+            breaker.onSuccess();
+            if (!valid) {
+                return null;
+            }
+        } catch (IOException e) {
+            // Lỗi mạng khi tải public keys
+            breaker.onFailure();
+            throw new SocialProviderUnavailableException("Could not reach Google to verify token", e);
+        } catch (GeneralSecurityException e) {
+            breaker.onSuccess();
+            log.debug("Invalid Google token signature: {}", e.getMessage());
+            return null;
+        } catch (RuntimeException e) {
+            breaker.onFailure();
+            throw e;
         }
+        GoogleIdToken.Payload p = token.getPayload();
+        return new SocialProfile(
+                provider(),
+                p.getSubject(),
+                p.getEmail(),
+                (String) p.get("name"),
+                (String) p.get("picture"));
     }
-}
\ No newline at end of file
+}
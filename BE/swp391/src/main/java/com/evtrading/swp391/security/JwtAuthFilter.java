@@ -131,10 +131,7 @@ public class JwtAuthFilter extends OncePerRequestFilter {
 
     @Override
     protected boolean shouldNotFilter(@NonNull HttpServletRequest request) {
-        String path = request.getServletPath();
-        // Log để debug
-        System.out.println("JWT Filter checking: " + path);
-
-        return SecurityPaths.isPublicPath(path);
+        // Matcher đã được biên dịch sẵn, không log mỗi request để tránh overhead
+        return SecurityPaths.PUBLIC_REQUEST_MATCHER.matches(request);
     }
 }
\ No newline at end of file
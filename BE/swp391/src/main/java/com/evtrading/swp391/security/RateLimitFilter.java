@@ -0,0 +1,70 @@
+package com.evtrading.swp391.security;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.lang.NonNull;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Giới hạn tốc độ request cho /api/**.
+ *
+ * Chạy sau JwtAuthFilter để dùng được principal đã xác thực; request ẩn danh (login, search...)
+ * được giới hạn theo IP. Khi vượt giới hạn trả 429 kèm header Retry-After (giây).
+ */
+public class RateLimitFilter extends OncePerRequestFilter {
+    private static final Logger logger = LoggerFactory.getLogger(RateLimitFilter.class);
+
+    @Autowired
+    private RateLimiter rateLimiter;
+
+    @Override
+    protected void doFilterInternal(@NonNull HttpServletRequest request,
+            @NonNull HttpServletResponse response, @NonNull FilterChain filterChain)
+            throws ServletException, IOException {
+        String path = request.getServletPath();
+        String group = RateLimiter.resolveGroup(path);
+        String clientKey = clientId(request) + "|" + group;
+
+        long waitNanos = rateLimiter.tryConsume(clientKey, group);
+        if (waitNanos > 0) {
+            long retryAfterSeconds = Math.max(1, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+            logger.debug("Rate limit exceeded for {} on {}", clientKey, path);
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+            response.setCharacterEncoding("UTF-8");
+            response.setContentType("application/json;charset=UTF-8");
+            response.getWriter().write("{\"error\":\"Too many requests\",\"retryAfterSeconds\":" + retryAfterSeconds + "}");
+            return;
+        }
+        filterChain.doFilter(request, response);
+    }
+
+    private String clientId(HttpServletRequest request) {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if (auth != null && auth.isAuthenticated() && !(auth instanceof AnonymousAuthenticationToken)) {
+            return "user:" + auth.getName();
+        }
+        return "ip:" + request.getRemoteAddr();
+    }
+
+    @Override
+    protected boolean shouldNotFilter(@NonNull HttpServletRequest request) {
+        String path = request.getServletPath();
+        // Chỉ giới hạn API; webhook DocuSeal và callback thanh toán không bị giới hạn để không mất sự kiện
+        return path == null || !path.startsWith("/api/") || path.equals("/api/contracts/webhook")
+                || path.startsWith("/api/payments/callback/");
+    }
+}
@@ -0,0 +1,213 @@
+package com.evtrading.swp391.security;
+
+import com.evtrading.swp391.entity.SystemConfig;
+import com.evtrading.swp391.repository.SystemConfigRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket theo (principal hoặc IP, nhóm route).
+ *
+ * Mỗi bucket là một {@link AtomicLong} theo thuật toán GCRA (tương đương token bucket): chỉ lưu
+ * "thời điểm lý thuyết" request kế tiếp được phép, cập nhật bằng CAS nên không cần lock.
+ * Giới hạn đọc từ bảng SystemConfig (key {@code ratelimit.<group>.capacity} và
+ * {@code ratelimit.<group>.perMinute}) và được nạp lại định kỳ. Số bucket bị chặn trên bởi
+ * {@code ratelimit.maxBuckets}: bucket rảnh được dọn theo lịch, còn khi vượt giới hạn thì chỉ loại
+ * theo mẫu để luồng request không phải sắp xếp cả map.
+ */
+@Component
+public class RateLimiter {
+    private static final Logger log = LoggerFactory.getLogger(RateLimiter.class);
+
+    public static final String GROUP_AUTH = "auth";
+    public static final String GROUP_SEARCH = "search";
+    public static final String GROUP_API = "api";
+
+    private static final String KEY_PREFIX = "ratelimit.";
+    private static final int EVICTION_SAMPLE = 256;
+
+    /** Giới hạn của một nhóm route: {@code capacity} request tức thời, hồi {@code perMinute} request/phút. */
+    public record Limit(int capacity, int perMinute) {
+        long emissionIntervalNanos() {
+            return TimeUnit.MINUTES.toNanos(1) / Math.max(1, perMinute);
+        }
+
+        long burstToleranceNanos() {
+            return emissionIntervalNanos() * Math.max(0, capacity - 1);
+        }
+    }
+
+    private static final Map<String, Limit> DEFAULT_LIMITS = Map.of(
+            GROUP_AUTH, new Limit(10, 20),
+            GROUP_SEARCH, new Limit(30, 120),
+            GROUP_API, new Limit(60, 300));
+
+    private static final class Bucket {
+        final AtomicLong theoreticalArrival = new AtomicLong(Long.MIN_VALUE);
+        volatile long lastAccessNanos;
+    }
+
+    private final SystemConfigRepository systemConfigRepository;
+    private final ConcurrentHashMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    private volatile Map<String, Limit> limits = DEFAULT_LIMITS;
+    private volatile boolean enabled = true;
+    private volatile int maxBuckets;
+
+    @Value("${app.ratelimit.idleMs:600000}")
+    private long idleMs = 600_000;
+
+    public RateLimiter(SystemConfigRepository systemConfigRepository,
+                       @Value("${app.ratelimit.maxBuckets:100000}") int maxBuckets) {
+        this.systemConfigRepository = systemConfigRepository;
+        this.maxBuckets = maxBuckets;
+    }
+
+    /**
+     * @return 0 nếu request được phép, ngược lại số nanosecond client nên chờ trước khi thử lại
+     */
+    public long tryConsume(String clientKey, String group) {
+        if (!enabled) {
+            return 0;
+        }
+        Limit limit = limits.getOrDefault(group, DEFAULT_LIMITS.get(GROUP_API));
+        long interval = limit.emissionIntervalNanos();
+        long tolerance = limit.burstToleranceNanos();
+
+        Bucket bucket = buckets.get(clientKey);
+        if (bucket == null) {
+            bucket = buckets.computeIfAbsent(clientKey, k -> new Bucket());
+            if (buckets.size() > maxBuckets) {
+                evictSample();
+            }
+        }
+        long now = System.nanoTime();
+        bucket.lastAccessNanos = now;
+
+        while (true) {
+            long tat = bucket.theoreticalArrival.get();
+            long start = (tat == Long.MIN_VALUE || tat < now) ? now : tat;
+            long wait = start - now - tolerance;
+            if (wait > 0) {
+                return wait;
+            }
+            if (bucket.theoreticalArrival.compareAndSet(tat, start + interval)) {
+                return 0;
+            }
+        }
+    }
+
+    public static String resolveGroup(String path) {
+        if (path == null) {
+            return GROUP_API;
+        }
+        if (path.startsWith("/api/auth/")) {
+            return GROUP_AUTH;
+        }
+        if (path.startsWith("/api/listings/search")) {
+            return GROUP_SEARCH;
+        }
+        return GROUP_API;
+    }
+
+    /**
+     * Chạm giới hạn số bucket trên luồng request: chỉ xét một mẫu {@code EVICTION_SAMPLE} bucket (chi phí cố
+     * định), bỏ các bucket đã hồi đầy; nếu mẫu không có bucket nào như vậy thì bỏ bucket lâu không dùng nhất
+     * trong mẫu. Việc dọn chính nằm ở {@link #purgeIdleBuckets()}. Chỉ một thread thực hiện tại một thời điểm.
+     */
+    private void evictSample() {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long now = System.nanoTime();
+            int seen = 0;
+            int removed = 0;
+            Map.Entry<String, Bucket> oldest = null;
+            for (Map.Entry<String, Bucket> e : buckets.entrySet()) {
+                if (++seen > EVICTION_SAMPLE) {
+                    break;
+                }
+                if (isRefilled(e.getValue(), now)) {
+                    removed += buckets.remove(e.getKey(), e.getValue()) ? 1 : 0;
+                } else if (oldest == null || e.getValue().lastAccessNanos < oldest.getValue().lastAccessNanos) {
+                    oldest = e;
+                }
+            }
+            if (removed == 0 && oldest != null) {
+                buckets.remove(oldest.getKey(), oldest.getValue());
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    /**
+     * Bỏ các bucket không dùng quá {@code idleMs} và đã hồi đầy; bỏ chúng không đổi kết quả giới hạn vì
+     * bucket tạo lại cũng đầy. Chạy cùng lịch nạp lại giới hạn, ngoài luồng request.
+     */
+    void purgeIdleBuckets() {
+        long now = System.nanoTime();
+        long idleNanos = TimeUnit.MILLISECONDS.toNanos(idleMs);
+        int before = buckets.size();
+        buckets.values().removeIf(b -> now - b.lastAccessNanos > idleNanos && isRefilled(b, now));
+        int removed = before - buckets.size();
+        if (removed > 0) {
+            log.debug("Removed {} idle rate limit buckets, {} remaining", removed, buckets.size());
+        }
+    }
+
+    private static boolean isRefilled(Bucket bucket, long now) {
+        long tat = bucket.theoreticalArrival.get();
+        return tat == Long.MIN_VALUE || tat <= now;
+    }
+
+    /**
+     * Nạp lại giới hạn từ SystemConfig, để chỉnh được mà không phải khởi động lại.
+     */
+    @Scheduled(initialDelay = 0, fixedDelayString = "${app.ratelimit.reloadMs:60000}")
+    public void reloadLimits() {
+        try {
+            Map<String, String> values = new HashMap<>();
+            for (SystemConfig c : systemConfigRepository.findByConfigKeyStartingWith(KEY_PREFIX)) {
+                values.put(c.getConfigKey(), c.getConfigValue());
+            }
+            Map<String, Limit> loaded = new HashMap<>();
+            for (Map.Entry<String, Limit> def : DEFAULT_LIMITS.entrySet()) {
+                String group = def.getKey();
+                loaded.put(group, new Limit(
+                        parseInt(values.get(KEY_PREFIX + group + ".capacity"), def.getValue().capacity()),
+                        parseInt(values.get(KEY_PREFIX + group + ".perMinute"), def.getValue().perMinute())));
+            }
+            this.limits = Map.copyOf(loaded);
+            this.enabled = !"false".equalsIgnoreCase(values.get(KEY_PREFIX + "enabled"));
+            this.maxBuckets = parseInt(values.get(KEY_PREFIX + "maxBuckets"), maxBuckets);
+        } catch (Exception e) {
+            log.warn("Could not reload rate limits, keeping previous values: {}", e.getMessage());
+        }
+        purgeIdleBuckets();
+    }
+
+    private static int parseInt(String value, int fallback) {
+        if (value == null || value.isBlank()) {
+            return fallback;
+        }
+        try {
+            int parsed = Integer.parseInt(value.trim());
+            return parsed > 0 ? parsed : fallback;
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+}
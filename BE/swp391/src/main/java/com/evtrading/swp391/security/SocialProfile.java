@@ -0,0 +1,10 @@
+package com.evtrading.swp391.security;
+
+/**
+ * Thông tin người dùng đã được provider (Google/Facebook) xác thực.
+ *
+ * @param provider   GOOGLE | FACEBOOK
+ * @param externalId sub (Google) hoặc id (Facebook)
+ */
+public record SocialProfile(String provider, String externalId, String email, String name, String avatarUrl) {
+}
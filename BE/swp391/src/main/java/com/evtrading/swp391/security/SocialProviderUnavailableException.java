@@ -0,0 +1,16 @@
+package com.evtrading.swp391.security;
+
+/**
+ * Provider (Google/Facebook) tạm thời không khả dụng: timeout, lỗi mạng hoặc circuit breaker đang mở.
+ * Khác với token không hợp lệ, lỗi này không phải do người dùng.
+ */
+public class SocialProviderUnavailableException extends RuntimeException {
+
+    public SocialProviderUnavailableException(String message) {
+        super(message);
+    }
+
+    public SocialProviderUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,18 @@
+package com.evtrading.swp391.security;
+
+/**
+ * Xác thực token do client gửi lên cho một social provider cụ thể.
+ */
+public interface SocialTokenVerifier {
+
+    /**
+     * @return tên provider viết hoa, ví dụ GOOGLE hoặc FACEBOOK
+     */
+    String provider();
+
+    /**
+     * @return profile nếu token hợp lệ, {@code null} nếu token không hợp lệ
+     * @throws SocialProviderUnavailableException nếu provider không phản hồi hoặc circuit đang mở
+     */
+    SocialProfile verify(String token);
+}
@@ -0,0 +1,36 @@
+package com.evtrading.swp391.security;
+
+/**
+ * Verifier giả lập dùng khi chạy offline/test (app.social.stub.enabled=true), không gọi ra ngoài.
+ *
+ * Token có dạng {@code stub:<externalId>[:<email>[:<name>]]}; mọi token khác bị coi là không hợp lệ.
+ */
+public class StubSocialTokenVerifier implements SocialTokenVerifier {
+
+    private static final String PREFIX = "stub:";
+
+    private final String provider;
+
+    public StubSocialTokenVerifier(String provider) {
+        this.provider = provider;
+    }
+
+    @Override
+    public String provider() {
+        return provider;
+    }
+
+    @Override
+    public SocialProfile verify(String token) {
+        if (token == null || !token.startsWith(PREFIX)) {
+            return null;
+        }
+        String[] parts = token.substring(PREFIX.length()).split(":", 3);
+        if (parts[0].isBlank()) {
+            return null;
+        }
+        String email = parts.length > 1 && !parts[1].isBlank() ? parts[1] : null;
+        String name = parts.length > 2 && !parts[2].isBlank() ? parts[2] : null;
+        return new SocialProfile(provider, parts[0], email, name, null);
+    }
+}
@@ -0,0 +1,224 @@
+package com.evtrading.swp391.service;
+
+import com.evtrading.swp391.repository.ContractRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lưu bản PDF đã ký về kho cục bộ ({@link ContractDocumentStore}) khi hợp đồng sang SIGNED_BOTH,
+ * để tải hợp đồng không còn phụ thuộc link DocuSeal (có thể hết hạn).
+ *
+ * Mỗi tick lấy các hợp đồng đến hạn, tải từng file một lần (stream thẳng xuống đĩa), rồi ghi hash
+ * bằng một UPDATE có điều kiện signedFileUrl không đổi. Lỗi thì thử lại với backoff tăng dần, tối đa
+ * {@code maxAttempts} lần; sau đó endpoint tải file tiếp tục chuyển hướng sang link DocuSeal.
+ *
+ * Việc tải chạy trên pool riêng ({@code workers} luồng), không chiếm luồng scheduler dùng chung của
+ * các job {@code @Scheduled} khác. Mỗi lần tải có hạn tổng {@code downloadTimeoutMs}: quá hạn thì
+ * stream bị đóng, kể cả khi server vẫn nhỏ giọt từng byte.
+ *
+ * Link đến từ webhook public nên chỉ tải từ host DocuSeal ({@link SignedDocumentUrlPolicy}); redirect được
+ * theo thủ công để từng đích đều được kiểm tra, không bao giờ tới địa chỉ nội bộ.
+ */
+@Component
+class ContractArchiver {
+    private static final Logger log = LoggerFactory.getLogger(ContractArchiver.class);
+
+    private static final long MAX_BACKOFF_MS = 3_600_000;
+    private static final int MAX_REDIRECTS = 5;
+
+    private final ContractRepository contractRepository;
+    private final ContractDocumentStore store;
+    private final SignedDocumentUrlPolicy urlPolicy;
+    private final TransactionTemplate transactionTemplate;
+    private final HttpClient httpClient;
+    private final ExecutorService downloads;
+    private final ScheduledExecutorService deadlines;
+    // Hợp đồng đang tải; tick sau không lấy lại
+    private final Set<Integer> inFlight = ConcurrentHashMap.newKeySet();
+
+    @Value("${app.contract.archive.batchSize:20}")
+    private int batchSize;
+    @Value("${app.contract.archive.maxAttempts:10}")
+    private int maxAttempts;
+    @Value("${app.contract.archive.backoffMs:30000}")
+    private long backoffMs;
+    // Thời gian chờ response header
+    @Value("${app.contract.archive.readTimeoutMs:60000}")
+    private long readTimeoutMs;
+    // Hạn tổng cho cả lần tải, tính cả thời gian đọc body
+    @Value("${app.contract.archive.downloadTimeoutMs:300000}")
+    private long downloadTimeoutMs;
+
+    ContractArchiver(ContractRepository contractRepository,
+                     ContractDocumentStore store,
+                     SignedDocumentUrlPolicy urlPolicy,
+                     TransactionTemplate transactionTemplate,
+                     @Value("${app.contract.archive.connectTimeoutMs:5000}") long connectTimeoutMs,
+                     @Value("${app.contract.archive.workers:2}") int workers) {
+        this.contractRepository = contractRepository;
+        this.store = store;
+        this.urlPolicy = urlPolicy;
+        this.transactionTemplate = transactionTemplate;
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .build();
+        this.downloads = Executors.newFixedThreadPool(Math.max(1, workers), daemonThreads("contract-archive-"));
+        this.deadlines = Executors.newSingleThreadScheduledExecutor(daemonThreads("contract-archive-deadline-"));
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger threads = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + threads.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    @Scheduled(fixedDelayString = "${app.contract.archive.pollMs:5000}")
+    public void archivePending() {
+        // Pool còn đang bận với lô trước: không xếp thêm, tránh hàng đợi phình ra khi DocuSeal chậm
+        if (inFlight.size() >= batchSize) {
+            return;
+        }
+        List<Object[]> due = contractRepository.findArchiveDue(new Date(), maxAttempts, PageRequest.of(0, batchSize));
+        for (Object[] row : due) {
+            Integer contractId = (Integer) row[0];
+            if (inFlight.size() >= batchSize) {
+                return;
+            }
+            if (!inFlight.add(contractId)) {
+                continue;
+            }
+            try {
+                downloads.execute(() -> {
+                    try {
+                        archive(contractId, (String) row[1], ((Number) row[2]).intValue());
+                    } finally {
+                        inFlight.remove(contractId);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                inFlight.remove(contractId);
+                return;
+            }
+        }
+    }
+
+    private void archive(Integer contractId, String url, int attempts) {
+        ContractDocumentStore.StoredFile stored;
+        try {
+            stored = download(url);
+        } catch (IOException | RuntimeException e) {
+            long delay = Math.min(MAX_BACKOFF_MS, backoffMs << Math.min(attempts, 20));
+            log.warn("Archiving signed document of contract {} failed (attempt {}), retrying in {} ms: {}",
+                    contractId, attempts + 1, delay, e.getMessage());
+            transactionTemplate.executeWithoutResult(status -> contractRepository.recordArchiveFailure(
+                    contractId, new Date(System.currentTimeMillis() + delay)));
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        Integer updated = transactionTemplate.execute(status -> contractRepository.markArchived(
+                contractId, url, stored.sha256(), stored.size(), new Date()));
+        if (updated != null && updated > 0) {
+            log.info("Archived signed document of contract {} ({} bytes, sha256 {})", contractId, stored.size(), stored.sha256());
+        }
+    }
+
+    private ContractDocumentStore.StoredFile download(String url) throws IOException, InterruptedException {
+        if (!urlPolicy.isAllowed(url)) {
+            throw new IOException("Document URL is not on an allowed DocuSeal host");
+        }
+        HttpResponse<InputStream> response = fetch(URI.create(url));
+        try (InputStream body = response.body()) {
+            if (response.statusCode() != 200) {
+                throw new IOException("HTTP " + response.statusCode() + " from document URL");
+            }
+            // Đóng stream từ luồng khác khi quá hạn để read() đang chặn ném IOException
+            AtomicBoolean expired = new AtomicBoolean();
+            ScheduledFuture<?> deadline = deadlines.schedule(() -> {
+                expired.set(true);
+                try {
+                    body.close();
+                } catch (IOException ignored) {
+                    // Chỉ cần ngắt lần đọc
+                }
+            }, downloadTimeoutMs, TimeUnit.MILLISECONDS);
+            try {
+                return store.store(body);
+            } catch (IOException e) {
+                if (expired.get()) {
+                    throw new IOException("Download exceeded " + downloadTimeoutMs + " ms", e);
+                }
+                throw e;
+            } finally {
+                deadline.cancel(false);
+            }
+        }
+    }
+
+    // Tự theo redirect để kiểm tra từng đích (link DocuSeal thường chuyển sang storage của nó)
+    private HttpResponse<InputStream> fetch(URI uri) throws IOException, InterruptedException {
+        for (int hop = 0; ; hop++) {
+            if (!urlPolicy.isSafeToFetch(uri)) {
+                throw new IOException("Refusing to fetch document from " + uri.getHost());
+            }
+            HttpRequest request = HttpRequest.newBuilder(uri)
+                    .timeout(Duration.ofMillis(readTimeoutMs))
+                    .GET()
+                    .build();
+            HttpResponse<InputStream> response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            int status = response.statusCode();
+            if (status < 300 || status >= 400 || status == 304) {
+                return response;
+            }
+            response.body().close();
+            String location = response.headers().firstValue("Location")
+                    .orElseThrow(() -> new IOException("HTTP " + status + " without Location from document URL"));
+            if (hop >= MAX_REDIRECTS) {
+                throw new IOException("Too many redirects from document URL");
+            }
+            try {
+                uri = uri.resolve(location);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Invalid redirect location from document URL", e);
+            }
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        downloads.shutdownNow();
+        deadlines.shutdownNow();
+    }
+}
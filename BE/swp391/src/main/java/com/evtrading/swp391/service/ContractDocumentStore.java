@@ -0,0 +1,92 @@
+package com.evtrading.swp391.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.regex.Pattern;
+
+/**
+ * Kho file hợp đồng đã ký trên đĩa, đánh địa chỉ theo nội dung: file nằm ở {@code <dir>/ab/cd/<sha256>},
+ * nên cùng một nội dung chỉ lưu một lần và file đã ghi không bao giờ bị sửa.
+ * Ghi vào file tạm cùng thư mục rồi rename, người đọc không bao giờ thấy file dở dang.
+ */
+@Component
+public class ContractDocumentStore {
+
+    private static final Pattern SHA256_HEX = Pattern.compile("[0-9a-f]{64}");
+
+    public record StoredFile(String sha256, long size) {}
+
+    private final Path root;
+    private final long maxBytes;
+
+    public ContractDocumentStore(@Value("${app.contract.archive.dir:./data/contracts}") String dir,
+                                 @Value("${app.contract.archive.maxBytes:52428800}") long maxBytes) {
+        this.root = Paths.get(dir).toAbsolutePath().normalize();
+        this.maxBytes = maxBytes;
+    }
+
+    public StoredFile store(InputStream in) throws IOException {
+        Files.createDirectories(root);
+        Path tmp = Files.createTempFile(root, "upload-", ".tmp");
+        try {
+            MessageDigest digest = sha256();
+            long size = 0;
+            try (OutputStream out = new DigestOutputStream(Files.newOutputStream(tmp), digest)) {
+                byte[] buffer = new byte[64 * 1024];
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    size += n;
+                    if (size > maxBytes) {
+                        throw new IOException("Document exceeds " + maxBytes + " bytes");
+                    }
+                    out.write(buffer, 0, n);
+                }
+            }
+            String sha = HexFormat.of().formatHex(digest.digest());
+            Path target = path(sha);
+            if (!Files.exists(target)) {
+                Files.createDirectories(target.getParent());
+                try {
+                    Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(tmp, target);
+                } catch (FileAlreadyExistsException e) {
+                    // Luồng khác vừa ghi cùng nội dung
+                }
+            }
+            return new StoredFile(sha, size);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /** Đường dẫn file của {@code sha256}; ném IllegalArgumentException nếu không phải hash hợp lệ. */
+    public Path path(String sha256) {
+        if (sha256 == null || !SHA256_HEX.matcher(sha256).matches()) {
+            throw new IllegalArgumentException("Invalid document hash");
+        }
+        return root.resolve(sha256.substring(0, 2)).resolve(sha256.substring(2, 4)).resolve(sha256);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.evtrading.swp391.service;
+
+import com.evtrading.swp391.repository.ContractParticipantRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Điền bảng contract_participant cho các hợp đồng tạo trước khi có bảng này, theo từng khoảng contractID
+ * như {@link OrderSellerBackfill}.
+ *
+ * Đồng thời tạo unique index cho contract.docuseal_envelopeid. Cột này NULL trong lúc chờ DocuSeal trả
+ * submission id, mà unique constraint của SQL Server chỉ cho một NULL, nên dùng filtered index — loại
+ * index mà ddl-auto không sinh được.
+ */
+@Component
+class ContractParticipantBackfill {
+    private static final Logger log = LoggerFactory.getLogger(ContractParticipantBackfill.class);
+
+    private static final int BATCH_SIZE = 5000;
+
+    private static final String ENVELOPE_INDEX_DDL =
+            "IF NOT EXISTS (SELECT 1 FROM sys.indexes WHERE name = 'ux_contract_docuseal_envelope' " +
+            "AND object_id = OBJECT_ID('contract')) " +
+            "CREATE UNIQUE INDEX ux_contract_docuseal_envelope ON contract (docuseal_envelopeid) " +
+            "WHERE docuseal_envelopeid IS NOT NULL";
+
+    private final ContractParticipantRepository participantRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final JdbcTemplate jdbcTemplate;
+
+    ContractParticipantBackfill(ContractParticipantRepository participantRepository,
+                                TransactionTemplate transactionTemplate,
+                                JdbcTemplate jdbcTemplate) {
+        this.participantRepository = participantRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        try {
+            jdbcTemplate.execute(ENVELOPE_INDEX_DDL);
+        } catch (DataAccessException e) {
+            // Thường do dữ liệu cũ có envelope id trùng; cần dọn tay rồi khởi động lại
+            log.warn("Cannot create unique index on contract.docuseal_envelopeid: {}", e.getMessage());
+        }
+
+        Integer maxId = participantRepository.findMaxContractIdWithoutParticipants();
+        if (maxId == null) {
+            return;
+        }
+        int total = 0;
+        for (int from = 0; from < maxId; from += BATCH_SIZE) {
+            int lo = from;
+            int hi = Math.min(from + BATCH_SIZE, maxId);
+            Integer inserted = transactionTemplate.execute(status ->
+                    participantRepository.backfillSellers(lo, hi) + participantRepository.backfillBuyers(lo, hi));
+            total += inserted == null ? 0 : inserted;
+        }
+        log.info("Backfilled {} contract participants", total);
+    }
+}
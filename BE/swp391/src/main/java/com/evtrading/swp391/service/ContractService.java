@@ -1,37 +1,89 @@
 package com.evtrading.swp391.service;
 
+import com.evtrading.swp391.dto.ContractBulkSendDTO;
 import com.evtrading.swp391.dto.ContractCreateDTO;
 import com.evtrading.swp391.dto.ContractDTO;
+import com.evtrading.swp391.dto.ContractSendResult;
 import com.evtrading.swp391.entity.Contract;
+import com.evtrading.swp391.entity.ContractParticipant;
 import com.evtrading.swp391.entity.Order;
 import com.evtrading.swp391.entity.Profile;
 import com.evtrading.swp391.entity.User;
+import com.evtrading.swp391.event.DomainEvent;
+import com.evtrading.swp391.repository.ContractParticipantRepository;
 import com.evtrading.swp391.repository.ContractRepository;
 import com.evtrading.swp391.repository.OrderRepository;
 import com.evtrading.swp391.repository.ProfileRepository;
 import com.evtrading.swp391.repository.UserRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 @Service
 public class ContractService {
+    private static final Logger log = LoggerFactory.getLogger(ContractService.class);
 
     private final ContractRepository contractRepository;
+    private final ContractParticipantRepository participantRepository;
     private final OrderRepository orderRepository;
     private final ProfileRepository profileRepository;
     private final UserRepository userRepository;
     private final DocuSealService docuSealService;
-
+    private final TransactionTemplate transactionTemplate;
+    private final ContractStatusCache statusCache;
+    private final OutboxService outboxService;
+    private final ObjectMapper objectMapper;
+    private final SignedDocumentUrlPolicy signedDocumentUrlPolicy;
+    // Listener long-poll nạp lại trong afterCommit của transaction khác, nên không được join vào đó
+    private final TransactionTemplate readTemplate;
+    private final ExecutorService sendExecutor;
+    private final ExecutorService bulkExecutor;
+
+    private static final int BULK_CHUNK = 500;
+    private static final long MAX_SEND_BACKOFF_MS = 3_600_000;
+
+    // Lần gửi chưa có kết quả sau chừng này thì coi như đã mất (restart, deploy) và được gửi lại
+    @Value("${docuseal.send.staleMs:300000}")
+    private long sendStaleMs;
+    @Value("${docuseal.send.maxAttempts:8}")
+    private int maxSendAttempts;
+    @Value("${docuseal.send.backoffMs:60000}")
+    private long sendBackoffMs;
+    @Value("${docuseal.send.recoveryBatch:50}")
+    private int sendRecoveryBatch;
+
+    private static final String STATUS_DRAFT = "Draft";
+    private static final String STATUS_SEND_FAILED = "SEND_FAILED";
+    private static final List<String> RESENDABLE = List.of(STATUS_DRAFT, STATUS_SEND_FAILED);
     private static final String STATUS_PENDING = "PENDING";
     private static final String STATUS_SIGNED = "SIGNED";
     private static final String STATUS_DECLINED = "DECLINED";
@@ -39,30 +91,75 @@ public class ContractService {
     private static final String DOCUSEAL_ROLE_BUYER = "Second Party";
 
     public ContractService(ContractRepository contractRepository,
+                           ContractParticipantRepository participantRepository,
                            OrderRepository orderRepository,
                            ProfileRepository profileRepository,
                            UserRepository userRepository,
-                           DocuSealService docuSealService) {
+                           DocuSealService docuSealService,
+                           TransactionTemplate transactionTemplate,
+                           ContractStatusCache statusCache,
+                           OutboxService outboxService,
+                           ObjectMapper objectMapper,
+                           SignedDocumentUrlPolicy signedDocumentUrlPolicy,
+                           @Value("${docuseal.send.workers:4}") int sendWorkers,
+                           @Value("${docuseal.bulk.workers:16}") int bulkWorkers) {
         this.contractRepository = contractRepository;
+        this.participantRepository = participantRepository;
         this.orderRepository = orderRepository;
         this.profileRepository = profileRepository;
         this.userRepository = userRepository;
         this.docuSealService = docuSealService;
+        this.transactionTemplate = transactionTemplate;
+        this.statusCache = statusCache;
+        this.outboxService = outboxService;
+        this.objectMapper = objectMapper;
+        this.signedDocumentUrlPolicy = signedDocumentUrlPolicy;
+        this.readTemplate = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.readTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.readTemplate.setReadOnly(true);
+        this.sendExecutor = Executors.newFixedThreadPool(Math.max(1, sendWorkers), daemonThreads("docuseal-send-"));
+        // Tách riêng để một lần gửi hàng loạt không làm các lần gửi lẻ phải xếp hàng phía sau
+        this.bulkExecutor = Executors.newFixedThreadPool(Math.max(1, bulkWorkers), daemonThreads("docuseal-bulk-"));
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger threads = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + threads.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
     }
 
     private Optional<Contract> findContractByParticipantEmail(String email) {
         if (email == null || email.isBlank()) {
             return Optional.empty();
         }
-        Optional<Contract> sellerMatch = contractRepository.findTopBySellerEmailOrderByUpdateAtDesc(email);
-        if (sellerMatch.isPresent()) {
-            return sellerMatch;
-        }
-        Optional<Contract> buyerMatch = contractRepository.findTopByBuyerEmailOrderByUpdateAtDesc(email);
-        if (buyerMatch.isPresent()) {
-            return buyerMatch;
-        }
-        return Optional.empty();
+        return participantRepository.findLatestContractsByEmail(ContractParticipant.normalizeEmail(email),
+                PageRequest.of(0, 1)).stream().findFirst();
+    }
+
+    // Chỉ mục người ký (tạo mới hoặc cập nhật) cho lần gửi này; sentAt mới nhất thắng khi tìm theo email
+    private List<ContractParticipant> participants(Contract contract, List<ContractParticipant> existing, Date sentAt) {
+        Map<String, ContractParticipant> byRole = new HashMap<>();
+        for (ContractParticipant p : existing) {
+            byRole.put(p.getRole(), p);
+        }
+        return List.of(
+                participant(byRole.get(ContractParticipant.SELLER), contract, ContractParticipant.SELLER,
+                        contract.getSellerEmail(), sentAt),
+                participant(byRole.get(ContractParticipant.BUYER), contract, ContractParticipant.BUYER,
+                        contract.getBuyerEmail(), sentAt));
+    }
+
+    private ContractParticipant participant(ContractParticipant existing, Contract contract, String role,
+                                            String email, Date sentAt) {
+        ContractParticipant p = existing != null ? existing : new ContractParticipant();
+        p.setContract(contract);
+        p.setRole(role);
+        p.setEmail(ContractParticipant.normalizeEmail(email));
+        p.setSentAt(sentAt);
+        return p;
     }
 
     private String resolveDisplayName(User user) {
@@ -99,9 +196,12 @@ public class ContractService {
         if (isSellerParty(contract, normalizedEmail, normalizedRole)) {
             matched = true;
             if (normalizedStatus != null) {
+                boolean wasSigned = isSignedStatus(contract.getSellerStatus());
                 contract.setSellerStatus(normalizedStatus);
                 if (STATUS_SIGNED.equalsIgnoreCase(normalizedStatus)) {
-                    contract.setSellerSignedAt(signedAt != null ? signedAt : new Date());
+                    if (signedAt != null || !wasSigned || contract.getSellerSignedAt() == null) {
+                        contract.setSellerSignedAt(signedAt != null ? signedAt : new Date());
+                    }
                 } else if (STATUS_DECLINED.equalsIgnoreCase(normalizedStatus)) {
                     contract.setSellerSignedAt(null);
                 }
@@ -111,9 +211,12 @@ public class ContractService {
         if (isBuyerParty(contract, normalizedEmail, normalizedRole)) {
             matched = true;
             if (normalizedStatus != null) {
+                boolean wasSigned = isSignedStatus(contract.getBuyerStatus());
                 contract.setBuyerStatus(normalizedStatus);
                 if (STATUS_SIGNED.equalsIgnoreCase(normalizedStatus)) {
-                    contract.setBuyerSignedAt(signedAt != null ? signedAt : new Date());
+                    if (signedAt != null || !wasSigned || contract.getBuyerSignedAt() == null) {
+                        contract.setBuyerSignedAt(signedAt != null ? signedAt : new Date());
+                    }
                 } else if (STATUS_DECLINED.equalsIgnoreCase(normalizedStatus)) {
                     contract.setBuyerSignedAt(null);
                 }
@@ -234,6 +337,24 @@ public class ContractService {
         }
     }
 
+    // File đã ký đổi thì bản lưu cục bộ không còn đúng; ContractArchiver sẽ tải lại
+    private void setSignedFileUrl(Contract contract, String signedFileUrl) {
+        if (Objects.equals(contract.getSignedFileUrl(), signedFileUrl)) {
+            return;
+        }
+        // Webhook là public: link ngoài host DocuSeal bị bỏ, không lưu để tải về hay chuyển hướng tới
+        if (signedFileUrl != null && !signedDocumentUrlPolicy.isAllowed(signedFileUrl)) {
+            log.warn("Ignoring signed file URL of contract {} outside the DocuSeal host", contract.getContractID());
+            return;
+        }
+        contract.setSignedFileUrl(signedFileUrl);
+        contract.setArchiveSha256(null);
+        contract.setArchiveSize(null);
+        contract.setArchivedAt(null);
+        contract.setArchiveAttempts(null);
+        contract.setArchiveRetryAt(null);
+    }
+
     private boolean isSignedStatus(String status) {
         return status != null && STATUS_SIGNED.equalsIgnoreCase(status);
     }
@@ -254,16 +375,52 @@ public class ContractService {
         return ev.contains("completed") || ev.contains("signed");
     }
 
-    @Transactional
+    /**
+     * Lưu hợp đồng ở trạng thái Draft rồi trả về ngay; việc gọi DocuSeal chạy trên luồng riêng, ngoài
+     * transaction, và kết quả được ghi bằng một transaction ngắn khác (xem {@link #dispatch}).
+     * Client theo dõi trạng thái qua GET /api/contracts/order/{orderId}.
+     * Lần gửi bị mất (restart, lỗi DocuSeal) được {@link #resendStale()} gửi lại từ dữ liệu đã lưu.
+     */
     public ContractDTO createDraftAndSend(ContractCreateDTO req, String currentUsername) {
         if (currentUsername == null || currentUsername.isBlank()) {
             throw new SecurityException("Authentication required");
         }
+        DraftResult draft = transactionTemplate.execute(status -> saveDraft(req, currentUsername));
+        sendExecutor.execute(() -> dispatch(draft.send()));
+        return draft.dto();
+    }
+
+    private record SendRequest(Integer contractId, Integer orderId, Date requestedAt, String templateId,
+                               List<DocuSealService.Signer> signers, Map<String, Object> variables,
+                               Map<String, Object> metadata, String sellerEmail, String buyerEmail) {}
+
+    private record DraftResult(ContractDTO dto, SendRequest send) {}
+
+    private DraftResult saveDraft(ContractCreateDTO req, String currentUsername) {
         Order order = orderRepository.findById(req.getOrderId())
                 .orElseThrow(() -> new IllegalArgumentException("Order not found: " + req.getOrderId()));
 
         User current = userRepository.findByUsername(currentUsername)
                 .orElseThrow(() -> new IllegalArgumentException("User not found: " + currentUsername));
+        requireSendPermission(order, current);
+
+        Contract contract = contractRepository.findByOrder(order).orElseGet(Contract::new);
+        Date now = new Date();
+        Draft draft = prepareDraft(contract, order, current, req, this::resolveDisplayName, now);
+        contract = contractRepository.save(contract);
+        participantRepository.saveAll(participants(contract, participantRepository.findByContract(contract), now));
+        changed(contract, order.getOrderID());
+        return new DraftResult(toDTO(contract), draft.toSend(contract));
+    }
+
+    private void requireSendPermission(Order order, User current) {
+        if (!canAccess(order, current)) {
+            throw new SecurityException("Not allowed to send contract for this order");
+        }
+    }
+
+    // Người mua, người bán của đơn, hoặc ADMIN/MODERATOR
+    private boolean canAccess(Order order, User current) {
         User buyer = order.getBuyer();
         User seller = order.getListing() != null ? order.getListing().getUser() : null;
         if (buyer == null || seller == null) {
@@ -274,12 +431,52 @@ public class ContractService {
         boolean isSeller = seller.getUserID().equals(current.getUserID());
         boolean isStaff = current.getRole() != null && current.getRole().getRoleName() != null &&
                 ("ADMIN".equalsIgnoreCase(current.getRole().getRoleName()) || "MODERATOR".equalsIgnoreCase(current.getRole().getRoleName()));
-        if (!isBuyer && !isSeller && !isStaff) {
-            throw new SecurityException("Not allowed to send contract for this order");
+        return isBuyer || isSeller || isStaff;
+    }
+
+    /**
+     * File đã ký của hợp đồng: {@code sha256} khác null khi đã có bản lưu cục bộ, ngược lại chỉ có
+     * {@code remoteUrl} (link DocuSeal) trong lúc ContractArchiver chưa tải xong.
+     */
+    public record SignedDocument(String sha256, Long size, String remoteUrl) {}
+
+    @Transactional(readOnly = true)
+    public Optional<SignedDocument> findSignedDocument(Integer contractId, String currentUsername) {
+        if (currentUsername == null || currentUsername.isBlank()) {
+            throw new SecurityException("Authentication required");
         }
+        Contract contract = contractRepository.findById(contractId)
+                .orElseThrow(() -> new IllegalArgumentException("Contract not found: " + contractId));
+        User current = userRepository.findByUsername(currentUsername)
+                .orElseThrow(() -> new IllegalArgumentException("User not found: " + currentUsername));
+        if (contract.getOrder() == null || !canAccess(contract.getOrder(), current)) {
+            throw new SecurityException("Not allowed to view this contract");
+        }
+        if (contract.getArchiveSha256() == null && contract.getSignedFileUrl() == null) {
+            return Optional.empty();
+        }
+        // Link lưu trước khi có kiểm tra host thì không chuyển hướng tới
+        String remoteUrl = contract.getSignedFileUrl() != null && signedDocumentUrlPolicy.isAllowed(contract.getSignedFileUrl())
+                ? contract.getSignedFileUrl() : null;
+        return Optional.of(new SignedDocument(contract.getArchiveSha256(), contract.getArchiveSize(), remoteUrl));
+    }
 
-        Optional<Contract> existingOpt = contractRepository.findByOrder(order);
-        Contract contract = existingOpt.orElseGet(Contract::new);
+    private record Draft(Order order, Date requestedAt, String templateId, List<DocuSealService.Signer> signers,
+                         Map<String, Object> variables, Map<String, Object> metadata,
+                         String sellerEmail, String buyerEmail) {
+        // contract_id chỉ có sau khi lưu hợp đồng mới
+        SendRequest toSend(Contract contract) {
+            metadata.putIfAbsent("contract_id", contract.getContractID());
+            return new SendRequest(contract.getContractID(), order.getOrderID(), requestedAt, templateId, signers,
+                    variables, metadata, sellerEmail, buyerEmail);
+        }
+    }
+
+    /** Điền các trường Draft vào {@code contract} (chưa lưu) và chuẩn bị dữ liệu gửi DocuSeal. */
+    private Draft prepareDraft(Contract contract, Order order, User current, ContractCreateDTO req,
+                               Function<User, String> displayName, Date now) {
+        User buyer = order.getBuyer();
+        User seller = order.getListing().getUser();
         String templateId = firstNonBlank(req.getTemplateId(), contract.getDocusealTemplateID());
         if (templateId == null || templateId.isBlank()) {
             throw new IllegalArgumentException("DocuSeal template id is required");
@@ -291,8 +488,8 @@ public class ContractService {
             throw new IllegalArgumentException("Buyer and seller email must be provided");
         }
 
-        String sellerName = firstNonBlank(req.getSellerName(), resolveDisplayName(seller));
-        String buyerName = firstNonBlank(req.getBuyerName(), resolveDisplayName(buyer));
+        String sellerName = firstNonBlank(req.getSellerName(), displayName.apply(seller));
+        String buyerName = firstNonBlank(req.getBuyerName(), displayName.apply(buyer));
 
         Map<String, Object> variables = req.getVariables() != null ? new HashMap<>(req.getVariables()) : new HashMap<>();
         if (req.getContent() != null && !req.getContent().isBlank()) {
@@ -301,7 +498,6 @@ public class ContractService {
 
         Map<String, Object> metadata = req.getMetadata() != null ? new HashMap<>(req.getMetadata()) : new HashMap<>();
 
-        Date now = new Date();
         if (contract.getContractID() == null) {
             contract.setCreateAt(now);
         }
@@ -318,13 +514,12 @@ public class ContractService {
         contract.setBuyerStatus(STATUS_PENDING);
         contract.setBuyerSigningUrl(null);
         contract.setBuyerSignedAt(null);
-        contract.setSignedFileUrl(null);
+        setSignedFileUrl(contract, null);
         contract.setSignedAt(null);
-        contract.setStatus("Draft");
+        contract.setStatus(STATUS_DRAFT);
+        contract.setSendRequestedAt(now);
         contract.setUpdateAt(now);
-        contract = contractRepository.save(contract);
 
-        metadata.putIfAbsent("contract_id", contract.getContractID());
         metadata.putIfAbsent("order_id", order.getOrderID());
         metadata.putIfAbsent("seller_id", seller.getUserID());
         metadata.putIfAbsent("buyer_id", buyer.getUserID());
@@ -335,32 +530,243 @@ public class ContractService {
         metadata.putIfAbsent("initiated_by", current.getUsername());
         metadata.putIfAbsent("generated_at", OffsetDateTime.now(ZoneOffset.UTC).toString());
 
+        contract.setSendPayload(writeSendPayload(variables, metadata));
+        contract.setSendAttempts(0);
+        contract.setSendRetryAt(null);
+
+        return new Draft(order, now, templateId, signers(sellerEmail, sellerName, buyerEmail, buyerName),
+                variables, metadata, sellerEmail, buyerEmail);
+    }
+
+    private static List<DocuSealService.Signer> signers(String sellerEmail, String sellerName,
+                                                        String buyerEmail, String buyerName) {
         List<DocuSealService.Signer> signers = new ArrayList<>();
         signers.add(new DocuSealService.Signer(DOCUSEAL_ROLE_SELLER, sellerEmail, sellerName));
         signers.add(new DocuSealService.Signer(DOCUSEAL_ROLE_BUYER, buyerEmail, buyerName));
+        return signers;
+    }
 
-        DocuSealService.CreateResult result = docuSealService.createEnvelope(templateId, signers, variables, metadata);
+    private record SendPayload(Map<String, Object> variables, Map<String, Object> metadata) {}
 
-        contract.setDocusealEnvelopeID(result.envelopeId);
-        String fallbackUrl = result.signingUrl;
-        String sellerUrl = firstNonBlank(result.signingUrlForRole(DOCUSEAL_ROLE_SELLER), result.signingUrlForEmail(sellerEmail), fallbackUrl);
-        String buyerUrl = firstNonBlank(result.signingUrlForRole(DOCUSEAL_ROLE_BUYER), result.signingUrlForEmail(buyerEmail), fallbackUrl);
-        contract.setSellerSigningUrl(sellerUrl);
-        contract.setBuyerSigningUrl(buyerUrl);
-        contract.setSellerStatus(STATUS_PENDING);
-        contract.setBuyerStatus(STATUS_PENDING);
-        contract.setStatus("PENDING_BOTH");
-        contract.setUpdateAt(new Date());
-        contract = contractRepository.save(contract);
+    private String writeSendPayload(Map<String, Object> variables, Map<String, Object> metadata) {
+        try {
+            return objectMapper.writeValueAsString(new SendPayload(variables, metadata));
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Contract variables/metadata must be JSON serializable", e);
+        }
+    }
 
-        return toDTO(contract);
+    /**
+     * Gửi lại các hợp đồng kẹt ở Draft (lần gửi mất khi restart/deploy hoặc còn trong hàng đợi lúc tắt)
+     * hoặc SEND_FAILED (DocuSeal lỗi, circuit breaker mở), với backoff tăng dần tối đa {@code maxAttempts} lần.
+     * Mỗi lần gửi lại đổi token sendRequestedAt bằng UPDATE có điều kiện, nên chỉ một instance gửi và
+     * {@link #isCurrentSend} bỏ kết quả muộn của lần gửi cũ.
+     */
+    @Scheduled(initialDelayString = "${docuseal.send.recoveryMs:60000}", fixedDelayString = "${docuseal.send.recoveryMs:60000}")
+    public void resendStale() {
+        Date now = new Date();
+        List<Integer> due = contractRepository.findSendDue(RESENDABLE, new Date(now.getTime() - sendStaleMs), now,
+                maxSendAttempts, PageRequest.of(0, sendRecoveryBatch));
+        for (Integer contractId : due) {
+            try {
+                SendRequest send = transactionTemplate.execute(status -> claimResend(contractId));
+                if (send != null) {
+                    log.info("Re-sending contract {} to DocuSeal", contractId);
+                    sendExecutor.execute(() -> dispatch(send));
+                }
+            } catch (RuntimeException e) {
+                log.warn("Cannot re-send contract {}: {}", contractId, e.getMessage());
+            }
+        }
+    }
+
+    private SendRequest claimResend(Integer contractId) {
+        Contract contract = contractRepository.findById(contractId).orElse(null);
+        if (contract == null || contract.getOrder() == null || contract.getSendRequestedAt() == null) {
+            return null;
+        }
+        Date token = new Date();
+        if (contractRepository.claimResend(contractId, contract.getSendRequestedAt(), token, RESENDABLE) == 0) {
+            return null;
+        }
+        Map<String, Object> variables = new HashMap<>();
+        Map<String, Object> metadata = new HashMap<>();
+        if (contract.getSendPayload() != null) {
+            try {
+                SendPayload payload = objectMapper.readValue(contract.getSendPayload(), SendPayload.class);
+                if (payload.variables() != null) variables.putAll(payload.variables());
+                if (payload.metadata() != null) metadata.putAll(payload.metadata());
+            } catch (JsonProcessingException e) {
+                log.warn("Stored send payload of contract {} is unreadable, re-sending without it", contractId);
+            }
+        }
+        // Hợp đồng tạo trước khi có sendPayload: dựng lại phần tối thiểu
+        if (contract.getContent() != null && !contract.getContent().isBlank()) {
+            variables.putIfAbsent("content", contract.getContent());
+        }
+        metadata.putIfAbsent("order_id", contract.getOrder().getOrderID());
+        metadata.putIfAbsent("contract_id", contractId);
+        metadata.putIfAbsent("seller_role", DOCUSEAL_ROLE_SELLER);
+        metadata.putIfAbsent("buyer_role", DOCUSEAL_ROLE_BUYER);
+        metadata.putIfAbsent("seller_email", contract.getSellerEmail());
+        metadata.putIfAbsent("buyer_email", contract.getBuyerEmail());
+        return new SendRequest(contractId, contract.getOrder().getOrderID(), token, contract.getDocusealTemplateID(),
+                signers(contract.getSellerEmail(), contract.getSellerName(), contract.getBuyerEmail(), contract.getBuyerName()),
+                variables, metadata, contract.getSellerEmail(), contract.getBuyerEmail());
+    }
+
+    /**
+     * Gửi hợp đồng cho nhiều đơn. Đơn, hợp đồng cũ, profile và chỉ mục người ký được nạp theo lô
+     * (mỗi lô {@value #BULK_CHUNK} đơn, một transaction), rồi các lần gọi DocuSeal chạy song song trên
+     * {@code docuseal.bulk.workers} luồng. Mỗi kết quả được đẩy cho {@code sink} ngay khi có, từ nhiều luồng.
+     */
+    public CompletableFuture<Void> bulkSend(ContractBulkSendDTO req, String currentUsername,
+                                            Consumer<ContractSendResult> sink) {
+        if (currentUsername == null || currentUsername.isBlank()) {
+            throw new SecurityException("Authentication required");
+        }
+        User current = userRepository.findByUsername(currentUsername)
+                .orElseThrow(() -> new IllegalArgumentException("User not found: " + currentUsername));
+        List<Integer> orderIds = req.getOrderIds().stream().filter(Objects::nonNull).distinct().toList();
+
+        List<CompletableFuture<Void>> sends = new ArrayList<>(orderIds.size());
+        for (int from = 0; from < orderIds.size(); from += BULK_CHUNK) {
+            List<Integer> chunk = orderIds.subList(from, Math.min(from + BULK_CHUNK, orderIds.size()));
+            List<SendRequest> drafted = transactionTemplate.execute(status -> saveDrafts(chunk, current, req, sink));
+            for (SendRequest send : drafted) {
+                sends.add(CompletableFuture.runAsync(() -> sink.accept(dispatch(send)), bulkExecutor));
+            }
+        }
+        return CompletableFuture.allOf(sends.toArray(CompletableFuture[]::new));
+    }
+
+    private List<SendRequest> saveDrafts(List<Integer> orderIds, User current, ContractBulkSendDTO req,
+                                         Consumer<ContractSendResult> sink) {
+        Map<Integer, Order> orders = new HashMap<>();
+        Set<Integer> userIds = new HashSet<>();
+        for (Order order : orderRepository.findForContracts(orderIds)) {
+            orders.put(order.getOrderID(), order);
+            if (order.getBuyer() != null) userIds.add(order.getBuyer().getUserID());
+            if (order.getListing() != null && order.getListing().getUser() != null) {
+                userIds.add(order.getListing().getUser().getUserID());
+            }
+        }
+        Map<Integer, Contract> existing = new HashMap<>();
+        for (Contract contract : contractRepository.findByOrder_OrderIDIn(orders.keySet())) {
+            existing.put(contract.getOrder().getOrderID(), contract);
+        }
+        Map<Integer, String> profileNames = new HashMap<>();
+        for (Profile profile : profileRepository.findByUser_UserIDIn(userIds)) {
+            profileNames.put(profile.getUser().getUserID(), profile.getFullName());
+        }
+        Function<User, String> displayName = user -> firstNonBlank(profileNames.get(user.getUserID()),
+                user.getUsername(), user.getEmail());
+
+        ContractCreateDTO shared = new ContractCreateDTO();
+        shared.setContent(req.getContent());
+        shared.setMetadata(req.getMetadata());
+        shared.setVariables(req.getVariables());
+        shared.setTemplateId(req.getTemplateId());
+
+        Date now = new Date();
+        List<Contract> contracts = new ArrayList<>(orderIds.size());
+        List<Draft> drafts = new ArrayList<>(orderIds.size());
+        for (Integer orderId : orderIds) {
+            Order order = orders.get(orderId);
+            if (order == null) {
+                sink.accept(ContractSendResult.rejected(orderId, "Order not found: " + orderId));
+                continue;
+            }
+            Contract contract = existing.getOrDefault(orderId, new Contract());
+            try {
+                requireSendPermission(order, current);
+                drafts.add(prepareDraft(contract, order, current, shared, displayName, now));
+                contracts.add(contract);
+            } catch (RuntimeException e) {
+                sink.accept(ContractSendResult.rejected(orderId, e.getMessage()));
+            }
+        }
+        if (contracts.isEmpty()) {
+            return List.of();
+        }
+        contracts = contractRepository.saveAll(contracts);
+
+        Map<Integer, List<ContractParticipant>> participantsByContract = new HashMap<>();
+        for (ContractParticipant p : participantRepository.findByContractIn(contracts)) {
+            participantsByContract.computeIfAbsent(p.getContract().getContractID(), k -> new ArrayList<>()).add(p);
+        }
+        List<ContractParticipant> participants = new ArrayList<>(contracts.size() * 2);
+        List<SendRequest> sends = new ArrayList<>(contracts.size());
+        for (int i = 0; i < contracts.size(); i++) {
+            Contract contract = contracts.get(i);
+            participants.addAll(participants(contract,
+                    participantsByContract.getOrDefault(contract.getContractID(), List.of()), now));
+            sends.add(drafts.get(i).toSend(contract));
+            changed(contract, drafts.get(i).order().getOrderID());
+        }
+        participantRepository.saveAll(participants);
+        return sends;
+    }
+
+    private ContractSendResult dispatch(SendRequest send) {
+        DocuSealService.CreateResult result;
+        try {
+            result = docuSealService.createEnvelope(send.templateId(), send.signers(), send.variables(), send.metadata());
+        } catch (RuntimeException e) {
+            log.warn("Sending contract {} to DocuSeal failed: {}", send.contractId(), e.getMessage());
+            transactionTemplate.executeWithoutResult(status -> contractRepository.findById(send.contractId())
+                    .filter(c -> isCurrentSend(c, send))
+                    .ifPresent(contract -> {
+                        // resendStale() thử lại sau backoff tăng dần
+                        int attempts = (contract.getSendAttempts() == null ? 0 : contract.getSendAttempts()) + 1;
+                        long delay = Math.min(MAX_SEND_BACKOFF_MS, sendBackoffMs << Math.min(attempts - 1, 20));
+                        contract.setSendAttempts(attempts);
+                        contract.setSendRetryAt(new Date(System.currentTimeMillis() + delay));
+                        contract.setStatus(STATUS_SEND_FAILED);
+                        contract.setUpdateAt(new Date());
+                        changed(contract, send.orderId());
+                    }));
+            return new ContractSendResult(send.orderId(), send.contractId(), STATUS_SEND_FAILED, null, e.getMessage());
+        }
+        return transactionTemplate.execute(status -> {
+            Contract contract = contractRepository.findById(send.contractId()).orElse(null);
+            if (contract == null || !isCurrentSend(contract, send)) {
+                // Hợp đồng đã được gửi lại trong lúc chờ DocuSeal; bỏ kết quả của lần gửi cũ
+                log.info("Contract {} was re-sent, discarding envelope {}", send.contractId(), result.envelopeId);
+                return new ContractSendResult(send.orderId(), send.contractId(), "SUPERSEDED", result.envelopeId, null);
+            }
+            contract.setDocusealEnvelopeID(result.envelopeId);
+            String fallbackUrl = result.signingUrl;
+            String sellerUrl = firstNonBlank(result.signingUrlForRole(DOCUSEAL_ROLE_SELLER), result.signingUrlForEmail(send.sellerEmail()), fallbackUrl);
+            String buyerUrl = firstNonBlank(result.signingUrlForRole(DOCUSEAL_ROLE_BUYER), result.signingUrlForEmail(send.buyerEmail()), fallbackUrl);
+            contract.setSellerSigningUrl(sellerUrl);
+            contract.setBuyerSigningUrl(buyerUrl);
+            contract.setSellerStatus(STATUS_PENDING);
+            contract.setBuyerStatus(STATUS_PENDING);
+            contract.setStatus("PENDING_BOTH");
+            contract.setSendPayload(null);
+            contract.setSendAttempts(0);
+            contract.setSendRetryAt(null);
+            contract.setUpdateAt(new Date());
+            changed(contract, send.orderId());
+            return new ContractSendResult(send.orderId(), send.contractId(), contract.getStatus(), result.envelopeId, null);
+        });
+    }
+
+    private boolean isCurrentSend(Contract contract, SendRequest send) {
+        return contract.getSendRequestedAt() != null
+                && contract.getSendRequestedAt().getTime() == send.requestedAt().getTime();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        sendExecutor.shutdown();
+        bulkExecutor.shutdown();
     }
 
-    @Transactional(readOnly = true)
     public ContractDTO getByOrderId(Integer orderId) {
-        return contractRepository.findByOrder_OrderID(orderId)
-                .map(this::toDTO)
-                .orElse(null);
+        return statusCache.get(orderId, id -> readTemplate.execute(status ->
+                contractRepository.findByOrder_OrderID(id).map(this::toDTO).orElse(null)));
     }
 
     @Transactional
@@ -370,14 +776,22 @@ public class ContractService {
                                     Date signedAt,
                                     String participantEmail,
                                     String participantRole,
-                                    String eventType) {
+                                    String eventType,
+                                    Date eventAt) {
         Contract contract = contractRepository.findByDocusealEnvelopeID(envelopeId)
                 .orElseThrow(() -> new IllegalArgumentException("Contract not found for envelope: " + envelopeId));
 
+        Party party = partyOf(contract, participantEmail, participantRole);
+        if (isStale(contract, party, eventAt)) {
+            log.info("Ignoring stale webhook {} for envelope {} ({} at {})", eventType, envelopeId, party, eventAt);
+            return;
+        }
+        ContractState before = ContractState.of(contract);
+
         boolean participantUpdated = applyParticipantUpdate(contract, participantEmail, participantRole, status, eventType, signedAt);
 
         if (signedFileUrl != null && !signedFileUrl.isBlank()) {
-            contract.setSignedFileUrl(signedFileUrl);
+            setSignedFileUrl(contract, signedFileUrl);
         }
 
         if (signedAt != null && (participantUpdated || isCompletionEvent(eventType))) {
@@ -397,8 +811,7 @@ public class ContractService {
         }
 
         updateOverallStatus(contract);
-        contract.setUpdateAt(new Date());
-        contractRepository.save(contract);
+        saveIfChanged(contract, before, party, eventAt);
     }
 
     /**
@@ -409,7 +822,7 @@ public class ContractService {
         findContractByParticipantEmail(email).ifPresent(contract -> {
             boolean updated = applyParticipantUpdate(contract, email, null, status, null, signedAt);
             if (signedFileUrl != null && !signedFileUrl.isBlank()) {
-                contract.setSignedFileUrl(signedFileUrl);
+                setSignedFileUrl(contract, signedFileUrl);
             }
             if (signedAt != null && (updated && isFullySigned(contract))) {
                 contract.setSignedAt(signedAt);
@@ -420,6 +833,7 @@ public class ContractService {
             updateOverallStatus(contract);
             contract.setUpdateAt(new Date());
             contractRepository.save(contract);
+            changed(contract, orderIdOf(contract));
         });
     }
 
@@ -427,11 +841,18 @@ public class ContractService {
      * Backwards-compatible overload: some callers may supply eventType as an extra string param.
      */
     @Transactional
-    public void handleWebhookFallbackByEmail(String email, String status, String signedFileUrl, String eventType, Date signedAt) {
+    public void handleWebhookFallbackByEmail(String email, String status, String signedFileUrl, String eventType,
+                                             Date signedAt, Date eventAt) {
         findContractByParticipantEmail(email).ifPresent(contract -> {
+            Party party = partyOf(contract, email, null);
+            if (isStale(contract, party, eventAt)) {
+                log.info("Ignoring stale webhook {} for {} ({} at {})", eventType, email, party, eventAt);
+                return;
+            }
+            ContractState before = ContractState.of(contract);
             boolean updated = applyParticipantUpdate(contract, email, null, status, eventType, signedAt);
             if (signedFileUrl != null && !signedFileUrl.isBlank()) {
-                contract.setSignedFileUrl(signedFileUrl);
+                setSignedFileUrl(contract, signedFileUrl);
             }
             if (signedAt != null && updated && isFullySigned(contract)) {
                 contract.setSignedAt(signedAt);
@@ -443,8 +864,7 @@ public class ContractService {
                 applyEnvelopeEvent(contract, eventType);
             }
             updateOverallStatus(contract);
-            contract.setUpdateAt(new Date());
-            contractRepository.save(contract);
+            saveIfChanged(contract, before, party, eventAt);
         });
     }
 
@@ -452,14 +872,21 @@ public class ContractService {
      * Fallback by email but also set envelopeId/submissionId when provided (to link future events by id).
      */
     @Transactional
-    public void handleWebhookFallbackByEmailWithId(String email, String envelopeId, String status, String signedFileUrl, Date signedAt) {
+    public void handleWebhookFallbackByEmailWithId(String email, String envelopeId, String status, String signedFileUrl,
+                                                   Date signedAt, Date eventAt) {
         findContractByParticipantEmail(email).ifPresent(contract -> {
+            Party party = partyOf(contract, email, null);
+            if (isStale(contract, party, eventAt)) {
+                log.info("Ignoring stale webhook for {} ({} at {})", email, party, eventAt);
+                return;
+            }
+            ContractState before = ContractState.of(contract);
             if (contract.getDocusealEnvelopeID() == null && envelopeId != null && !envelopeId.isBlank()) {
                 contract.setDocusealEnvelopeID(envelopeId);
             }
             boolean updated = applyParticipantUpdate(contract, email, null, status, null, signedAt);
             if (signedFileUrl != null && !signedFileUrl.isBlank()) {
-                contract.setSignedFileUrl(signedFileUrl);
+                setSignedFileUrl(contract, signedFileUrl);
             }
             if (signedAt != null && updated && isFullySigned(contract)) {
                 contract.setSignedAt(signedAt);
@@ -468,11 +895,94 @@ public class ContractService {
                 applyEnvelopeStatus(contract, status, null);
             }
             updateOverallStatus(contract);
-            contract.setUpdateAt(new Date());
-            contractRepository.save(contract);
+            saveIfChanged(contract, before, party, eventAt);
         });
     }
 
+    private enum Party { SELLER, BUYER, ENVELOPE }
+
+    // Các trường webhook có thể thay đổi; thời gian so theo millis vì Hibernate nạp Date dưới dạng Timestamp
+    private record ContractState(String envelopeId, String status, String sellerStatus, Long sellerSignedAt,
+                                 String buyerStatus, Long buyerSignedAt, String signedFileUrl, Long signedAt) {
+        static ContractState of(Contract c) {
+            return new ContractState(c.getDocusealEnvelopeID(), c.getStatus(), c.getSellerStatus(),
+                    millis(c.getSellerSignedAt()), c.getBuyerStatus(), millis(c.getBuyerSignedAt()),
+                    c.getSignedFileUrl(), millis(c.getSignedAt()));
+        }
+
+        private static Long millis(Date date) {
+            return date == null ? null : date.getTime();
+        }
+    }
+
+    private Party partyOf(Contract contract, String participantEmail, String participantRole) {
+        String email = participantEmail != null ? participantEmail.trim() : null;
+        String role = normalizeRoleKey(participantRole);
+        if (isSellerParty(contract, email, role)) {
+            return Party.SELLER;
+        }
+        return isBuyerParty(contract, email, role) ? Party.BUYER : Party.ENVELOPE;
+    }
+
+    /**
+     * DocuSeal có thể gửi lại hoặc gửi trễ sự kiện: sự kiện cũ hơn sự kiện đã áp dụng cho cùng bên ký,
+     * hoặc cũ hơn sự kiện cấp envelope gần nhất, không được ghi đè trạng thái mới hơn.
+     */
+    private boolean isStale(Contract contract, Party party, Date eventAt) {
+        if (eventAt == null) {
+            return false;
+        }
+        Date last = contract.getEnvelopeEventAt();
+        if (party == Party.SELLER) {
+            last = later(last, contract.getSellerEventAt());
+        } else if (party == Party.BUYER) {
+            last = later(last, contract.getBuyerEventAt());
+        }
+        return last != null && eventAt.getTime() < last.getTime();
+    }
+
+    private static Date later(Date a, Date b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        return a.getTime() >= b.getTime() ? a : b;
+    }
+
+    // Sự kiện không đổi gì (gửi lặp, form.viewed...) thì không chạm updateAt nên Hibernate không phát UPDATE
+    private void saveIfChanged(Contract contract, ContractState before, Party party, Date eventAt) {
+        if (ContractState.of(contract).equals(before)) {
+            return;
+        }
+        if (eventAt != null) {
+            switch (party) {
+                case SELLER -> contract.setSellerEventAt(later(contract.getSellerEventAt(), eventAt));
+                case BUYER -> contract.setBuyerEventAt(later(contract.getBuyerEventAt(), eventAt));
+                case ENVELOPE -> contract.setEnvelopeEventAt(later(contract.getEnvelopeEventAt(), eventAt));
+            }
+        }
+        contract.setUpdateAt(new Date());
+        contractRepository.save(contract);
+        changed(contract, orderIdOf(contract));
+    }
+
+    // Gọi trong transaction đã ghi contract: bỏ cache sau commit và ghi outbox để NotificationHub báo hai bên
+    private void changed(Contract contract, Integer orderId) {
+        statusCache.evictAfterCommit(orderId);
+        if (orderId == null || contract.getContractID() == null) {
+            return;
+        }
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("contractId", contract.getContractID());
+        payload.put("orderId", orderId);
+        payload.put("status", contract.getStatus());
+        payload.put("sellerStatus", contract.getSellerStatus());
+        payload.put("buyerStatus", contract.getBuyerStatus());
+        outboxService.record(DomainEvent.CONTRACT, contract.getContractID(), DomainEvent.CONTRACT_UPDATED, payload);
+    }
+
+    private static Integer orderIdOf(Contract contract) {
+        return contract.getOrder() != null ? contract.getOrder().getOrderID() : null;
+    }
+
     private ContractDTO toDTO(Contract c) {
         ContractDTO dto = new ContractDTO();
         dto.setContractId(c.getContractID());
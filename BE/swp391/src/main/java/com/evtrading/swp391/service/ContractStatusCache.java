@@ -0,0 +1,125 @@
+package com.evtrading.swp391.service;
+
+import com.evtrading.swp391.dto.ContractDTO;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Cache ContractDTO theo orderId cho các client poll trạng thái ký, cùng danh sách listener cho long-poll.
+ *
+ * ContractService gọi {@link #evictAfterCommit} mỗi khi ghi Contract; entry bị xóa sau khi transaction commit
+ * rồi các listener của order đó được gọi (listener đầu tiên nạp lại từ DB, các listener sau đọc cache).
+ * TTL chỉ là lưới an toàn cho những lần ghi không đi qua ContractService.
+ */
+@Component
+public class ContractStatusCache {
+
+    // dto == null: đánh dấu đang nạp từ DB; version duy nhất toàn cục nên không bị nhầm sau khi entry bị xóa rồi tạo lại
+    private record Entry(ContractDTO dto, long expiresAt, long version) {}
+
+    private final Map<Integer, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<Integer, Set<Runnable>> listeners = new ConcurrentHashMap<>();
+    private final AtomicInteger listenerCount = new AtomicInteger();
+    private final AtomicLong versions = new AtomicLong();
+
+    @Value("${app.contract.statusCache.ttlSeconds:60}")
+    private long ttlSeconds;
+
+    @Value("${app.contract.statusCache.maxEntries:10000}")
+    private int maxEntries;
+
+    @Value("${app.contract.statusCache.maxListeners:10000}")
+    private int maxListeners;
+
+    public ContractDTO get(Integer orderId, Function<Integer, ContractDTO> loader) {
+        long now = System.currentTimeMillis();
+        Entry entry = entries.get(orderId);
+        if (entry != null && entry.dto() != null && entry.expiresAt() > now) {
+            return entry.dto();
+        }
+        if (entries.size() >= maxEntries) {
+            evictExpired(now);
+        }
+        long ttlMs = TimeUnit.SECONDS.toMillis(ttlSeconds);
+        // Giá trị nạp về chỉ được cache nếu order này không bị evict trong lúc nạp (evict đổi version của marker);
+        // evict của order khác không ảnh hưởng
+        long seen = entries.compute(orderId, (k, cur) -> cur != null && cur.dto() == null
+                ? cur : new Entry(null, now + ttlMs, versions.incrementAndGet())).version();
+        ContractDTO dto = loader.apply(orderId);
+        entries.computeIfPresent(orderId, (k, cur) -> cur.version() == seen
+                ? new Entry(dto, System.currentTimeMillis() + ttlMs, seen) : cur);
+        return dto;
+    }
+
+    /** Xóa cache của order sau khi transaction hiện tại commit (hoặc ngay nếu không có transaction). */
+    public void evictAfterCommit(Integer orderId) {
+        if (orderId == null) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evict(orderId);
+                }
+            });
+        } else {
+            evict(orderId);
+        }
+    }
+
+    public void evict(Integer orderId) {
+        // Đang có lần nạp: đổi version để kết quả (có thể đã cũ) của nó không được cache; không thì xóa hẳn
+        entries.computeIfPresent(orderId, (k, cur) -> cur.dto() == null
+                ? new Entry(null, cur.expiresAt(), versions.incrementAndGet()) : null);
+        Set<Runnable> waiting = listeners.remove(orderId);
+        if (waiting != null) {
+            listenerCount.addAndGet(-waiting.size());
+            waiting.forEach(Runnable::run);
+        }
+    }
+
+    /**
+     * Đăng ký listener một lần cho lần thay đổi tiếp theo của order. Trả về false nếu đã đủ
+     * {@code maxListeners} (caller trả kết quả ngay, client quay về poll thường).
+     */
+    public boolean addListener(Integer orderId, Runnable listener) {
+        if (listenerCount.incrementAndGet() > maxListeners) {
+            listenerCount.decrementAndGet();
+            return false;
+        }
+        listeners.computeIfAbsent(orderId, k -> ConcurrentHashMap.newKeySet()).add(listener);
+        return true;
+    }
+
+    public void removeListener(Integer orderId, Runnable listener) {
+        listeners.computeIfPresent(orderId, (k, set) -> {
+            if (set.remove(listener)) {
+                listenerCount.decrementAndGet();
+            }
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    // Bỏ entry hết hạn; nếu vẫn đầy thì bỏ bớt 10%
+    private void evictExpired(long now) {
+        entries.values().removeIf(e -> e.expiresAt() <= now);
+        int toDrop = entries.size() - (maxEntries * 9 / 10);
+        Iterator<Integer> it = entries.keySet().iterator();
+        while (toDrop-- > 0 && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package com.evtrading.swp391.service;
+
+import com.evtrading.swp391.dto.ContractWebhookPayload;
+import com.evtrading.swp391.entity.ContractWebhookEvent;
+import com.evtrading.swp391.repository.ContractWebhookEventRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Nhận webhook DocuSeal vào inbox (bảng contract_webhook_inbox) và xử lý bất đồng bộ.
+ *
+ * Nhận: chỉ đọc khóa envelope rồi ghi một dòng, nên thời gian trả lời DocuSeal không phụ thuộc việc
+ * cập nhật Contract. Xử lý: mỗi tick lấy các dòng đến hạn theo id và chia cho {@code workers} luồng theo
+ * hash của khóa envelope, nên các sự kiện của một envelope luôn chạy tuần tự, đúng thứ tự nhận.
+ * Sự kiện lỗi được thử lại với backoff tăng dần; trong lúc chờ, các sự kiện sau của cùng envelope bị
+ * giữ lại. Quá {@code maxAttempts} lần thì chuyển DEAD (giữ lastError để tra cứu) và envelope chạy tiếp.
+ *
+ * DocuSeal không gửi id sự kiện nên bản gửi lại được nhận ra qua SHA-256 của payload: trong
+ * {@code dedupTtlMinutes} bản trùng chỉ tốn một lần tra map; ngoài bộ nhớ (khởi động lại, nhiều instance)
+ * ràng buộc unique trên payloadHash chặn dòng thứ hai.
+ */
+@Service
+public class ContractWebhookService {
+    private static final Logger log = LoggerFactory.getLogger(ContractWebhookService.class);
+
+    private static final long MAX_BACKOFF_MS = 600_000;
+
+    private final ContractWebhookEventRepository repository;
+    private final ContractService contractService;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService[] stripes;
+    // payloadHash -> thời điểm hết hạn (ms)
+    private final Map<String, Long> seenHashes = new ConcurrentHashMap<>();
+
+    @Value("${app.contract.webhook.batchSize:200}")
+    private int batchSize;
+
+    @Value("${app.contract.webhook.maxAttempts:8}")
+    private int maxAttempts;
+
+    @Value("${app.contract.webhook.backoffMs:2000}")
+    private long backoffMs;
+
+    @Value("${app.contract.webhook.retentionHours:72}")
+    private long retentionHours;
+
+    @Value("${app.contract.webhook.dedupTtlMinutes:1440}")
+    private long dedupTtlMinutes;
+
+    @Value("${app.contract.webhook.maxCachedHashes:50000}")
+    private int maxCachedHashes;
+
+    public ContractWebhookService(ContractWebhookEventRepository repository,
+                                  ContractService contractService,
+                                  ObjectMapper objectMapper,
+                                  TransactionTemplate transactionTemplate,
+                                  @Value("${app.contract.webhook.workers:4}") int workers) {
+        this.repository = repository;
+        this.contractService = contractService;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = transactionTemplate;
+        this.stripes = new ExecutorService[Math.max(1, workers)];
+        for (int i = 0; i < stripes.length; i++) {
+            String name = "contract-webhook-" + (i + 1);
+            stripes[i] = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, name);
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    /**
+     * Ghi webhook (JSON) vào inbox; gọi trên luồng HTTP nên chỉ làm một lần đọc JSON và một INSERT.
+     * Trả về false nếu payload này đã được nhận (bản gửi lại của DocuSeal).
+     */
+    public boolean accept(String payload) {
+        String hash = sha256(payload);
+        long now = System.currentTimeMillis();
+        Long expiresAt = seenHashes.get(hash);
+        if (expiresAt != null && expiresAt > now) {
+            return false;
+        }
+        ContractWebhookEvent event = new ContractWebhookEvent();
+        event.setPayload(payload);
+        event.setPayloadHash(hash);
+        event.setEnvelopeKey(parse(payload).map(ContractWebhookPayload::envelopeKey).orElse(null));
+        event.setReceivedAt(new Date(now));
+        event.setNextAttemptAt(new Date(now));
+        try {
+            repository.saveAndFlush(event);
+        } catch (DataIntegrityViolationException duplicate) {
+            remember(hash, now);
+            return false;
+        }
+        remember(hash, now);
+        return true;
+    }
+
+    private void remember(String hash, long now) {
+        if (seenHashes.size() >= maxCachedHashes) {
+            evictHashes(now);
+        }
+        seenHashes.put(hash, now + TimeUnit.MINUTES.toMillis(dedupTtlMinutes));
+    }
+
+    // Bỏ hash hết hạn; nếu vẫn đầy thì bỏ bớt 10% (ràng buộc unique trong DB vẫn chặn trùng)
+    private void evictHashes(long now) {
+        seenHashes.values().removeIf(expiresAt -> expiresAt <= now);
+        int toDrop = seenHashes.size() - (maxCachedHashes * 9 / 10);
+        Iterator<String> it = seenHashes.keySet().iterator();
+        while (toDrop-- > 0 && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    private static String sha256(String payload) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(payload.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.contract.webhook.pollMs:200}")
+    public void drain() {
+        List<ContractWebhookEvent> batch;
+        do {
+            batch = repository.findDue(new Date(), PageRequest.of(0, batchSize));
+            if (batch.isEmpty()) {
+                return;
+            }
+            // Gom theo envelope, giữ thứ tự id trong từng nhóm; sự kiện không có khóa chạy độc lập
+            Map<Object, List<ContractWebhookEvent>> byEnvelope = new LinkedHashMap<>();
+            for (ContractWebhookEvent event : batch) {
+                Object key = event.getEnvelopeKey() != null ? event.getEnvelopeKey() : event.getId();
+                byEnvelope.computeIfAbsent(key, k -> new ArrayList<>()).add(event);
+            }
+            List<CompletableFuture<Void>> running = new ArrayList<>(byEnvelope.size());
+            byEnvelope.forEach((key, events) -> running.add(CompletableFuture.runAsync(
+                    () -> processInOrder(events), stripes[Math.floorMod(key.hashCode(), stripes.length)])));
+            // Chờ hết lô trước khi lấy lô mới để một dòng không bị giao cho hai worker
+            CompletableFuture.allOf(running.toArray(CompletableFuture[]::new)).join();
+        } while (batch.size() == batchSize);
+    }
+
+    private void processInOrder(List<ContractWebhookEvent> events) {
+        for (ContractWebhookEvent event : events) {
+            try {
+                apply(event);
+                transactionTemplate.executeWithoutResult(status -> repository.markDone(event.getId(), new Date()));
+            } catch (RuntimeException e) {
+                recordFailure(event, e);
+                // Các sự kiện sau của envelope này chờ tới khi sự kiện lỗi được xử lý xong hoặc bị DEAD
+                return;
+            }
+        }
+    }
+
+    private void recordFailure(ContractWebhookEvent event, RuntimeException e) {
+        int attempt = event.getAttempts() + 1;
+        long delay = Math.min(MAX_BACKOFF_MS, backoffMs << Math.min(attempt - 1, 20));
+        String error = String.valueOf(e.getMessage());
+        String truncated = error.length() > 500 ? error.substring(0, 500) : error;
+        if (attempt >= maxAttempts) {
+            log.error("Contract webhook {} (envelope {}) moved to dead letter after {} attempts: {}",
+                    event.getId(), event.getEnvelopeKey(), attempt, error);
+        } else {
+            log.warn("Contract webhook {} (envelope {}) failed, retrying in {} ms: {}",
+                    event.getId(), event.getEnvelopeKey(), delay, error);
+        }
+        transactionTemplate.executeWithoutResult(status -> repository.recordFailure(event.getId(), truncated,
+                new Date(System.currentTimeMillis() + delay), maxAttempts));
+    }
+
+    private void apply(ContractWebhookEvent event) {
+        ContractWebhookPayload p = parse(event.getPayload()).orElse(null);
+        if (p == null) {
+            log.info("Contract webhook {} has no usable JSON payload, ignoring", event.getId());
+            return;
+        }
+        if (p.envelopeId() != null) {
+            try {
+                contractService.handleWebhookUpdate(p.envelopeId(), p.status(), p.signedFileUrl(), p.signedAt(),
+                        p.email(), p.role(), p.eventType(), p.eventAt());
+                log.info("Webhook processed for envelope/submission {} status={} role={} email={} signedUrl={} signedAt={}",
+                        p.envelopeId(), p.status(), p.role(), p.email(), p.signedFileUrl(), p.signedAt());
+                return;
+            } catch (IllegalArgumentException notFound) {
+                log.info("Webhook id {} not found, will try fallback by email. err={}", p.envelopeId(), notFound.getMessage());
+            }
+            // Fallback if cannot locate by id
+            if (p.email() != null && !p.email().isBlank()) {
+                contractService.handleWebhookFallbackByEmailWithId(p.email(), p.envelopeId(), p.status(),
+                        p.signedFileUrl(), p.signedAt(), p.eventAt());
+                log.info("Webhook fallback by email processed for {} status={} with id {}", p.email(), p.status(), p.envelopeId());
+            } else {
+                log.info("Webhook received but neither id matched nor email present. event_type={}", p.eventType());
+            }
+        } else if (p.email() != null && !p.email().isBlank()) {
+            // Fallback: some form.* events provide submitter email but not submission_id
+            contractService.handleWebhookFallbackByEmail(p.email(), p.status(), p.signedFileUrl(), p.eventType(), p.signedAt(),
+                    p.eventAt());
+            log.info("Webhook fallback by email processed for {} status={} (no id)", p.email(), p.status());
+        } else {
+            log.info("Webhook received but no envelope/submission id found. event_type={}", p.eventType());
+        }
+    }
+
+    private Optional<ContractWebhookPayload> parse(String payload) {
+        if (payload == null || payload.isBlank()) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.ofNullable(ContractWebhookPayload.parse(objectMapper.getFactory(), payload));
+        } catch (Exception e) {
+            log.debug("Cannot parse contract webhook payload: {}", e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    @Scheduled(initialDelay = 60_000, fixedDelay = 3_600_000)
+    public void purgeProcessed() {
+        seenHashes.values().removeIf(expiresAt -> expiresAt <= System.currentTimeMillis());
+        Date before = new Date(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(retentionHours));
+        Integer deleted = transactionTemplate.execute(status -> repository.deleteDoneBefore(before));
+        if (deleted != null && deleted > 0) {
+            log.info("Purged {} processed contract webhooks", deleted);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        for (ExecutorService stripe : stripes) {
+            stripe.shutdown();
+        }
+    }
+}
@@ -1,18 +1,37 @@
 package com.evtrading.swp391.service;
 
+import com.evtrading.swp391.exception.DocuSealUnavailableException;
+import com.evtrading.swp391.util.CircuitBreaker;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestTemplate;
 
+import java.net.ConnectException;
 import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Client gọi API DocuSeal.
+ *
+ * Dùng một HttpClient dùng chung (giữ kết nối keep-alive) với connect/read timeout. Lỗi tạm thời được
+ * thử lại với backoff tăng dần, chỉ khi chắc chắn DocuSeal chưa tạo submission: không kết nối được,
+ * hoặc 429/502/503/504. Read timeout không thử lại vì request có thể đã được xử lý, gửi lại sẽ tạo
+ * submission trùng. Circuit breaker chặn gọi khi DocuSeal lỗi liên tục.
+ *
+ * docuseal.stub.enabled=true trả kết quả giả mà không gọi mạng, dùng khi chạy test offline.
+ */
 @Service
 public class DocuSealService {
 
@@ -28,9 +47,45 @@ public class DocuSealService {
     @Value("${docuseal.api.createEnvelopePath:/submissions}")
     private String createPath;
 
-    private final RestTemplate restTemplate = new RestTemplate();
+    @Value("${docuseal.api.connectTimeoutMs:2000}")
+    private long connectTimeoutMs;
+    @Value("${docuseal.api.readTimeoutMs:10000}")
+    private long readTimeoutMs;
+    @Value("${docuseal.api.maxAttempts:3}")
+    private int maxAttempts;
+    @Value("${docuseal.api.backoffMs:500}")
+    private long backoffMs;
+    @Value("${docuseal.breaker.failureThreshold:5}")
+    private int failureThreshold;
+    @Value("${docuseal.breaker.openMs:30000}")
+    private long openMs;
+
+    @Value("${docuseal.stub.enabled:false}")
+    private boolean stubEnabled;
+    @Value("${docuseal.stub.signingBaseUrl:http://localhost:8080/docuseal-stub/s/}")
+    private String stubSigningBaseUrl;
+
+    private RestTemplate restTemplate;
+    private CircuitBreaker breaker;
     private final ObjectMapper mapper = new ObjectMapper();
 
+    // Đường dẫn tạo submission đã xác định được (sau lần fallback 404 đầu tiên), để lần sau gọi thẳng
+    private volatile String resolvedCreatePath;
+
+    @PostConstruct
+    void init() {
+        HttpClient httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .build();
+        JdkClientHttpRequestFactory factory = new JdkClientHttpRequestFactory(httpClient);
+        factory.setReadTimeout(Duration.ofMillis(readTimeoutMs));
+        this.restTemplate = new RestTemplate(factory);
+        this.breaker = new CircuitBreaker("docuseal", failureThreshold, Duration.ofMillis(openMs));
+        if (stubEnabled) {
+            log.warn("DocuSeal stub mode is enabled: envelopes are not sent");
+        }
+    }
+
     public record Signer(String role, String email, String name) {
         public Signer {
             if (email == null || email.isBlank()) {
@@ -93,15 +148,18 @@ public class DocuSealService {
                                        List<Signer> signers,
                                        Map<String, Object> variables,
                                        Map<String, Object> metadata) {
-        if (apiKey == null || apiKey.isBlank() || apiBaseUrl == null || apiBaseUrl.isBlank()) {
-            throw new IllegalStateException("DocuSeal API credentials are not configured");
-        }
         if (signers == null || signers.isEmpty()) {
             throw new IllegalArgumentException("At least one signer is required");
         }
         if (templateId == null || templateId.isBlank()) {
             throw new IllegalArgumentException("DocuSeal template id is required");
         }
+        if (stubEnabled) {
+            return stubCreate(signers);
+        }
+        if (apiKey == null || apiKey.isBlank() || apiBaseUrl == null || apiBaseUrl.isBlank()) {
+            throw new IllegalStateException("DocuSeal API credentials are not configured");
+        }
 
         Map<String, Object> payload = new LinkedHashMap<>();
         payload.put("template_id", tryParseInt(templateId));
@@ -153,28 +211,93 @@ public class DocuSealService {
         headers.set("X-Auth-Token", apiKey);
         headers.setBearerAuth(apiKey);
 
-        String url = normalizeUrl(apiBaseUrl, createPath);
         HttpEntity<Map<String, Object>> entity = new HttpEntity<>(payload, headers);
+        if (!breaker.tryAcquire()) {
+            throw new DocuSealUnavailableException("DocuSeal is temporarily unavailable (circuit open)");
+        }
+        String path = resolvedCreatePath != null ? resolvedCreatePath : createPath;
         try {
-            return doCreate(url, entity, signers);
+            CreateResult result;
+            try {
+                result = createWithRetry(normalizeUrl(apiBaseUrl, path), entity, signers);
+            } catch (HttpStatusCodeException e) {
+                if (e.getStatusCode().value() != 404 || resolvedCreatePath != null) {
+                    throw e;
+                }
+                path = "/submissions".equalsIgnoreCase(createPath) ? "/api/envelopes" : "/submissions";
+                result = createWithRetry(normalizeUrl(apiBaseUrl, path), entity, signers);
+            }
+            resolvedCreatePath = path;
+            breaker.onSuccess();
+            return result;
         } catch (HttpStatusCodeException e) {
-            if (e.getStatusCode().value() == 404) {
-                String fallback = "/submissions".equalsIgnoreCase(createPath) ? "/api/envelopes" : "/submissions";
+            if (e.getStatusCode().is4xxClientError() && !isRetryable(e)) {
+                // DocuSeal vẫn hoạt động, chỉ từ chối dữ liệu gửi lên
+                breaker.onSuccess();
+                throw new RuntimeException("DocuSeal create error: " + e.getStatusCode() + " " + e.getResponseBodyAsString(), e);
+            }
+            breaker.onFailure();
+            throw new DocuSealUnavailableException("DocuSeal create error: " + e.getStatusCode(), e);
+        } catch (ResourceAccessException e) {
+            breaker.onFailure();
+            throw new DocuSealUnavailableException("Could not reach DocuSeal: " + e.getMessage(), e);
+        } catch (RuntimeException e) {
+            breaker.onFailure();
+            throw e;
+        }
+    }
+
+    private CreateResult createWithRetry(String url, HttpEntity<Map<String, Object>> entity, List<Signer> signers) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return doCreate(url, entity, signers);
+            } catch (HttpStatusCodeException | ResourceAccessException e) {
+                if (attempt >= maxAttempts || !isRetryable(e)) {
+                    throw e;
+                }
+                long delay = backoffMs << (attempt - 1);
+                // jitter để các lần thử lại của nhiều request không dồn vào cùng một thời điểm
+                delay += ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+                log.warn("DocuSeal call to {} failed (attempt {}/{}), retrying in {} ms: {}",
+                        url, attempt, maxAttempts, delay, e.getMessage());
                 try {
-                    return doCreate(normalizeUrl(apiBaseUrl, fallback), entity, signers);
-                } catch (HttpStatusCodeException e2) {
-                    throw new RuntimeException("DocuSeal create error (fallback): " + e2.getStatusCode() + " " + e2.getResponseBodyAsString(), e2);
-                } catch (Exception e2) {
-                    throw new RuntimeException("DocuSeal create error (fallback): " + e2.getMessage(), e2);
+                    Thread.sleep(delay);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
                 }
             }
-            throw new RuntimeException("DocuSeal create error: " + e.getStatusCode() + " " + e.getResponseBodyAsString(), e);
-        } catch (Exception e) {
-            throw new RuntimeException("DocuSeal create error: " + e.getMessage(), e);
         }
     }
 
-    private CreateResult doCreate(String url, HttpEntity<Map<String, Object>> entity, List<Signer> signers) throws Exception {
+    private static boolean isRetryable(RuntimeException e) {
+        if (e instanceof HttpStatusCodeException http) {
+            int code = http.getStatusCode().value();
+            return code == 429 || code == 502 || code == 503 || code == 504;
+        }
+        // Chỉ thử lại khi chưa kết nối được; timeout khi đọc thì request có thể đã tới DocuSeal
+        for (Throwable t = e.getCause(); t != null; t = t.getCause()) {
+            if (t instanceof ConnectException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private CreateResult stubCreate(List<Signer> signers) {
+        String id = "stub-" + UUID.randomUUID();
+        Map<String, String> byRole = new LinkedHashMap<>();
+        Map<String, String> byEmail = new LinkedHashMap<>();
+        for (int i = 0; i < signers.size(); i++) {
+            Signer signer = signers.get(i);
+            String link = stubSigningBaseUrl + id + "-" + (i + 1);
+            byRole.putIfAbsent(normalizeRoleKey(signer.roleOr("Signer " + (i + 1))), link);
+            byEmail.putIfAbsent(signer.email().toLowerCase(Locale.ROOT), link);
+        }
+        return new CreateResult(id, firstNonNull(byRole.values()), byRole, byEmail, Map.of("id", id, "stub", true));
+    }
+
+    private CreateResult doCreate(String url, HttpEntity<Map<String, Object>> entity, List<Signer> signers) {
         ResponseEntity<String> response = restTemplate.exchange(URI.create(url), HttpMethod.POST, entity, String.class);
         if (!response.getStatusCode().is2xxSuccessful()) {
             throw new RuntimeException("DocuSeal create failed: " + response.getStatusCode());
@@ -0,0 +1,301 @@
+package com.evtrading.swp391.service;
+
+import com.evtrading.swp391.entity.IdempotencyRecord;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Xử lý header {@code Idempotency-Key} cho các POST tạo đơn / thanh toán.
+ *
+ * Thứ tự tra cứu:
+ * <ol>
+ *   <li>cache trong bộ nhớ các response đã hoàn tất (fast path, không chạm DB);</li>
+ *   <li>request trùng key đang chạy trên cùng instance: chờ kết quả của request đầu tiên thay vì chạy lại;</li>
+ *   <li>bảng idempotency_keys: claim bằng unique constraint, nên request trùng trên instance khác
+ *       hoặc sau khi restart cũng không chạy lại.</li>
+ * </ol>
+ * Cùng key nhưng body khác trả 422. Chỉ kết quả nghiệp vụ xác định được lưu: response 5xx, response có
+ * header {@code Retry-After} (lỗi tạm thời, ví dụ 409 khi DB đang tranh chấp) hoặc exception thì không, để
+ * client gửi lại được. Claim IN_PROGRESS chỉ giữ trong {@code app.idempotency.leaseMs}: instance chết giữa
+ * chừng thì request gửi lại sau thời hạn đó tiếp quản claim thay vì nhận 409 tới hết TTL.
+ * Bản ghi hết hạn sau {@code app.idempotency.ttlMinutes}.
+ */
+@Service
+public class IdempotencyService {
+    private static final Logger log = LoggerFactory.getLogger(IdempotencyService.class);
+
+    public static final String HEADER = "Idempotency-Key";
+    private static final int MAX_KEY_LENGTH = 100;
+
+    private record StoredResponse(String fingerprint, int status, String body, long expiresAtMillis) {
+        boolean expired(long now) {
+            return expiresAtMillis <= now;
+        }
+    }
+
+    private record Outcome(ResponseEntity<?> response, StoredResponse stored) {}
+
+    private final Map<String, CompletableFuture<StoredResponse>> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, StoredResponse> completed = new ConcurrentHashMap<>();
+
+    private final IdempotencyStore store;
+    private final ObjectMapper objectMapper;
+
+    @Value("${app.idempotency.ttlMinutes:1440}")
+    private long ttlMinutes;
+
+    // Phải dài hơn thời gian xử lý lâu nhất của một request tạo đơn/thanh toán
+    @Value("${app.idempotency.leaseMs:60000}")
+    private long leaseMs;
+
+    @Value("${app.idempotency.waitMs:30000}")
+    private long waitMs;
+
+    @Value("${app.idempotency.maxCachedResponses:10000}")
+    private int maxCachedResponses;
+
+    public IdempotencyService(IdempotencyStore store, ObjectMapper objectMapper) {
+        this.store = store;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Chạy {@code action} tối đa một lần cho mỗi (scope, username, key). Không có key thì chạy bình thường.
+     */
+    public ResponseEntity<?> execute(String scope, String username, String idemKey, Object request,
+                                     Supplier<ResponseEntity<?>> action) {
+        if (idemKey == null || idemKey.isBlank()) {
+            return action.get();
+        }
+        if (idemKey.length() > MAX_KEY_LENGTH) {
+            return error(HttpStatus.BAD_REQUEST, HEADER + " must be at most " + MAX_KEY_LENGTH + " characters");
+        }
+        String fingerprint = fingerprint(request);
+        String cacheKey = scope + '\n' + username + '\n' + idemKey;
+
+        while (true) {
+            StoredResponse cached = completed.get(cacheKey);
+            if (cached != null) {
+                if (!cached.expired(System.currentTimeMillis())) {
+                    return replay(cached, fingerprint);
+                }
+                completed.remove(cacheKey, cached);
+            }
+
+            CompletableFuture<StoredResponse> mine = new CompletableFuture<>();
+            CompletableFuture<StoredResponse> running = inFlight.putIfAbsent(cacheKey, mine);
+            if (running != null) {
+                StoredResponse first;
+                try {
+                    first = running.get(waitMs, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    return inProgress();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return inProgress();
+                } catch (ExecutionException e) {
+                    first = null;
+                }
+                if (first != null) {
+                    return replay(first, fingerprint);
+                }
+                // Request đầu tiên thất bại và không lưu kết quả: tự chạy lại
+                continue;
+            }
+
+            StoredResponse stored = null;
+            try {
+                Outcome outcome = runOwned(scope, username, idemKey, fingerprint, action);
+                stored = outcome.stored();
+                return outcome.response();
+            } finally {
+                if (stored != null) {
+                    cache(cacheKey, stored);
+                }
+                inFlight.remove(cacheKey, mine);
+                mine.complete(stored);
+            }
+        }
+    }
+
+    private Outcome runOwned(String scope, String username, String idemKey, String fingerprint,
+                             Supplier<ResponseEntity<?>> action) {
+        Optional<IdempotencyRecord> existing = store.find(username, scope, idemKey);
+        if (existing.isPresent()) {
+            IdempotencyRecord record = existing.get();
+            long now = System.currentTimeMillis();
+            if (record.getExpiresAt() != null && record.getExpiresAt().getTime() <= now) {
+                store.release(record.getId());
+            } else if (isStaleClaim(record, now)) {
+                return takeOver(record, idemKey, fingerprint, action);
+            } else {
+                return fromExisting(record, fingerprint);
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        long expiresAt = now + TimeUnit.MINUTES.toMillis(ttlMinutes);
+        IdempotencyRecord claim = new IdempotencyRecord();
+        claim.setUsername(username);
+        claim.setScope(scope);
+        claim.setIdemKey(idemKey);
+        claim.setFingerprint(fingerprint);
+        claim.setState(IdempotencyRecord.IN_PROGRESS);
+        claim.setCreatedAt(new Date(now));
+        claim.setExpiresAt(new Date(expiresAt));
+        try {
+            claim = store.claim(claim);
+        } catch (DataIntegrityViolationException e) {
+            // Instance khác vừa claim cùng key
+            return store.find(username, scope, idemKey)
+                    .map(record -> fromExisting(record, fingerprint))
+                    .orElseGet(() -> new Outcome(inProgress(), null));
+        }
+        return runClaimed(claim.getId(), expiresAt, idemKey, fingerprint, action);
+    }
+
+    private boolean isStaleClaim(IdempotencyRecord record, long now) {
+        return IdempotencyRecord.IN_PROGRESS.equals(record.getState())
+                && record.getCreatedAt() != null
+                && record.getCreatedAt().getTime() + leaseMs <= now;
+    }
+
+    // Claim IN_PROGRESS quá hạn lease: instance giữ nó đã chết, request này chạy thay
+    private Outcome takeOver(IdempotencyRecord record, String idemKey, String fingerprint,
+                             Supplier<ResponseEntity<?>> action) {
+        if (!record.getFingerprint().equals(fingerprint)) {
+            return new Outcome(error(HttpStatus.UNPROCESSABLE_ENTITY,
+                    HEADER + " was already used with a different request body"), null);
+        }
+        long now = System.currentTimeMillis();
+        long expiresAt = now + TimeUnit.MINUTES.toMillis(ttlMinutes);
+        // Điều kiện trên createdAt: nếu hai request cùng tiếp quản, chỉ một UPDATE thành công
+        if (!store.takeOver(record.getId(), new Date(now - leaseMs), new Date(now), new Date(expiresAt))) {
+            return new Outcome(inProgress(), null);
+        }
+        log.info("Taking over stale idempotency claim {} for key {}", record.getId(), idemKey);
+        return runClaimed(record.getId(), expiresAt, idemKey, fingerprint, action);
+    }
+
+    private Outcome runClaimed(Long claimId, long expiresAt, String idemKey, String fingerprint,
+                               Supplier<ResponseEntity<?>> action) {
+        ResponseEntity<?> response;
+        try {
+            response = action.get();
+        } catch (RuntimeException e) {
+            store.release(claimId);
+            throw e;
+        }
+
+        int status = response.getStatusCode().value();
+        if (response.getStatusCode().is5xxServerError() || response.getHeaders().containsKey(HttpHeaders.RETRY_AFTER)) {
+            store.release(claimId);
+            return new Outcome(response, null);
+        }
+        String body;
+        try {
+            body = response.getBody() == null ? null : objectMapper.writeValueAsString(response.getBody());
+        } catch (JsonProcessingException e) {
+            log.warn("Cannot serialize response for idempotency key {}: {}", idemKey, e.getMessage());
+            store.release(claimId);
+            return new Outcome(response, null);
+        }
+        store.complete(claimId, status, body);
+        return new Outcome(response, new StoredResponse(fingerprint, status, body, expiresAt));
+    }
+
+    private Outcome fromExisting(IdempotencyRecord record, String fingerprint) {
+        if (!IdempotencyRecord.COMPLETED.equals(record.getState())) {
+            return new Outcome(inProgress(), null);
+        }
+        StoredResponse stored = new StoredResponse(record.getFingerprint(), record.getResponseStatus(),
+                record.getResponseBody(), record.getExpiresAt().getTime());
+        return new Outcome(replay(stored, fingerprint), stored);
+    }
+
+    private ResponseEntity<?> replay(StoredResponse stored, String fingerprint) {
+        if (!stored.fingerprint().equals(fingerprint)) {
+            return error(HttpStatus.UNPROCESSABLE_ENTITY,
+                    HEADER + " was already used with a different request body");
+        }
+        return ResponseEntity.status(stored.status())
+                .header("Idempotent-Replayed", "true")
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(stored.body());
+    }
+
+    private void cache(String cacheKey, StoredResponse stored) {
+        if (completed.size() >= maxCachedResponses) {
+            evictCached(System.currentTimeMillis());
+        }
+        completed.put(cacheKey, stored);
+    }
+
+    // Bỏ bản ghi hết hạn; nếu vẫn đầy thì bỏ bớt 10% (DB vẫn còn, chỉ mất fast path)
+    private void evictCached(long now) {
+        completed.values().removeIf(s -> s.expired(now));
+        int toDrop = completed.size() - (maxCachedResponses * 9 / 10);
+        Iterator<String> it = completed.keySet().iterator();
+        while (toDrop-- > 0 && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    @Scheduled(initialDelayString = "${app.idempotency.cleanupMs:3600000}",
+               fixedDelayString = "${app.idempotency.cleanupMs:3600000}")
+    public void purgeExpired() {
+        long now = System.currentTimeMillis();
+        completed.values().removeIf(s -> s.expired(now));
+        int deleted = store.deleteExpired(new Date(now));
+        if (deleted > 0) {
+            log.info("Deleted {} expired idempotency keys", deleted);
+        }
+    }
+
+    private String fingerprint(Object request) {
+        try {
+            byte[] payload = request == null
+                    ? new byte[0]
+                    : objectMapper.writeValueAsString(request).getBytes(StandardCharsets.UTF_8);
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(payload));
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Cannot fingerprint request", e);
+        }
+    }
+
+    private ResponseEntity<?> inProgress() {
+        return ResponseEntity.status(HttpStatus.CONFLICT)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, TimeUnit.MILLISECONDS.toSeconds(leaseMs))))
+                .body(Map.of("error", "A request with this " + HEADER + " is still being processed"));
+    }
+
+    private static ResponseEntity<?> error(HttpStatus status, String message) {
+        return ResponseEntity.status(status).body(Map.of("error", message));
+    }
+}
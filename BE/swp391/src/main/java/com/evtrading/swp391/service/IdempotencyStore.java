@@ -0,0 +1,55 @@
+package com.evtrading.swp391.service;
+
+import com.evtrading.swp391.entity.IdempotencyRecord;
+import com.evtrading.swp391.repository.IdempotencyRecordRepository;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Date;
+import java.util.Optional;
+
+/**
+ * Ghi bảng idempotency_keys trong transaction riêng (REQUIRES_NEW): bản ghi IN_PROGRESS phải được commit
+ * trước khi chạy request để các instance khác thấy, và lỗi unique constraint khi claim trùng
+ * không làm hỏng transaction của caller.
+ */
+@Component
+class IdempotencyStore {
+
+    private final IdempotencyRecordRepository repo;
+
+    IdempotencyStore(IdempotencyRecordRepository repo) {
+        this.repo = repo;
+    }
+
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public IdempotencyRecord claim(IdempotencyRecord record) {
+        return repo.saveAndFlush(record);
+    }
+
+    @Transactional(propagation = Propagation.REQUIRES_NEW, readOnly = true)
+    public Optional<IdempotencyRecord> find(String username, String scope, String idemKey) {
+        return repo.findByUsernameAndScopeAndIdemKey(username, scope, idemKey);
+    }
+
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void complete(Long id, int status, String body) {
+        repo.complete(id, status, body);
+    }
+
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public boolean takeOver(Long id, Date staleBefore, Date now, Date expiresAt) {
+        return repo.takeOver(id, staleBefore, now, expiresAt) == 1;
+    }
+
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void release(Long id) {
+        repo.deleteById(id);
+    }
+
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public int deleteExpired(Date now) {
+        return repo.deleteExpired(now);
+    }
+}
@@ -2,8 +2,11 @@ package com.evtrading.swp391.service;
 
 import com.evtrading.swp391.dto.*;
 import com.evtrading.swp391.entity.*;
+import com.evtrading.swp391.event.DomainEvent;
 import com.evtrading.swp391.mapper.ListingMapper;
 import com.evtrading.swp391.repository.*;
+import com.evtrading.swp391.state.ListingStatus;
+import com.evtrading.swp391.util.Money;
 import jakarta.transaction.Transactional;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
@@ -15,6 +18,7 @@ import org.springframework.web.multipart.MultipartFile;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 import java.util.Calendar;
 
@@ -54,6 +58,9 @@ public class ListingService {
     @Autowired
     private ComplaintRepository complaintRepository;
 
+    @Autowired
+    private OutboxService outboxService;
+
     /**
      * Tạo một bài đăng mới
      */
@@ -89,8 +96,8 @@ public class ListingService {
         listing.setBrand(brand);
         listing.setTitle(dto.getTitle());
         listing.setDescription(dto.getDescription());
-        listing.setPrice(dto.getPrice());
-        listing.setStatus("PENDING"); // Trạng thái mặc định khi tạo mới
+        listing.setPrice(Money.of(dto.getPrice()));
+        listing.setStatus(ListingStatus.PENDING.name()); // Trạng thái mặc định khi tạo mới
         listing.setCreatedAt(new Date());
         
         // Nếu là xe
@@ -109,7 +116,7 @@ public class ListingService {
         SpamFilterService.SpamResult spamResult = spamFilterService.check(listing, imageUrls);
         if (spamResult.flagged) {
             // Mark listing as flagged/pending review
-            listing.setStatus("FLAGGED");
+            listing.setStatus(ListingStatus.FLAGGED.name());
         }
 
         // 5. Lưu Listing (even if flagged)
@@ -161,7 +168,7 @@ public class ListingService {
         // 2. Cập nhật thông tin cơ bản
         listing.setTitle(dto.getTitle());
         listing.setDescription(dto.getDescription());
-        listing.setPrice(dto.getPrice());
+        listing.setPrice(Money.of(dto.getPrice()));
         
         // 3. Cập nhật category và brand nếu cần
         if (dto.getCategoryId() != null) {
@@ -278,12 +285,13 @@ public class ListingService {
                 .orElseThrow(() -> new RuntimeException("Listing not found with id: " + id));
                 
         // Kiểm tra xem bài đăng có phải đang ở trạng thái PENDING không
-        if (!"PENDING".equals(listing.getStatus())) {
+        ListingStatus current = ListingStatus.of(listing.getStatus());
+        if (current != ListingStatus.PENDING) {
             throw new RuntimeException("Only pending listings can be approved");
         }
         
         // Cập nhật trạng thái và các ngày
-        listing.setStatus("ACTIVE");
+        listing.setStatus(ListingStatus.ACTIVE.name());
         listing.setStartDate(new Date());
         
         // Thiết lập ngày hết hạn (ví dụ 30 ngày sau)
@@ -293,6 +301,8 @@ public class ListingService {
         listing.setExpiryDate(calendar.getTime());
         
         Listing savedListing = listingRepository.save(listing);
+        outboxService.record(DomainEvent.LISTING, id, DomainEvent.LISTING_APPROVED,
+                Map.of("listingId", id, "sellerId", savedListing.getUser().getUserID()));
         
         List<ListingImage> images = listingImageRepository.findByListingListingID(id);
         
@@ -308,12 +318,13 @@ public class ListingService {
                 .orElseThrow(() -> new RuntimeException("Listing not found with id: " + id));
                 
         // Kiểm tra xem bài đăng có phải đang ở trạng thái PENDING không
-        if (!"PENDING".equals(listing.getStatus())) {
+        ListingStatus current = ListingStatus.of(listing.getStatus());
+        if (current != ListingStatus.PENDING) {
             throw new RuntimeException("Only pending listings can be rejected");
         }
         
         // Cập nhật trạng thái
-        listing.setStatus("REJECTED");
+        listing.setStatus(ListingStatus.REJECTED.name());
         // Lưu lý do từ chối nếu có
         if (reason != null && !reason.isEmpty()) {
             // Cần thêm trường rejectionReason vào entity Listing
@@ -322,6 +333,9 @@ public class ListingService {
         }
         
         Listing savedListing = listingRepository.save(listing);
+        outboxService.record(DomainEvent.LISTING, id, DomainEvent.LISTING_REJECTED,
+                Map.of("listingId", id, "sellerId", savedListing.getUser().getUserID(),
+                       "reason", reason == null ? "" : reason));
         
         List<ListingImage> images = listingImageRepository.findByListingListingID(id);
         
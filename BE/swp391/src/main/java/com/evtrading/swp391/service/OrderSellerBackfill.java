@@ -0,0 +1,45 @@
+package com.evtrading.swp391.service;
+
+import com.evtrading.swp391.repository.OrderRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Điền cột orders.sellerID cho các đơn tạo trước khi có cột này.
+ * Chạy theo từng khoảng orderID, mỗi khoảng một transaction ngắn để không khóa cả bảng;
+ * khi đã điền hết thì chỉ tốn một query max().
+ */
+@Component
+class OrderSellerBackfill {
+    private static final Logger log = LoggerFactory.getLogger(OrderSellerBackfill.class);
+
+    private static final int BATCH_SIZE = 5000;
+
+    private final OrderRepository orderRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    OrderSellerBackfill(OrderRepository orderRepository, TransactionTemplate transactionTemplate) {
+        this.orderRepository = orderRepository;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        Integer maxId = orderRepository.findMaxOrderIdWithoutSeller();
+        if (maxId == null) {
+            return;
+        }
+        int total = 0;
+        for (int from = 0; from < maxId; from += BATCH_SIZE) {
+            int lo = from;
+            int hi = Math.min(from + BATCH_SIZE, maxId);
+            Integer updated = transactionTemplate.execute(status -> orderRepository.backfillSeller(lo, hi));
+            total += updated == null ? 0 : updated;
+        }
+        log.info("Backfilled sellerID on {} orders", total);
+    }
+}
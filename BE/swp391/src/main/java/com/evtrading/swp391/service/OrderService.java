@@ -1,28 +1,50 @@
 package com.evtrading.swp391.service;
 
+import com.evtrading.swp391.dto.OrderPageDTO;
 import com.evtrading.swp391.dto.OrderRequestDTO;
 import com.evtrading.swp391.dto.OrderResponseDTO;
 import com.evtrading.swp391.dto.PaymentRequestDTO;
 import com.evtrading.swp391.dto.PaymentResponseDTO;
+import com.evtrading.swp391.dto.SellerOrderInboxDTO;
 import com.evtrading.swp391.entity.Listing;
 import com.evtrading.swp391.entity.Order;
 import com.evtrading.swp391.entity.Transaction;
 import com.evtrading.swp391.entity.Payment;
 import com.evtrading.swp391.entity.User;
+import com.evtrading.swp391.event.DomainEvent;
+import com.evtrading.swp391.exception.OrderConflictException;
+import com.evtrading.swp391.payment.PaymentInitiation;
+import com.evtrading.swp391.payment.PaymentProvider;
 import com.evtrading.swp391.repository.ListingRepository;
 import com.evtrading.swp391.repository.OrderRepository;
 import com.evtrading.swp391.repository.TransactionRepository;
 import com.evtrading.swp391.repository.PaymentRepository;
 import com.evtrading.swp391.repository.UserRepository;
+import com.evtrading.swp391.state.ListingStatus;
+import com.evtrading.swp391.state.OrderStatus;
+import com.evtrading.swp391.state.PaymentStatus;
+import com.evtrading.swp391.state.TransactionStatus;
+import com.evtrading.swp391.state.Transitions;
+import com.evtrading.swp391.util.Money;
 import jakarta.transaction.Transactional;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Service;
-import java.math.BigDecimal;
+import org.springframework.transaction.support.TransactionTemplate;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.stream.Collectors;
 
 @Service
@@ -44,8 +66,57 @@ public class OrderService {
     @Autowired
     private PaymentRepository paymentRepository;
 
-    @Transactional
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private PaymentGateway paymentGateway;
+
+    @Autowired
+    private OutboxService outboxService;
+
+    @Autowired
+    private ReservationExpiryScheduler reservationExpiryScheduler;
+
+    private static final int MAX_ORDER_ATTEMPTS = 3;
+    private static final int MAX_ORDER_PAGE_SIZE = 100;
+
+    /**
+     * Đặt mua listing.
+     *
+     * Không dùng khóa bi quan: listing được giữ chỗ bằng UPDATE có điều kiện (status = 'ACTIVE'),
+     * nên khi nhiều người mua cùng lúc chỉ một người thắng, những người còn lại nhận
+     * {@link OrderConflictException}. Lỗi xung đột tạm thời của DB (optimistic lock / deadlock)
+     * được thử lại tối đa {@value #MAX_ORDER_ATTEMPTS} lần, mỗi lần trong transaction mới.
+     */
     public OrderResponseDTO createOrder(OrderRequestDTO dto, Authentication authentication) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                OrderResponseDTO created = transactionTemplate.execute(status -> createOrderOnce(dto, authentication));
+                // Đã commit: bắt đầu đếm thời hạn giữ chỗ
+                reservationExpiryScheduler.register(created.getTransactionId(), created.getDueTime());
+                return created;
+            } catch (ConcurrencyFailureException e) {
+                if (attempt >= MAX_ORDER_ATTEMPTS) {
+                    logger.warn("Giving up creating order for listing {} after {} attempts", dto.getListingId(), attempt);
+                    throw new OrderConflictException("Listing is being updated, please try again", true);
+                }
+                logger.debug("Concurrency failure creating order (attempt {}): {}", attempt, e.getMessage());
+                backoff(attempt);
+            }
+        }
+    }
+
+    private static void backoff(int attempt) {
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(5, 20L * attempt));
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new OrderConflictException("Interrupted while retrying order", true);
+        }
+    }
+
+    private OrderResponseDTO createOrderOnce(OrderRequestDTO dto, Authentication authentication) {
         logger.info("Creating order for listing ID: {}", dto.getListingId());
 
         // Lấy thông tin người mua từ token
@@ -64,7 +135,7 @@ public class OrderService {
                 });
 
         // Kiểm tra listing có sẵn và người mua không phải người bán
-        if (!"ACTIVE".equals(listing.getStatus())) {
+        if (!Transitions.LISTING.canTransition(ListingStatus.of(listing.getStatus()), ListingStatus.SOLD)) {
             logger.error("Listing is not available: {}", listing.getStatus());
             throw new RuntimeException("Listing is not available for purchase");
         }
@@ -73,17 +144,24 @@ public class OrderService {
             throw new RuntimeException("Cannot buy your own listing");
         }
 
+        // Giữ chỗ listing: chỉ thành công nếu listing vẫn ACTIVE tại thời điểm UPDATE
+        if (listingRepository.reserveIfActive(listing.getListingID()) == 0) {
+            logger.info("Listing {} was reserved by another buyer", listing.getListingID());
+            throw new OrderConflictException("Listing is no longer available for purchase");
+        }
+
         // Tính tổng số tiền
-        BigDecimal totalAmount = listing.getPrice().multiply(new BigDecimal(dto.getQuantity()));
+        Money totalAmount = listing.getPrice().times(dto.getQuantity());
 
         // Tạo Order
         Order order = new Order();
         order.setBuyer(buyer);
         order.setListing(listing);
+        order.setSeller(listing.getUser());
         order.setQuantity(dto.getQuantity());
         order.setPrice(listing.getPrice());
         order.setTotalAmount(totalAmount);
-        order.setStatus("PENDING");
+        order.setStatus(OrderStatus.PENDING.name());
         order.setCreatedAt(new Date());
         Order savedOrder = orderRepository.save(order);
 
@@ -91,16 +169,23 @@ public class OrderService {
         Transaction transaction = new Transaction();
         transaction.setOrder(savedOrder);
         transaction.setTotalAmount(totalAmount);
-        transaction.setPaidAmount(BigDecimal.ZERO);
-        transaction.setStatus("PENDING");
+        transaction.setPaidAmount(Money.zero());
+        transaction.setStatus(TransactionStatus.PENDING.name());
         transaction.setCreatedAt(new Date());
         // Thiết lập thời hạn thanh toán từ system config (đang để cố định 7 ngày)
         transaction.setDueTime(new Date(System.currentTimeMillis() + 7 * 24 * 60 * 60 * 1000)); 
         Transaction savedTransaction = transactionRepository.save(transaction);
 
-        // Cập nhật Listing status
-        listing.setStatus("SOLD");
-        listingRepository.save(listing);
+        outboxService.record(DomainEvent.ORDER, savedOrder.getOrderID(), DomainEvent.ORDER_CREATED, Map.of(
+                "orderId", savedOrder.getOrderID(),
+                "listingId", listing.getListingID(),
+                "buyerId", buyer.getUserID(),
+                "sellerId", listing.getUser().getUserID(),
+                "totalAmount", totalAmount,
+                "transactionId", savedTransaction.getTransactionID()));
+        outboxService.record(DomainEvent.LISTING, listing.getListingID(), DomainEvent.LISTING_SOLD, Map.of(
+                "listingId", listing.getListingID(),
+                "orderId", savedOrder.getOrderID()));
 
         // Tạo response DTO
         OrderResponseDTO response = new OrderResponseDTO();
@@ -109,11 +194,12 @@ public class OrderService {
         response.setSellerId(listing.getUser().getUserID());
         response.setListingId(savedOrder.getListing().getListingID());
         response.setQuantity(savedOrder.getQuantity());
-        response.setPrice(savedOrder.getPrice());
-        response.setTotalAmount(savedOrder.getTotalAmount());
+        response.setPrice(savedOrder.getPrice().toBigDecimal());
+        response.setTotalAmount(savedOrder.getTotalAmount().toBigDecimal());
         response.setStatus(savedOrder.getStatus());
         response.setTransactionId(savedTransaction.getTransactionID());
         response.setCreatedAt(savedOrder.getCreatedAt());
+        response.setDueTime(savedTransaction.getDueTime());
 
         return response;
     }
@@ -144,79 +230,192 @@ public class OrderService {
             throw new RuntimeException("Not authorized to pay for this order");
         }
 
-        // Kiểm tra số tiền thanh toán hợp lệ
-        BigDecimal newPaidAmount = transaction.getPaidAmount().add(dto.getAmount());
-        if (newPaidAmount.compareTo(transaction.getTotalAmount()) > 0) {
-            logger.error("Payment amount {} exceeds remaining amount {}", 
-                         dto.getAmount(), transaction.getTotalAmount().subtract(transaction.getPaidAmount()));
+        // Giao dịch đã hết hạn / đã thanh toán đủ thì không nhận thêm tiền
+        TransactionStatus transactionStatus = TransactionStatus.of(transaction.getStatus());
+        if (transactionStatus == null || !transactionStatus.acceptsPayment()) {
+            logger.error("Transaction {} is not payable, status {}", transaction.getTransactionID(), transaction.getStatus());
+            throw new RuntimeException("Transaction is no longer payable");
+        }
+
+        // Kiểm tra sơ bộ theo snapshot; tiền chỉ thực sự được cộng khi provider xác nhận (confirmPayment)
+        Money amount = Money.of(dto.getAmount());
+        Money remaining = transaction.getTotalAmount().minus(transaction.getPaidAmount());
+        if (amount.isGreaterThan(remaining)) {
+            logger.error("Payment amount {} exceeds remaining amount {}", dto.getAmount(), remaining);
             throw new RuntimeException("Payment amount exceeds remaining amount");
         }
 
-        // Tạo Payment
+        PaymentProvider provider = paymentGateway.resolve(dto.getPaymentProvider());
+
+        // Tạo Payment PENDING, chờ callback của provider
         Payment payment = new Payment();
         payment.setTransaction(transaction);
-        payment.setAmount(dto.getAmount());
+        payment.setAmount(amount);
         payment.setMethod(dto.getPaymentMethod());
-        payment.setProvider(dto.getPaymentProvider());
-        payment.setStatus("PENDING");
+        payment.setProvider(provider.name());
+        payment.setReference(UUID.randomUUID().toString());
+        payment.setStatus(PaymentStatus.PENDING.name());
         payment.setPaidAt(new Date());
         Payment savedPayment = paymentRepository.save(payment);
+        outboxService.record(DomainEvent.TRANSACTION, transaction.getTransactionID(), DomainEvent.PAYMENT_CREATED, Map.of(
+                "paymentId", savedPayment.getPaymentID(),
+                "transactionId", transaction.getTransactionID(),
+                "orderId", order.getOrderID(),
+                "buyerId", user.getUserID(),
+                "sellerId", order.getListing().getUser().getUserID(),
+                "amount", amount.toBigDecimal(),
+                "status", savedPayment.getStatus()));
 
-        // Cập nhật Transaction
-        transaction.setPaidAmount(newPaidAmount);
-        transaction.setStatus(newPaidAmount.equals(transaction.getTotalAmount()) 
-                             ? "FULLY_PAID" : "PARTIALLY_PAID");
-        transaction.setTransactionDate(new Date());
-        transactionRepository.save(transaction);
-
-        // Cập nhật Order nếu đã thanh toán đủ
-        if (transaction.getStatus().equals("FULLY_PAID")) {
-            order.setStatus("COMPLETED");
-            orderRepository.save(order);
-        }
+        paymentGateway.initiateAfterCommit(provider,
+                new PaymentInitiation(savedPayment.getReference(), savedPayment.getAmount().toBigDecimal(),
+                        savedPayment.getMethod()));
 
         // Tạo response DTO
         PaymentResponseDTO response = new PaymentResponseDTO();
         response.setPaymentId(savedPayment.getPaymentID());
         response.setTransactionId(savedPayment.getTransaction().getTransactionID());
         response.setOrderId(order.getOrderID());
-        response.setAmount(savedPayment.getAmount());
+        response.setAmount(savedPayment.getAmount().toBigDecimal());
         response.setMethod(savedPayment.getMethod());
         response.setProvider(savedPayment.getProvider());
         response.setStatus(savedPayment.getStatus());
         response.setPaidAt(savedPayment.getPaidAt());
+        response.setReference(savedPayment.getReference());
 
         return response;
     }
 
+    /**
+     * Áp dụng thanh toán đã được provider xác nhận; phải chạy trong transaction của caller.
+     *
+     * Idempotent: payment chỉ chuyển PENDING -> SUCCEEDED một lần nên callback gửi lặp không cộng tiền hai lần.
+     * Tiền được cộng nguyên tử bằng UPDATE có điều kiện paidAmount + amount <= totalAmount, nên các thanh toán
+     * song song không ghi đè nhau hay cùng vượt tổng tiền. Nếu không cộng được (giao dịch đã hết hạn
+     * hoặc vượt phần còn lại) payment bị đánh REJECTED để hoàn tiền.
+     *
+     * @return true nếu tiền đã được cộng vào giao dịch
+     */
+    public boolean confirmPayment(Integer paymentId, Integer transactionId, Integer orderId,
+                                  Money amount, Date paidAt) {
+        if (paymentRepository.markIfPending(paymentId, PaymentStatus.SUCCEEDED.name(), paidAt) == 0) {
+            return false;
+        }
+        if (transactionRepository.applyPayment(transactionId, amount, paidAt) == 0) {
+            logger.warn("Payment {} of {} cannot be applied to transaction {}, marking REJECTED",
+                    paymentId, amount, transactionId);
+            paymentRepository.updateStatus(paymentId, PaymentStatus.REJECTED.name());
+            return false;
+        }
+        // Cập nhật Order nếu đã thanh toán đủ (đọc lại trạng thái sau UPDATE)
+        if (TransactionStatus.of(transactionRepository.findStatusById(transactionId)) == TransactionStatus.FULLY_PAID) {
+            outboxService.record(DomainEvent.TRANSACTION, transactionId, DomainEvent.TRANSACTION_FULLY_PAID,
+                    Map.of("transactionId", transactionId, "orderId", orderId));
+            if (orderRepository.completeIfPending(orderId) > 0) {
+                outboxService.record(DomainEvent.ORDER, orderId, DomainEvent.ORDER_COMPLETED,
+                        Map.of("orderId", orderId, "transactionId", transactionId));
+            }
+        }
+        return true;
+    }
+
+    public void failPayment(Integer paymentId) {
+        paymentRepository.markIfPending(paymentId, PaymentStatus.FAILED.name(), new Date());
+    }
+
+    public void rejectPayment(Integer paymentId) {
+        paymentRepository.markIfPending(paymentId, PaymentStatus.REJECTED.name(), new Date());
+    }
+
     public List<OrderResponseDTO> getUserOrders(String username) {
         logger.info("Fetching orders for user: {}", username);
         
         User user = userRepository.findByUsername(username)
                 .orElseThrow(() -> new RuntimeException("User not found"));
         
-        List<Order> orders = orderRepository.findByBuyerOrderByCreatedAtDesc(user);
-        
-        return orders.stream().map(order -> {
-            OrderResponseDTO dto = new OrderResponseDTO();
-            dto.setOrderId(order.getOrderID());
-            dto.setBuyerId(order.getBuyer().getUserID());
-            dto.setSellerId(order.getListing().getUser().getUserID());
-            dto.setListingId(order.getListing().getListingID());
-            dto.setQuantity(order.getQuantity());
-            dto.setPrice(order.getPrice());
-            dto.setTotalAmount(order.getTotalAmount());
-            dto.setStatus(order.getStatus());
-            
-            // Lấy transaction ID nếu có
-            Transaction transaction = transactionRepository.findByOrder(order).orElse(null);
-            if (transaction != null) {
-                dto.setTransactionId(transaction.getTransactionID());
+        return orderRepository.findBuyerOrderViews(user.getUserID());
+    }
+
+    /**
+     * Lịch sử đơn của người mua, phân trang keyset theo (createdAt, orderID) giảm dần.
+     * Mỗi trang là một query, chi phí không phụ thuộc vào việc đang ở trang thứ mấy.
+     */
+    public OrderPageDTO getUserOrderPage(String username, String cursor, int size) {
+        User user = userRepository.findByUsername(username)
+                .orElseThrow(() -> new RuntimeException("User not found"));
+
+        int pageSize = Math.max(1, Math.min(size, MAX_ORDER_PAGE_SIZE));
+        // Lấy dư một dòng để biết còn trang sau hay không
+        Pageable limit = PageRequest.of(0, pageSize + 1);
+        List<OrderResponseDTO> rows;
+        if (cursor == null || cursor.isBlank()) {
+            rows = orderRepository.findBuyerOrderPage(user.getUserID(), limit);
+        } else {
+            OrderCursor after = OrderCursor.decode(cursor);
+            rows = orderRepository.findBuyerOrderPageAfter(user.getUserID(), after.createdAt(), after.orderId(), limit);
+        }
+
+        return toPage(rows, pageSize);
+    }
+
+    /**
+     * Hộp đơn của người bán: các đơn đặt trên listing của mình, lọc theo status và khoảng ngày [from, to),
+     * kèm số đơn theo từng status. Dựa trên cột orders.sellerID (index sellerID, status, createdAt).
+     */
+    public SellerOrderInboxDTO getSellerOrderInbox(String username, String status, Date from, Date to,
+                                                   String cursor, int size) {
+        User seller = userRepository.findByUsername(username)
+                .orElseThrow(() -> new RuntimeException("User not found"));
+
+        Date fromDate = from != null ? from : new Date(0);
+        Date toDate = to != null ? to : new Date(System.currentTimeMillis() + 24L * 60 * 60 * 1000);
+        int pageSize = Math.max(1, Math.min(size, MAX_ORDER_PAGE_SIZE));
+        OrderCursor after = cursor == null || cursor.isBlank()
+                ? new OrderCursor(toDate, Integer.MAX_VALUE)
+                : OrderCursor.decode(cursor);
+        Pageable limit = PageRequest.of(0, pageSize + 1);
+
+        List<OrderResponseDTO> rows = status == null || status.isBlank()
+                ? orderRepository.findSellerOrderPage(seller.getUserID(), fromDate,
+                        after.createdAt(), after.orderId(), limit)
+                : orderRepository.findSellerOrderPageByStatus(seller.getUserID(), status, fromDate,
+                        after.createdAt(), after.orderId(), limit);
+        OrderPageDTO page = toPage(rows, pageSize);
+
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (Object[] row : orderRepository.countSellerOrdersByStatus(seller.getUserID(), fromDate, toDate)) {
+            counts.put((String) row[0], (Long) row[1]);
+        }
+        return new SellerOrderInboxDTO(page.getItems(), page.getNextCursor(), counts);
+    }
+
+    // rows được lấy dư một dòng (pageSize + 1) để biết còn trang sau hay không
+    private static OrderPageDTO toPage(List<OrderResponseDTO> rows, int pageSize) {
+        String nextCursor = null;
+        if (rows.size() > pageSize) {
+            rows = new ArrayList<>(rows.subList(0, pageSize));
+            OrderResponseDTO last = rows.get(pageSize - 1);
+            nextCursor = new OrderCursor(last.getCreatedAt(), last.getOrderId()).encode();
+        }
+        return new OrderPageDTO(rows, nextCursor);
+    }
+
+    // Cursor dạng base64url của "createdAtMillis:orderId"
+    private record OrderCursor(Date createdAt, Integer orderId) {
+        String encode() {
+            String raw = createdAt.getTime() + ":" + orderId;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static OrderCursor decode(String cursor) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int sep = raw.indexOf(':');
+                return new OrderCursor(new Date(Long.parseLong(raw.substring(0, sep))),
+                        Integer.valueOf(raw.substring(sep + 1)));
+            } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                throw new RuntimeException("Invalid cursor");
             }
-            
-            dto.setCreatedAt(order.getCreatedAt());
-            return dto;
-        }).collect(Collectors.toList());
+        }
     }
 
     public OrderResponseDTO getOrderById(Integer orderId, String username) {
@@ -225,33 +424,14 @@ public class OrderService {
         User user = userRepository.findByUsername(username)
                 .orElseThrow(() -> new RuntimeException("User not found"));
         
-        Order order = orderRepository.findById(orderId)
+        OrderResponseDTO dto = orderRepository.findOrderView(orderId)
                 .orElseThrow(() -> new RuntimeException("Order not found"));
         
         // Kiểm tra người dùng có quyền xem đơn hàng
-        if (!order.getBuyer().getUserID().equals(user.getUserID()) &&
-            !order.getListing().getUser().getUserID().equals(user.getUserID())) {
+        if (!dto.getBuyerId().equals(user.getUserID()) && !dto.getSellerId().equals(user.getUserID())) {
             logger.error("User {} attempted unauthorized access to order {}", username, orderId);
             throw new RuntimeException("Not authorized to view this order");
         }
-        
-        OrderResponseDTO dto = new OrderResponseDTO();
-        dto.setOrderId(order.getOrderID());
-        dto.setBuyerId(order.getBuyer().getUserID());
-        dto.setSellerId(order.getListing().getUser().getUserID());
-        dto.setListingId(order.getListing().getListingID());
-        dto.setQuantity(order.getQuantity());
-        dto.setPrice(order.getPrice());
-        dto.setTotalAmount(order.getTotalAmount());
-        dto.setStatus(order.getStatus());
-        
-        // Lấy transaction
-        Transaction transaction = transactionRepository.findByOrder(order).orElse(null);
-        if (transaction != null) {
-            dto.setTransactionId(transaction.getTransactionID());
-        }
-        
-        dto.setCreatedAt(order.getCreatedAt());
         return dto;
     }
 
@@ -278,11 +458,12 @@ public class OrderService {
             dto.setPaymentId(payment.getPaymentID());
             dto.setTransactionId(payment.getTransaction().getTransactionID());
             dto.setOrderId(payment.getTransaction().getOrder().getOrderID());
-            dto.setAmount(payment.getAmount());
+            dto.setAmount(payment.getAmount().toBigDecimal());
             dto.setMethod(payment.getMethod());
             dto.setProvider(payment.getProvider());
             dto.setStatus(payment.getStatus());
             dto.setPaidAt(payment.getPaidAt());
+            dto.setReference(payment.getReference());
             return dto;
         }).collect(Collectors.toList());
     }
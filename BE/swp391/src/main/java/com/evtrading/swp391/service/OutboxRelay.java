@@ -0,0 +1,130 @@
+package com.evtrading.swp391.service;
+
+import com.evtrading.swp391.entity.OutboxEvent;
+import com.evtrading.swp391.event.DomainEvent;
+import com.evtrading.swp391.event.DomainEventSubscriber;
+import com.evtrading.swp391.repository.OutboxEventRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Phát các sự kiện outbox đã commit cho subscriber in-process, theo lô và theo thứ tự id.
+ *
+ * Giao nhận at-least-once: sự kiện chỉ được đánh publishedAt sau khi mọi subscriber xử lý xong, nên
+ * crash giữa chừng sẽ làm sự kiện được giao lại. Thứ tự theo aggregate được giữ: khi một sự kiện lỗi,
+ * các sự kiện sau của cùng aggregate trong lô bị hoãn tới lượt sau. Sau {@code app.outbox.maxAttempts}
+ * lần lỗi, sự kiện bị bỏ qua (giữ lastError) để không chặn aggregate mãi mãi.
+ */
+@Component
+public class OutboxRelay {
+    private static final Logger log = LoggerFactory.getLogger(OutboxRelay.class);
+
+    private final OutboxEventRepository repository;
+    private final ObjectProvider<DomainEventSubscriber> subscriberProvider;
+    private final TransactionTemplate transactionTemplate;
+    private volatile List<DomainEventSubscriber> subscribers;
+
+    @Value("${app.outbox.batchSize:200}")
+    private int batchSize;
+
+    @Value("${app.outbox.maxAttempts:10}")
+    private int maxAttempts;
+
+    @Value("${app.outbox.retentionHours:72}")
+    private long retentionHours;
+
+    public OutboxRelay(OutboxEventRepository repository,
+                       ObjectProvider<DomainEventSubscriber> subscriberProvider,
+                       TransactionTemplate transactionTemplate) {
+        this.repository = repository;
+        this.subscriberProvider = subscriberProvider;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @Scheduled(fixedDelayString = "${app.outbox.pollMs:500}")
+    public void relay() {
+        List<DomainEventSubscriber> targets = subscribers();
+        while (true) {
+            List<OutboxEvent> batch = repository.findUnpublished(PageRequest.of(0, batchSize));
+            if (batch.isEmpty()) {
+                return;
+            }
+            Set<String> blocked = new HashSet<>();
+            List<Long> done = new ArrayList<>(batch.size());
+            for (OutboxEvent event : batch) {
+                String aggregate = event.getAggregateType() + ':' + event.getAggregateId();
+                if (blocked.contains(aggregate)) {
+                    continue;
+                }
+                try {
+                    DomainEvent domainEvent = toDomainEvent(event);
+                    for (DomainEventSubscriber subscriber : targets) {
+                        subscriber.onEvent(domainEvent);
+                    }
+                    done.add(event.getId());
+                } catch (RuntimeException e) {
+                    handleFailure(event, e, done, blocked, aggregate);
+                }
+            }
+            if (!done.isEmpty()) {
+                transactionTemplate.executeWithoutResult(status -> repository.markPublished(done, new Date()));
+            }
+            // Lô chưa đầy, hoặc có sự kiện phải chờ lượt sau: dừng tick này
+            if (batch.size() < batchSize || !blocked.isEmpty()) {
+                return;
+            }
+        }
+    }
+
+    private void handleFailure(OutboxEvent event, RuntimeException e, List<Long> done, Set<String> blocked,
+                               String aggregate) {
+        String error = String.valueOf(e.getMessage());
+        String truncated = error.length() > 500 ? error.substring(0, 500) : error;
+        transactionTemplate.executeWithoutResult(status -> repository.recordFailure(event.getId(), truncated));
+        if (event.getAttempts() + 1 >= maxAttempts) {
+            log.error("Giving up on outbox event {} ({} {}) after {} attempts: {}", event.getId(),
+                    event.getEventType(), aggregate, event.getAttempts() + 1, error);
+            done.add(event.getId());
+        } else {
+            log.warn("Outbox event {} ({} {}) failed, will retry: {}", event.getId(), event.getEventType(),
+                    aggregate, error);
+            blocked.add(aggregate);
+        }
+    }
+
+    private List<DomainEventSubscriber> subscribers() {
+        List<DomainEventSubscriber> current = subscribers;
+        if (current == null) {
+            current = subscriberProvider.orderedStream().toList();
+            subscribers = current;
+        }
+        return current;
+    }
+
+    private static DomainEvent toDomainEvent(OutboxEvent event) {
+        return new DomainEvent(event.getId(), event.getAggregateType(), event.getAggregateId(),
+                event.getEventType(), event.getPayload(), event.getCreatedAt());
+    }
+
+    @Scheduled(initialDelay = 60_000, fixedDelay = 3_600_000)
+    public void purgePublished() {
+        Date before = new Date(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(retentionHours));
+        Integer deleted = transactionTemplate.execute(status -> repository.deletePublishedBefore(before));
+        if (deleted != null && deleted > 0) {
+            log.info("Purged {} published outbox events", deleted);
+        }
+    }
+}
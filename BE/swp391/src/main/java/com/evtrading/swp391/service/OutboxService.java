@@ -0,0 +1,43 @@
+package com.evtrading.swp391.service;
+
+import com.evtrading.swp391.entity.OutboxEvent;
+import com.evtrading.swp391.repository.OutboxEventRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * Ghi sự kiện domain vào bảng outbox_events trong cùng transaction với thay đổi trạng thái,
+ * nên sự kiện tồn tại khi và chỉ khi thay đổi đã commit. Việc phát đi do {@link OutboxRelay} đảm nhận.
+ */
+@Service
+public class OutboxService {
+
+    private final OutboxEventRepository repository;
+    private final ObjectMapper objectMapper;
+
+    public OutboxService(OutboxEventRepository repository, ObjectMapper objectMapper) {
+        this.repository = repository;
+        this.objectMapper = objectMapper;
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void record(String aggregateType, Object aggregateId, String eventType, Map<String, ?> payload) {
+        OutboxEvent event = new OutboxEvent();
+        event.setAggregateType(aggregateType);
+        event.setAggregateId(String.valueOf(aggregateId));
+        event.setEventType(eventType);
+        try {
+            event.setPayload(objectMapper.writeValueAsString(payload));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize " + eventType + " payload", e);
+        }
+        event.setCreatedAt(new Date());
+        repository.save(event);
+    }
+}
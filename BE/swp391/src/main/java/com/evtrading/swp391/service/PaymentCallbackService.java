@@ -0,0 +1,149 @@
+package com.evtrading.swp391.service;
+
+import com.evtrading.swp391.entity.Payment;
+import com.evtrading.swp391.entity.PaymentCallbackEvent;
+import com.evtrading.swp391.payment.PaymentCallback;
+import com.evtrading.swp391.payment.PaymentProvider;
+import com.evtrading.swp391.repository.PaymentCallbackEventRepository;
+import com.evtrading.swp391.repository.PaymentRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Nhận callback của payment provider vào inbox (bảng payment_callback_inbox) và áp dụng theo lô.
+ *
+ * Nhận: xác thực chữ ký rồi ghi một dòng, trả về ngay — không khóa Payment/Transaction trên luồng HTTP.
+ * Xử lý: mỗi tick lấy các dòng NEW theo thứ tự id, áp dụng cả lô trong một transaction; nếu lô lỗi thì
+ * thử lại từng dòng để một callback hỏng không chặn cả lô. Việc áp dụng là idempotent
+ * (xem {@link OrderService#confirmPayment}), nên chạy lại sau crash không cộng tiền hai lần.
+ */
+@Service
+public class PaymentCallbackService {
+    private static final Logger log = LoggerFactory.getLogger(PaymentCallbackService.class);
+
+    private static final int MAX_ATTEMPTS = 5;
+
+    private final PaymentGateway gateway;
+    private final PaymentCallbackEventRepository inboxRepository;
+    private final PaymentRepository paymentRepository;
+    private final OrderService orderService;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${app.payment.callback.batchSize:100}")
+    private int batchSize;
+
+    public PaymentCallbackService(PaymentGateway gateway,
+                                  PaymentCallbackEventRepository inboxRepository,
+                                  PaymentRepository paymentRepository,
+                                  OrderService orderService,
+                                  TransactionTemplate transactionTemplate) {
+        this.gateway = gateway;
+        this.inboxRepository = inboxRepository;
+        this.paymentRepository = paymentRepository;
+        this.orderService = orderService;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    /**
+     * Xác thực và ghi callback vào inbox.
+     *
+     * @return false nếu callback này đã được nhận trước đó
+     * @throws IllegalArgumentException nếu provider không tồn tại hoặc chữ ký / body không hợp lệ
+     */
+    public boolean receive(String providerName, Map<String, String> headers, String body) {
+        PaymentProvider provider = gateway.find(providerName)
+                .orElseThrow(() -> new IllegalArgumentException("Unknown payment provider: " + providerName));
+        return enqueue(provider.name(), provider.parseCallback(headers, body));
+    }
+
+    /** Ghi một kết quả thanh toán vào inbox; dùng chung cho callback và đối soát. */
+    public boolean enqueue(String providerName, PaymentCallback callback) {
+        PaymentCallbackEvent event = new PaymentCallbackEvent();
+        event.setProvider(providerName);
+        event.setEventId(callback.eventId());
+        event.setReference(callback.reference());
+        event.setStatus(callback.status());
+        event.setAmount(callback.amount());
+        event.setReceivedAt(new Date());
+        try {
+            inboxRepository.saveAndFlush(event);
+            return true;
+        } catch (DataIntegrityViolationException e) {
+            log.debug("Duplicate payment callback {} from {}", callback.eventId(), providerName);
+            return false;
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.payment.callback.pollMs:500}")
+    public void processInbox() {
+        List<PaymentCallbackEvent> batch;
+        do {
+            batch = inboxRepository.findByStateOrderByIdAsc(PaymentCallbackEvent.NEW, PageRequest.of(0, batchSize));
+            if (batch.isEmpty()) {
+                return;
+            }
+            processBatch(batch);
+        } while (batch.size() == batchSize);
+    }
+
+    private void processBatch(List<PaymentCallbackEvent> batch) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                for (PaymentCallbackEvent event : batch) {
+                    apply(event);
+                }
+                inboxRepository.markDone(batch.stream().map(PaymentCallbackEvent::getId).toList(), new Date());
+            });
+        } catch (RuntimeException batchError) {
+            log.warn("Payment callback batch failed, retrying one by one: {}", batchError.getMessage());
+            for (PaymentCallbackEvent event : batch) {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> {
+                        apply(event);
+                        inboxRepository.markDone(List.of(event.getId()), new Date());
+                    });
+                } catch (RuntimeException e) {
+                    log.warn("Payment callback {} failed: {}", event.getId(), e.getMessage());
+                    String error = String.valueOf(e.getMessage());
+                    transactionTemplate.executeWithoutResult(status -> inboxRepository.recordFailure(
+                            event.getId(), error.length() > 500 ? error.substring(0, 500) : error, MAX_ATTEMPTS));
+                }
+            }
+        }
+    }
+
+    private void apply(PaymentCallbackEvent event) {
+        Payment payment = paymentRepository.findByProviderAndReference(event.getProvider(), event.getReference())
+                .orElse(null);
+        if (payment == null) {
+            log.warn("Payment callback {} references unknown payment {}", event.getEventId(), event.getReference());
+            return;
+        }
+        switch (event.getStatus()) {
+            case PaymentCallback.SUCCEEDED -> {
+                if (event.getAmount() != null && event.getAmount().compareTo(payment.getAmount().toBigDecimal()) != 0) {
+                    log.warn("Payment {} confirmed with amount {} but {} was requested",
+                            payment.getPaymentID(), event.getAmount(), payment.getAmount());
+                    orderService.rejectPayment(payment.getPaymentID());
+                    return;
+                }
+                orderService.confirmPayment(payment.getPaymentID(),
+                        payment.getTransaction().getTransactionID(),
+                        payment.getTransaction().getOrder().getOrderID(),
+                        payment.getAmount(), new Date());
+            }
+            case PaymentCallback.FAILED -> orderService.failPayment(payment.getPaymentID());
+            default -> log.debug("Ignoring payment callback {} with status {}", event.getEventId(), event.getStatus());
+        }
+    }
+}
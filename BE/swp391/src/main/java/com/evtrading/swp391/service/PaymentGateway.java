@@ -0,0 +1,104 @@
+package com.evtrading.swp391.service;
+
+import com.evtrading.swp391.payment.OfflinePaymentProvider;
+import com.evtrading.swp391.payment.PaymentInitiation;
+import com.evtrading.swp391.payment.PaymentProvider;
+import com.evtrading.swp391.payment.SimulatedPaymentProvider;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Chọn {@link PaymentProvider} theo tên và gửi yêu cầu thu tiền sau khi transaction tạo Payment đã commit,
+ * trên pool riêng để request API không phải chờ provider.
+ */
+@Service
+public class PaymentGateway {
+    private static final Logger log = LoggerFactory.getLogger(PaymentGateway.class);
+
+    private final Map<String, PaymentProvider> providers = new HashMap<>();
+    private final ExecutorService initiator;
+
+    // Để trống: SIMULATOR nếu bộ giả lập chạy (local/dev), ngược lại OFFLINE
+    @Value("${app.payment.defaultProvider:}")
+    private String defaultProvider;
+
+    public PaymentGateway(List<PaymentProvider> providers,
+                          @Value("${app.payment.initiatorThreads:4}") int initiatorThreads) {
+        for (PaymentProvider provider : providers) {
+            this.providers.put(provider.name().toUpperCase(Locale.ROOT), provider);
+        }
+        AtomicInteger seq = new AtomicInteger();
+        this.initiator = Executors.newFixedThreadPool(Math.max(1, initiatorThreads), r -> {
+            Thread t = new Thread(r, "payment-initiator-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Dừng khởi động nếu provider mặc định không tồn tại, thay vì mọi lần tạo payment đều lỗi. */
+    @PostConstruct
+    void checkDefaultProvider() {
+        if (defaultProvider == null || defaultProvider.isBlank()) {
+            defaultProvider = providers.containsKey(SimulatedPaymentProvider.NAME)
+                    ? SimulatedPaymentProvider.NAME : OfflinePaymentProvider.NAME;
+        }
+        if (find(defaultProvider).isEmpty()) {
+            throw new IllegalStateException("No payment provider '" + defaultProvider + "' is configured (available: "
+                    + providers.keySet() + "). Set app.payment.defaultProvider or enable a provider"
+                    + " (app.payment.offline.enabled, or the simulator under the local/dev profile).");
+        }
+        log.info("Default payment provider: {}", defaultProvider.toUpperCase(Locale.ROOT));
+    }
+
+    public Optional<PaymentProvider> find(String name) {
+        return name == null ? Optional.empty() : Optional.ofNullable(providers.get(name.toUpperCase(Locale.ROOT)));
+    }
+
+    /** Provider theo tên client gửi lên; để trống thì dùng {@code app.payment.defaultProvider}. */
+    public PaymentProvider resolve(String requested) {
+        String name = requested == null || requested.isBlank() ? defaultProvider : requested;
+        return find(name).orElseThrow(() -> new RuntimeException("Unsupported payment provider: " + name));
+    }
+
+    /** Gọi provider sau khi transaction hiện tại commit (hoặc ngay nếu không có transaction). */
+    public void initiateAfterCommit(PaymentProvider provider, PaymentInitiation initiation) {
+        Runnable task = () -> initiator.execute(() -> {
+            try {
+                provider.initiate(initiation);
+            } catch (RuntimeException e) {
+                // Payment vẫn PENDING, PaymentReconciler sẽ xử lý
+                log.warn("Initiating payment {} with {} failed: {}", initiation.reference(), provider.name(), e.getMessage());
+            }
+        });
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    task.run();
+                }
+            });
+        } else {
+            task.run();
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        initiator.shutdown();
+    }
+}
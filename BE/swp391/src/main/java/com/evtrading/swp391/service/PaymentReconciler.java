@@ -0,0 +1,77 @@
+package com.evtrading.swp391.service;
+
+import com.evtrading.swp391.entity.Payment;
+import com.evtrading.swp391.payment.PaymentCallback;
+import com.evtrading.swp391.payment.PaymentProvider;
+import com.evtrading.swp391.repository.PaymentRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Đối soát các Payment PENDING không nhận được callback: hỏi lại provider và đưa kết quả vào
+ * cùng inbox với callback. Payment treo quá {@code app.payment.reconcile.abandonAfterMs} được đánh FAILED.
+ */
+@Component
+class PaymentReconciler {
+    private static final Logger log = LoggerFactory.getLogger(PaymentReconciler.class);
+
+    private static final int BATCH_SIZE = 100;
+
+    private final PaymentRepository paymentRepository;
+    private final PaymentGateway gateway;
+    private final PaymentCallbackService callbackService;
+
+    @Value("${app.payment.reconcile.staleAfterMs:600000}")
+    private long staleAfterMs;
+
+    @Value("${app.payment.reconcile.abandonAfterMs:86400000}")
+    private long abandonAfterMs;
+
+    PaymentReconciler(PaymentRepository paymentRepository, PaymentGateway gateway,
+                      PaymentCallbackService callbackService) {
+        this.paymentRepository = paymentRepository;
+        this.gateway = gateway;
+        this.callbackService = callbackService;
+    }
+
+    @Scheduled(initialDelayString = "${app.payment.reconcile.intervalMs:60000}",
+               fixedDelayString = "${app.payment.reconcile.intervalMs:60000}")
+    public void reconcile() {
+        long now = System.currentTimeMillis();
+        List<Payment> stale = paymentRepository.findStalePending(new Date(now - staleAfterMs),
+                PageRequest.of(0, BATCH_SIZE));
+        int resolved = 0;
+        for (Payment payment : stale) {
+            Optional<PaymentProvider> provider = gateway.find(payment.getProvider());
+            if (provider.isEmpty()) {
+                continue;
+            }
+            PaymentCallback result;
+            try {
+                result = provider.get().query(payment.getReference());
+            } catch (RuntimeException e) {
+                log.warn("Reconciling payment {} with {} failed: {}", payment.getPaymentID(),
+                        payment.getProvider(), e.getMessage());
+                continue;
+            }
+            if (result != null && !PaymentCallback.PENDING.equals(result.status())) {
+                resolved += callbackService.enqueue(provider.get().name(), result) ? 1 : 0;
+            } else if (payment.getPaidAt().getTime() < now - abandonAfterMs) {
+                PaymentCallback abandoned = new PaymentCallback("reconcile-timeout-" + payment.getReference(),
+                        payment.getReference(), PaymentCallback.FAILED, payment.getAmount().toBigDecimal());
+                resolved += callbackService.enqueue(provider.get().name(), abandoned) ? 1 : 0;
+            }
+        }
+        if (resolved > 0) {
+            log.info("Reconciled {} stale payments", resolved);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.evtrading.swp391.service;
+
+import com.evtrading.swp391.repository.TransactionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.PriorityBlockingQueue;
+
+/**
+ * Hết hạn giữ chỗ cho các giao dịch chưa thanh toán.
+ *
+ * Các giao dịch PENDING / PARTIALLY_PAID được giữ trong một hàng đợi ưu tiên theo {@code dueTime}: nạp một lần từ DB
+ * khi ứng dụng khởi động, sau đó mỗi đơn mới được {@link #register} sau khi commit. Mỗi tick chỉ
+ * nhìn đầu hàng đợi, nên không phải quét toàn bảng transactions định kỳ.
+ *
+ * Các giao dịch đến hạn được xử lý theo lô nhỏ qua {@link StatusTransitionService#expireReservations},
+ * mỗi lô một transaction: Transaction -> EXPIRED, Order -> CANCELLED, Listing -> ACTIVE. Mọi UPDATE đều
+ * có điều kiện trạng thái nên giao dịch đã được thanh toán đủ trong lúc chờ sẽ không bị đụng tới. Giao dịch
+ * mới trả một phần cũng hết hạn (không giữ listing mãi); số đã trả được báo qua sự kiện TRANSACTION_REFUND_DUE.
+ */
+@Component
+public class ReservationExpiryScheduler {
+    private static final Logger log = LoggerFactory.getLogger(ReservationExpiryScheduler.class);
+
+    private record Hold(int transactionId, long dueAtMillis) implements Comparable<Hold> {
+        @Override
+        public int compareTo(Hold other) {
+            return Long.compare(dueAtMillis, other.dueAtMillis);
+        }
+    }
+
+    private static final long RETRY_DELAY_MS = 30_000;
+
+    private final PriorityBlockingQueue<Hold> holds = new PriorityBlockingQueue<>();
+
+    private final TransactionRepository transactionRepository;
+    private final StatusTransitionService statusTransitionService;
+
+    @Value("${app.reservation.expiry.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.reservation.expiry.batchSize:50}")
+    private int batchSize;
+
+    public ReservationExpiryScheduler(TransactionRepository transactionRepository,
+                                      StatusTransitionService statusTransitionService) {
+        this.transactionRepository = transactionRepository;
+        this.statusTransitionService = statusTransitionService;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadPendingHolds() {
+        if (!enabled) {
+            log.info("Reservation expiry is disabled");
+            return;
+        }
+        List<Object[]> rows = transactionRepository.findOpenDueTimes();
+        for (Object[] row : rows) {
+            register((Integer) row[0], (Date) row[1]);
+        }
+        log.info("Loaded {} pending reservation holds", rows.size());
+    }
+
+    /** Theo dõi một giao dịch vừa tạo; gọi sau khi transaction tạo đơn đã commit. */
+    public void register(Integer transactionId, Date dueTime) {
+        if (transactionId == null || dueTime == null) {
+            return;
+        }
+        holds.add(new Hold(transactionId, dueTime.getTime()));
+    }
+
+    @Scheduled(initialDelayString = "${app.reservation.expiry.tickMs:1000}",
+               fixedDelayString = "${app.reservation.expiry.tickMs:1000}")
+    public void expireDueHolds() {
+        if (!enabled) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        List<Integer> batch = new ArrayList<>(batchSize);
+        while (true) {
+            Hold head = holds.peek();
+            if (head == null || head.dueAtMillis() > now) {
+                break;
+            }
+            // peek/poll không nguyên tử, nhưng chỉ có một luồng scheduler lấy phần tử ra
+            holds.poll();
+            batch.add(head.transactionId());
+            if (batch.size() >= batchSize) {
+                expireBatch(batch, now);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        if (!batch.isEmpty()) {
+            expireBatch(batch, now);
+        }
+    }
+
+    private void expireBatch(List<Integer> transactionIds, long now) {
+        try {
+            StatusTransitionService.Result result =
+                    statusTransitionService.expireReservations(transactionIds, new Date(now));
+            if (result.transactions() > 0) {
+                log.info("Expired {} transactions, cancelled {} orders, released {} listings",
+                        result.transactions(), result.orders(), result.listings());
+            }
+            if (result.refundsDue() > 0) {
+                log.warn("{} expired transactions were partially paid and need a refund", result.refundsDue());
+            }
+        } catch (RuntimeException e) {
+            // Đưa lại vào hàng đợi, thử lại sau RETRY_DELAY_MS
+            log.warn("Failed to expire reservation batch {}: {}", transactionIds, e.getMessage());
+            for (Integer id : transactionIds) {
+                holds.add(new Hold(id, now + RETRY_DELAY_MS));
+            }
+        }
+    }
+}
@@ -8,6 +8,7 @@ import com.evtrading.swp391.repository.ListingRepository;
 import com.evtrading.swp391.repository.OrderRepository;
 import com.evtrading.swp391.repository.ReviewRepository;
 import com.evtrading.swp391.repository.UserRepository;
+import com.evtrading.swp391.state.OrderStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -40,8 +41,8 @@ public class ReviewService {
         Optional<Listing> l = listingRepository.findById(listingId);
         if (u.isEmpty() || l.isEmpty()) return Optional.empty();
 
-    // Kiểm tra user có mua listing này không: tìm Order với buyer, listing và status = Completed
-    List<Order> orders = orderRepository.findByBuyerAndListingAndStatus(u.get(), l.get(), "Completed");
+    // Kiểm tra user có mua listing này không: tìm Order với buyer, listing và status = COMPLETED
+    List<Order> orders = orderRepository.findByBuyerAndListingAndStatus(u.get(), l.get(), OrderStatus.COMPLETED.name());
     boolean bought = orders != null && !orders.isEmpty();
     if (!bought) return Optional.empty();
 
@@ -0,0 +1,90 @@
+package com.evtrading.swp391.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Link file đã ký đến từ webhook DocuSeal (endpoint public), nên không được tin: chỉ chấp nhận host của
+ * DocuSeal ({@code docuseal.documents.allowedHosts}, mặc định host của {@code docuseal.api.url} và domain
+ * cha nếu host là {@code api.*}), và khi tải thì host không được trỏ vào địa chỉ nội bộ.
+ */
+@Component
+class SignedDocumentUrlPolicy {
+
+    private final Set<String> allowedHosts = new LinkedHashSet<>();
+    private final boolean requireHttps;
+
+    SignedDocumentUrlPolicy(@Value("${docuseal.api.url:https://api.docuseal.com}") String apiUrl,
+                            @Value("${docuseal.documents.allowedHosts:}") String configuredHosts) {
+        URI api = URI.create(apiUrl);
+        this.requireHttps = "https".equalsIgnoreCase(api.getScheme());
+        if (configuredHosts.isBlank()) {
+            String host = api.getHost().toLowerCase(Locale.ROOT);
+            allowedHosts.add(host);
+            if (host.startsWith("api.")) {
+                allowedHosts.add(host.substring(4));
+            }
+        } else {
+            Arrays.stream(configuredHosts.split(","))
+                    .map(h -> h.trim().toLowerCase(Locale.ROOT))
+                    .filter(h -> !h.isEmpty())
+                    .forEach(allowedHosts::add);
+        }
+    }
+
+    /** Link có được lưu / chuyển hướng tới không: đúng scheme và host (hoặc subdomain) của DocuSeal. */
+    boolean isAllowed(String url) {
+        URI uri;
+        try {
+            uri = URI.create(url);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        if (!hasAcceptedScheme(uri)) {
+            return false;
+        }
+        String host = uri.getHost().toLowerCase(Locale.ROOT);
+        return allowedHosts.stream().anyMatch(a -> host.equals(a) || host.endsWith("." + a));
+    }
+
+    /**
+     * Đích tải thật sự, kể cả sau redirect (file có thể nằm ở storage của DocuSeal): host DocuSeal đã cấu
+     * hình, hoặc host khác nhưng không trỏ vào loopback / mạng nội bộ / link-local.
+     */
+    boolean isSafeToFetch(URI uri) {
+        if (!hasAcceptedScheme(uri)) {
+            return false;
+        }
+        if (isAllowed(uri.toString())) {
+            return true;
+        }
+        try {
+            for (InetAddress address : InetAddress.getAllByName(uri.getHost())) {
+                if (address.isLoopbackAddress() || address.isSiteLocalAddress() || address.isLinkLocalAddress()
+                        || address.isAnyLocalAddress() || address.isMulticastAddress()) {
+                    return false;
+                }
+            }
+        } catch (UnknownHostException e) {
+            return false;
+        }
+        return true;
+    }
+
+    // https; http chỉ khi chính DocuSeal được cấu hình qua http (bản self-host / stub)
+    private boolean hasAcceptedScheme(URI uri) {
+        String scheme = uri.getScheme();
+        if (scheme == null || !(scheme.equalsIgnoreCase("https") || (!requireHttps && scheme.equalsIgnoreCase("http")))) {
+            return false;
+        }
+        return uri.getHost() != null && uri.getUserInfo() == null;
+    }
+}
@@ -3,15 +3,19 @@ package com.evtrading.swp391.service;
 import com.evtrading.swp391.dto.AuthResponseDTO;
 import com.evtrading.swp391.dto.SocialLoginRequestDTO;
 import com.evtrading.swp391.entity.Role;
+import com.evtrading.swp391.entity.SocialAccount;
 import com.evtrading.swp391.entity.User;
 import com.evtrading.swp391.repository.RoleRepository;
+import com.evtrading.swp391.repository.SocialAccountRepository;
 import com.evtrading.swp391.repository.UserRepository;
-import com.evtrading.swp391.security.FacebookAuthVerifier;
-import com.evtrading.swp391.security.GoogleAuthVerifier;
 import com.evtrading.swp391.security.JwtProvider;
-import com.google.api.client.googleapis.auth.oauth2.GoogleIdToken;
+import com.evtrading.swp391.security.SocialProfile;
+import com.evtrading.swp391.security.SocialProviderUnavailableException;
+import com.evtrading.swp391.security.SocialTokenVerifier;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
@@ -27,11 +31,25 @@ public class SocialAuthService {
 
     private final UserRepository userRepo;
     private final RoleRepository roleRepo;
-    private final GoogleAuthVerifier googleVerifier;
-    private final FacebookAuthVerifier fbVerifier;
+    private final List<SocialTokenVerifier> verifiers;
     private final JwtProvider jwtProvider;
+    private final SocialUserProvisioner userProvisioner;
+    private final SocialAccountRepository socialAccountRepo;
 
-    private String generateUniqueUsername(String base) {
+    private static final int MAX_USERNAME_ATTEMPTS = 5;
+
+    private Map<String, SocialTokenVerifier> verifiersByProvider = Map.of();
+
+    @PostConstruct
+    void indexVerifiers() {
+        Map<String, SocialTokenVerifier> byProvider = new HashMap<>();
+        for (SocialTokenVerifier v : verifiers) {
+            byProvider.put(v.provider().toUpperCase(Locale.ROOT), v);
+        }
+        this.verifiersByProvider = Map.copyOf(byProvider);
+    }
+
+    private String normalizeUsernameBase(String base) {
         if (base == null || base.isBlank()) {
             base = "user_" + UUID.randomUUID().toString().substring(0, 6);
         }
@@ -47,15 +65,117 @@ public class SocialAuthService {
             candidate = "user_" + UUID.randomUUID().toString().substring(0, 6);
         }
 
-        // Đảm bảo không trùng
-        String unique = candidate;
-        int i = 1;
-        while (userRepo.findByUsername(unique).isPresent()) {
-            unique = candidate + "_" + i++;
-        }
-        
         // Convert về UTF-8 để đảm bảo encoding
-        return new String(unique.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+        return new String(candidate.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Tìm username trống bằng một query duy nhất: lấy tất cả username dạng {@code base} hoặc
+     * {@code base_<n>} rồi chọn hậu tố lớn nhất + 1, thay vì thử từng ứng viên.
+     */
+    private String nextFreeUsername(String base) {
+        String likePrefix = escapeLike(base) + "!_%";
+        List<String> taken = userRepo.findUsernamesByBase(base, likePrefix);
+
+        boolean baseTaken = false;
+        long maxSuffix = 0;
+        String suffixPrefix = base + "_";
+        for (String existing : taken) {
+            String lower = existing.toLowerCase(Locale.ROOT);
+            if (lower.equals(base)) {
+                baseTaken = true;
+            } else if (lower.startsWith(suffixPrefix)) {
+                String suffix = lower.substring(suffixPrefix.length());
+                if (!suffix.isEmpty() && suffix.length() < 18 && suffix.chars().allMatch(Character::isDigit)) {
+                    maxSuffix = Math.max(maxSuffix, Long.parseLong(suffix));
+                }
+            }
+        }
+        return baseTaken ? base + "_" + (maxSuffix + 1) : base;
+    }
+
+    private static String escapeLike(String value) {
+        // '!' là ký tự escape trong query; SQL Server còn coi [ ] là wildcard
+        return value.replace("!", "!!")
+                .replace("%", "!%")
+                .replace("_", "!_")
+                .replace("[", "![");
+    }
+
+    /**
+     * Tạo user mới cho social login cùng liên kết SocialAccount trong một transaction riêng.
+     * Nếu request song song đã liên kết cùng tài khoản provider, chiếm email hoặc username,
+     * unique constraint báo lỗi: ta dùng lại bản ghi đã có, hoặc thử lại với username mới.
+     */
+    private User createSocialUser(Role role, String email, String displayName, SocialProfile profile) {
+        String base = normalizeUsernameBase(displayName);
+        DataIntegrityViolationException lastError = null;
+        for (int attempt = 0; attempt < MAX_USERNAME_ATTEMPTS; attempt++) {
+            User user = new User();
+            user.setRole(role);
+            user.setEmail(email);
+            user.setUsername(nextFreeUsername(base));
+            user.setPassword("");
+            user.setStatus("Active");
+            user.setCreatedAt(new Date());
+            try {
+                User created = userProvisioner.insertWithLink(user, newLink(profile));
+                log.info("Created new social user: id={}, email={}, provider={}",
+                        created.getUserID(), created.getEmail(), profile.provider());
+                return created;
+            } catch (DataIntegrityViolationException e) {
+                lastError = e;
+                // Request khác vừa liên kết cùng tài khoản provider
+                Optional<SocialAccount> linked = socialAccountRepo
+                        .findLinkedAccount(profile.provider(), profile.externalId());
+                if (linked.isPresent()) {
+                    return linked.get().getUser();
+                }
+                // Request khác vừa tạo user với cùng email
+                Optional<User> existing = userRepo.findByEmail(email);
+                if (existing.isPresent()) {
+                    return linkExistingUser(existing.get(), profile);
+                }
+                log.debug("Username {} was taken concurrently, retrying", user.getUsername());
+            }
+        }
+        throw new IllegalStateException("Could not allocate a unique username for " + base, lastError);
+    }
+
+    /**
+     * Liên kết tài khoản provider với user đã có (đăng ký trước đó bằng cùng email).
+     */
+    private User linkExistingUser(User user, SocialProfile profile) {
+        try {
+            userProvisioner.link(user, newLink(profile));
+            return user;
+        } catch (DataIntegrityViolationException e) {
+            // Liên kết đã được tạo bởi request song song
+            return socialAccountRepo.findLinkedAccount(profile.provider(), profile.externalId())
+                    .map(SocialAccount::getUser)
+                    .orElseThrow(() -> e);
+        }
+    }
+
+    private SocialAccount newLink(SocialProfile profile) {
+        SocialAccount account = new SocialAccount();
+        account.setProvider(profile.provider());
+        account.setProviderUserId(profile.externalId());
+        account.setEmail(profile.email());
+        account.setAvatarUrl(profile.avatarUrl());
+        account.setCreatedAt(new Date());
+        return account;
+    }
+
+    /**
+     * Tìm user đã liên kết với tài khoản provider: một query seek trên unique index
+     * (provider, provider_user_id), join sẵn user + role. Không cache: bản cache userId vẫn phải nạp User
+     * nên không bớt được query nào.
+     */
+    private User findLinkedUser(String provider, String externalId) {
+        return socialAccountRepo.findLinkedAccount(provider, externalId)
+                .map(SocialAccount::getUser)
+                .orElse(null);
     }
 
     @Transactional
@@ -68,55 +188,31 @@ public class SocialAuthService {
 
             log.debug("Validating {} token", provider);
             
-            String externalId; // sub/id từ provider
-            String email = null;
-            String name = null;
-            String avatar = null;
-
-            switch (provider) {
-                case "GOOGLE" -> {
-                    GoogleIdToken.Payload p = googleVerifier.verify(token);
-                    if (p == null) {
-                        throw new IllegalArgumentException("Google token is invalid or audience mismatch");
-                    }
-                    externalId = (String) p.get("sub");
-                    email = (String) p.get("email");
-                    name = (String) p.get("name");
-                    avatar = (String) p.get("picture");
-                    log.debug("[GOOGLE] sub={}, email={}, name={}", externalId, email, name);
-                }
-                case "FACEBOOK" -> {
-                    Map<String, Object> me = fbVerifier.verify(token);
-                    if (me == null) {
-                        throw new IllegalArgumentException("Facebook token is invalid");
-                    }
-                    externalId = String.valueOf(me.get("id"));
-                    Object e = me.get("email");
-                    if (e != null)
-                        email = e.toString();
-                    Object n = me.get("name");
-                    if (n != null)
-                        name = n.toString();
-
-                    // picture: { data: { url: ... } }
-                    Object picture = me.get("picture");
-                    if (picture instanceof Map<?, ?> pic) {
-                        Object data = ((Map<?, ?>) picture).get("data");
-                        if (data instanceof Map<?, ?> d) {
-                            Object url = d.get("url");
-                            if (url != null)
-                                avatar = url.toString();
-                        }
-                    }
-
-                    log.debug("[FACEBOOK] id={}, email={}, name={}", externalId, email, name);
-                }
-                default -> throw new IllegalArgumentException("Unsupported provider: " + provider);
+            SocialTokenVerifier verifier = verifiersByProvider.get(provider);
+            if (verifier == null) {
+                throw new IllegalArgumentException("Unsupported provider: " + provider);
+            }
+            SocialProfile profile = verifier.verify(token);
+            if (profile == null) {
+                throw new IllegalArgumentException(provider + " token is invalid");
             }
+            String externalId = profile.externalId(); // sub/id từ provider
+            String email = profile.email();
+            String name = profile.name();
+            log.debug("[{}] id={}, email={}, name={}", provider, externalId, email, name);
 
-            log.debug("Finding user by email: {}", email);
-            User user = (email != null) ? userRepo.findByEmail(email).orElse(null) : null;
+            // 1. Tài khoản provider đã liên kết: một lần seek trên (provider, provider_user_id)
+            User user = findLinkedUser(provider, externalId);
+
+            // 2. User đã đăng ký bằng cùng email: liên kết tài khoản provider vào user đó
+            if (user == null && email != null) {
+                log.debug("No linked account, finding user by email: {}", email);
+                user = userRepo.findByEmail(email)
+                        .map(existing -> linkExistingUser(existing, profile))
+                        .orElse(null);
+            }
 
+            // 3. Lần đầu đăng nhập: tạo user mới kèm liên kết
             if (user == null) {
                 log.debug("User not found, creating new user with email: {}", email);
                 Role defaultRole = roleRepo.findByRoleName("MEMBER");
@@ -128,19 +224,10 @@ public class SocialAuthService {
                 }
                 log.debug("Found default role: {}", defaultRole.getRoleName());
 
-                user = new User();
-                user.setRole(defaultRole);
-                user.setEmail(email != null ? email : 
-                    (provider.toLowerCase(Locale.ROOT) + "_" + UUID.randomUUID() + "@example.com"));
-                user.setUsername(generateUniqueUsername(name != null ? name : 
-                    provider.toLowerCase(Locale.ROOT) + "_user"));
-                user.setPassword("");
-                user.setStatus("Active"); 
-                user.setCreatedAt(new Date());
-
-                user = userRepo.save(user);
-                log.info("Created new social user: id={}, email={}, provider={}", 
-                    user.getUserID(), user.getEmail(), provider);
+                String newEmail = email != null ? email
+                        : provider.toLowerCase(Locale.ROOT) + "_" + UUID.randomUUID() + "@example.com";
+                user = createSocialUser(defaultRole, newEmail,
+                        name != null ? name : provider.toLowerCase(Locale.ROOT) + "_user", profile);
             }
 
             // Khi tạo JWT token, đảm bảo username được encode đúng
@@ -159,6 +246,9 @@ public class SocialAuthService {
                 user.getRole().getRoleName()
             );
 
+        } catch (SocialProviderUnavailableException ex) {
+            log.warn("Social provider unavailable: {}", ex.getMessage());
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, ex.getMessage(), ex);
         } catch (Exception ex) {
             log.error("Social login failed: {}", ex.getMessage(), ex);
             throw new ResponseStatusException(
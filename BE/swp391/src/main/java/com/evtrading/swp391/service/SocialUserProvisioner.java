@@ -0,0 +1,44 @@
+package com.evtrading.swp391.service;
+
+import com.evtrading.swp391.entity.SocialAccount;
+import com.evtrading.swp391.entity.User;
+import com.evtrading.swp391.repository.SocialAccountRepository;
+import com.evtrading.swp391.repository.UserRepository;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Ghi user mới (và liên kết SocialAccount) của social login trong transaction riêng (REQUIRES_NEW), để lỗi unique constraint
+ * khi hai request đăng ký cùng lúc không làm hỏng transaction của SocialAuthService.login
+ * và login có thể thử lại ngay.
+ */
+@Component
+class SocialUserProvisioner {
+
+    private final UserRepository userRepo;
+    private final SocialAccountRepository socialAccountRepo;
+
+    SocialUserProvisioner(UserRepository userRepo, SocialAccountRepository socialAccountRepo) {
+        this.userRepo = userRepo;
+        this.socialAccountRepo = socialAccountRepo;
+    }
+
+    /**
+     * Tạo user và liên kết SocialAccount cùng lúc: nếu liên kết bị trùng (request song song),
+     * cả user cũng bị rollback nên không sinh user thừa.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public User insertWithLink(User user, SocialAccount link) {
+        User saved = userRepo.saveAndFlush(user);
+        link.setUser(saved);
+        socialAccountRepo.saveAndFlush(link);
+        return saved;
+    }
+
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void link(User user, SocialAccount link) {
+        link.setUser(user);
+        socialAccountRepo.saveAndFlush(link);
+    }
+}
@@ -0,0 +1,140 @@
+package com.evtrading.swp391.service;
+
+import com.evtrading.swp391.event.DomainEvent;
+import com.evtrading.swp391.repository.ListingRepository;
+import com.evtrading.swp391.repository.OrderRepository;
+import com.evtrading.swp391.repository.TransactionRepository;
+import com.evtrading.swp391.state.ListingStatus;
+import com.evtrading.swp391.state.OrderStatus;
+import com.evtrading.swp391.state.TransactionStatus;
+import com.evtrading.swp391.state.Transitions;
+import com.evtrading.swp391.util.Money;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Chuyển trạng thái hàng loạt (hủy đơn, hết hạn giữ chỗ).
+ *
+ * Mỗi loại bản ghi được cập nhật bằng một câu UPDATE ... WHERE id IN (...) AND status IN (nguồn hợp lệ)
+ * cho mỗi lô {@value #CHUNK} id, với tập trạng thái nguồn lấy từ {@link Transitions}. Giao dịch được
+ * cho hết hạn trước; đơn và listing chỉ được đổi (và chỉ có sự kiện outbox) khi giao dịch của đơn thực sự
+ * đã EXPIRED, nên giao dịch vừa nhận tiền trong lúc chờ (hủy thủ công) hoặc vừa trả đủ (hết hạn) giữ nguyên
+ * cả đơn lẫn listing. Hết hạn áp dụng cả cho giao dịch đã trả một phần; số đã trả được ghi sự kiện
+ * {@code TRANSACTION_REFUND_DUE} trong cùng transaction để xử lý hoàn tiền.
+ */
+@Service
+public class StatusTransitionService {
+
+    // SQL Server giới hạn ~2100 tham số mỗi câu lệnh
+    private static final int CHUNK = 1000;
+
+    /** {@code refundsDue}: giao dịch hết hạn khi đã nhận một phần tiền, cần hoàn cho người mua. */
+    public record Result(int requested, int orders, int transactions, int listings, int refundsDue) {
+        Result plus(Result other) {
+            return new Result(requested + other.requested, orders + other.orders,
+                    transactions + other.transactions, listings + other.listings, refundsDue + other.refundsDue);
+        }
+    }
+
+    private static final Set<String> ORDER_CANCEL_FROM = names(Transitions.ORDER.sourcesOf(OrderStatus.CANCELLED));
+    // Hết hạn giữ chỗ: cả giao dịch đã trả một phần (số đã trả được báo cần hoàn)
+    private static final Set<String> TRANSACTION_EXPIRE_FROM =
+            names(Transitions.TRANSACTION.sourcesOf(TransactionStatus.EXPIRED));
+    // Hủy đơn thủ công: chỉ giao dịch chưa nhận tiền
+    private static final Set<String> TRANSACTION_CANCEL_FROM = names(List.of(TransactionStatus.PENDING));
+    // Chỉ listing đang bị giữ chỗ (SOLD) mới được trả lại, không phải listing PENDING chờ duyệt
+    private static final Set<String> LISTING_RELEASE_FROM = names(List.of(ListingStatus.SOLD));
+
+    private final OrderRepository orderRepository;
+    private final TransactionRepository transactionRepository;
+    private final ListingRepository listingRepository;
+    private final OutboxService outboxService;
+
+    public StatusTransitionService(OrderRepository orderRepository,
+                                   TransactionRepository transactionRepository,
+                                   ListingRepository listingRepository,
+                                   OutboxService outboxService) {
+        this.orderRepository = orderRepository;
+        this.transactionRepository = transactionRepository;
+        this.listingRepository = listingRepository;
+        this.outboxService = outboxService;
+    }
+
+    /**
+     * Hủy các đơn còn PENDING mà giao dịch chưa nhận tiền: giao dịch -> EXPIRED, đơn -> CANCELLED,
+     * listing đang giữ chỗ -> ACTIVE. Id không tồn tại hoặc không hủy được thì bỏ qua.
+     */
+    @Transactional
+    public Result cancelOrders(Collection<Integer> orderIds) {
+        List<Integer> ids = new ArrayList<>(new LinkedHashSet<>(orderIds));
+        return cancelInChunks(ids, TRANSACTION_CANCEL_FROM);
+    }
+
+    private Result cancelInChunks(List<Integer> ids, Set<String> transactionFrom) {
+        Result total = new Result(0, 0, 0, 0, 0);
+        for (int from = 0; from < ids.size(); from += CHUNK) {
+            total = total.plus(cancelChunk(ids.subList(from, Math.min(ids.size(), from + CHUNK)), transactionFrom));
+        }
+        return total;
+    }
+
+    /** Hết hạn các giao dịch giữ chỗ đã quá dueTime; dùng bởi ReservationExpiryScheduler. */
+    @Transactional
+    public Result expireReservations(Collection<Integer> transactionIds, Date now) {
+        List<Integer> ids = new ArrayList<>(transactionIds);
+        Set<Integer> orderIds = new LinkedHashSet<>();
+        for (int from = 0; from < ids.size(); from += CHUNK) {
+            orderIds.addAll(transactionRepository.findDueOrderIds(ids.subList(from, Math.min(ids.size(), from + CHUNK)), now));
+        }
+        Result result = cancelInChunks(new ArrayList<>(orderIds), TRANSACTION_EXPIRE_FROM);
+        return new Result(ids.size(), result.orders(), result.transactions(), result.listings(), result.refundsDue());
+    }
+
+    private Result cancelChunk(List<Integer> requested, Set<String> transactionFrom) {
+        // Giao dịch trước: UPDATE có điều kiện trạng thái, nên giao dịch vừa được applyPayment cộng tiền
+        // ra khỏi transactionFrom (vd. -> FULLY_PAID) không bị đổi và đơn của nó không bị hủy ở bước sau
+        int transactions = transactionRepository.transitionByOrderIds(requested, ORDER_CANCEL_FROM,
+                transactionFrom, TransactionStatus.EXPIRED.name());
+
+        // Chỉ các đơn có giao dịch nay đã EXPIRED (hoặc không có giao dịch); các dòng bị khóa tới khi commit
+        List<Object[]> rows = orderRepository.lockCancellable(requested, ORDER_CANCEL_FROM,
+                TransactionStatus.EXPIRED.name());
+        if (rows.isEmpty()) {
+            return new Result(requested.size(), 0, transactions, 0, 0);
+        }
+        List<Integer> orderIds = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            orderIds.add((Integer) row[0]);
+        }
+
+        int orders = orderRepository.transitionStatus(orderIds, ORDER_CANCEL_FROM, OrderStatus.CANCELLED.name());
+        int listings = listingRepository.transitionByOrderIds(orderIds, LISTING_RELEASE_FROM, ListingStatus.ACTIVE.name());
+
+        for (Object[] row : rows) {
+            outboxService.record(DomainEvent.ORDER, row[0], DomainEvent.ORDER_CANCELLED,
+                    Map.of("orderId", row[0], "listingId", row[1]));
+            outboxService.record(DomainEvent.LISTING, row[1], DomainEvent.LISTING_RELEASED,
+                    Map.of("listingId", row[1], "orderId", row[0]));
+        }
+        // EXPIRED không nhận thêm tiền, nên paidAmount đọc ở đây là số cuối cùng cần hoàn
+        List<Object[]> refunds = transactionRepository.findRefundDue(orderIds, Money.zero());
+        for (Object[] row : refunds) {
+            outboxService.record(DomainEvent.TRANSACTION, row[0], DomainEvent.TRANSACTION_REFUND_DUE,
+                    Map.of("transactionId", row[0], "orderId", row[1], "amount", ((Money) row[2]).toBigDecimal()));
+        }
+        return new Result(requested.size(), orders, transactions, listings, refunds.size());
+    }
+
+    private static <S extends Enum<S>> Set<String> names(Collection<S> states) {
+        return states.stream().map(Enum::name).collect(Collectors.toUnmodifiableSet());
+    }
+}
@@ -2,8 +2,10 @@ package com.evtrading.swp391.specification;
 
 import com.evtrading.swp391.dto.ListingSearchCriteria;
 import com.evtrading.swp391.entity.Listing;
+import com.evtrading.swp391.util.Money;
 import org.springframework.data.jpa.domain.Specification;
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 
 public class ListingSpecifications {
 
@@ -63,14 +65,14 @@ public class ListingSpecifications {
     private static Specification<Listing> priceGte(BigDecimal minPrice) {
         return (root, q, cb) -> {
             if (minPrice == null) return cb.conjunction();
-            return cb.greaterThanOrEqualTo(root.get("price"), minPrice);
+            return cb.greaterThanOrEqualTo(root.<Money>get("price"), Money.of(minPrice, RoundingMode.CEILING));
         };
     }
 
     private static Specification<Listing> priceLte(BigDecimal maxPrice) {
         return (root, q, cb) -> {
             if (maxPrice == null) return cb.conjunction();
-            return cb.lessThanOrEqualTo(root.get("price"), maxPrice);
+            return cb.lessThanOrEqualTo(root.<Money>get("price"), Money.of(maxPrice, RoundingMode.FLOOR));
         };
     }
 
@@ -0,0 +1,21 @@
+package com.evtrading.swp391.state;
+
+/** Trạng thái của Listing, lưu dạng chuỗi trong cột status. */
+public enum ListingStatus {
+    PENDING, ACTIVE, REJECTED, SOLD,
+    // Bị bộ lọc spam đánh dấu khi tạo; chưa có luồng duyệt nên không có cạnh đi ra
+    FLAGGED;
+
+    private static final ListingStatus[] VALUES = values();
+
+    public static ListingStatus of(String value) {
+        if (value != null) {
+            for (ListingStatus status : VALUES) {
+                if (status.name().equals(value)) {
+                    return status;
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,19 @@
+package com.evtrading.swp391.state;
+
+/** Trạng thái của Order, lưu dạng chuỗi trong cột status. */
+public enum OrderStatus {
+    PENDING, COMPLETED, CANCELLED;
+
+    private static final OrderStatus[] VALUES = values();
+
+    public static OrderStatus of(String value) {
+        if (value != null) {
+            for (OrderStatus status : VALUES) {
+                if (status.name().equals(value)) {
+                    return status;
+                }
+            }
+        }
+        return null;
+    }
+}
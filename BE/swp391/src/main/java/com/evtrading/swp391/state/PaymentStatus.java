@@ -0,0 +1,19 @@
+package com.evtrading.swp391.state;
+
+/** Trạng thái của Payment, lưu dạng chuỗi trong cột status. */
+public enum PaymentStatus {
+    PENDING, SUCCEEDED, FAILED, REJECTED;
+
+    private static final PaymentStatus[] VALUES = values();
+
+    public static PaymentStatus of(String value) {
+        if (value != null) {
+            for (PaymentStatus status : VALUES) {
+                if (status.name().equals(value)) {
+                    return status;
+                }
+            }
+        }
+        return null;
+    }
+}
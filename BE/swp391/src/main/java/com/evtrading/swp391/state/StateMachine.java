@@ -0,0 +1,70 @@
+package com.evtrading.swp391.state;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Bảng chuyển trạng thái cho một enum, biên dịch thành ma trận boolean theo ordinal:
+ * kiểm tra một cạnh là hai phép truy cập mảng, không cấp phát.
+ */
+public final class StateMachine<S extends Enum<S>> {
+
+    private final String name;
+    private final Class<S> type;
+    private final boolean[][] allowed;
+
+    private StateMachine(String name, Class<S> type, boolean[][] allowed) {
+        this.name = name;
+        this.type = type;
+        this.allowed = allowed;
+    }
+
+    public static <S extends Enum<S>> Builder<S> builder(String name, Class<S> type) {
+        return new Builder<>(name, type);
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /** Cạnh from -> to có trong bảng hay không. */
+    public boolean canTransition(S from, S to) {
+        return from != null && to != null && allowed[from.ordinal()][to.ordinal()];
+    }
+
+    /** Các trạng thái nguồn có cạnh tới {@code to}; dùng cho điều kiện WHERE của UPDATE hàng loạt. */
+    public Set<S> sourcesOf(S to) {
+        Set<S> sources = EnumSet.noneOf(type);
+        for (S from : type.getEnumConstants()) {
+            if (allowed[from.ordinal()][to.ordinal()]) {
+                sources.add(from);
+            }
+        }
+        return sources;
+    }
+
+    public static final class Builder<S extends Enum<S>> {
+        private final String name;
+        private final Class<S> type;
+        private final boolean[][] allowed;
+
+        private Builder(String name, Class<S> type) {
+            this.name = name;
+            this.type = type;
+            int n = type.getEnumConstants().length;
+            this.allowed = new boolean[n][n];
+        }
+
+        @SafeVarargs
+        public final Builder<S> permit(S from, S... targets) {
+            for (S to : targets) {
+                allowed[from.ordinal()][to.ordinal()] = true;
+            }
+            return this;
+        }
+
+        public StateMachine<S> build() {
+            return new StateMachine<>(name, type, allowed);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.evtrading.swp391.state;
+
+/** Trạng thái của Transaction, lưu dạng chuỗi trong cột status. */
+public enum TransactionStatus {
+    PENDING, PARTIALLY_PAID, FULLY_PAID, EXPIRED;
+
+    private static final TransactionStatus[] VALUES = values();
+
+    public static TransactionStatus of(String value) {
+        if (value != null) {
+            for (TransactionStatus status : VALUES) {
+                if (status.name().equals(value)) {
+                    return status;
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Giao dịch còn nhận thanh toán. */
+    public boolean acceptsPayment() {
+        return this == PENDING || this == PARTIALLY_PAID;
+    }
+}
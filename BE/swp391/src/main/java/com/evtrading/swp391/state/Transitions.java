@@ -0,0 +1,39 @@
+package com.evtrading.swp391.state;
+
+/**
+ * Bảng chuyển trạng thái của Order, Transaction và Listing.
+ *
+ * StatusTransitionService lấy tập trạng thái nguồn cho điều kiện WHERE của các UPDATE hàng loạt từ đây
+ * ({@link StateMachine#sourcesOf}); OrderService dùng {@link StateMachine#canTransition} để biết listing còn
+ * bán được không. Các UPDATE một dòng có điều kiện trong repository (applyPayment, completeIfPending,
+ * markIfPending, reserveIfActive) viết sẵn điều kiện tương ứng trong JPQL: đổi bảng này thì phải sửa cả
+ * các câu đó.
+ *
+ * Cột status trong DB vẫn là chuỗi (dữ liệu cũ có thể chứa giá trị lạ); các enum *Status.of() đổi chuỗi
+ * sang enum mà không cấp phát và trả null cho giá trị không nhận ra, khi đó mọi cạnh đều bị từ chối.
+ */
+public final class Transitions {
+
+    public static final StateMachine<OrderStatus> ORDER = StateMachine.builder("Order", OrderStatus.class)
+            .permit(OrderStatus.PENDING, OrderStatus.COMPLETED, OrderStatus.CANCELLED)
+            .build();
+
+    public static final StateMachine<TransactionStatus> TRANSACTION =
+            StateMachine.builder("Transaction", TransactionStatus.class)
+                    .permit(TransactionStatus.PENDING,
+                            TransactionStatus.PARTIALLY_PAID, TransactionStatus.FULLY_PAID, TransactionStatus.EXPIRED)
+                    // Quá hạn khi mới trả một phần: hết hạn, số đã trả cần hoàn (TRANSACTION_REFUND_DUE)
+                    .permit(TransactionStatus.PARTIALLY_PAID,
+                            TransactionStatus.PARTIALLY_PAID, TransactionStatus.FULLY_PAID, TransactionStatus.EXPIRED)
+                    .build();
+
+    public static final StateMachine<ListingStatus> LISTING = StateMachine.builder("Listing", ListingStatus.class)
+            .permit(ListingStatus.PENDING, ListingStatus.ACTIVE, ListingStatus.REJECTED)
+            .permit(ListingStatus.ACTIVE, ListingStatus.SOLD)
+            // Đơn giữ chỗ bị hủy / hết hạn thì listing được bán lại
+            .permit(ListingStatus.SOLD, ListingStatus.ACTIVE)
+            .build();
+
+    private Transitions() {
+    }
+}
@@ -0,0 +1,70 @@
+package com.evtrading.swp391.util;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Minimal lock-free circuit breaker for calls to third-party HTTP APIs.
+ *
+ * CLOSED: calls pass through; consecutive failures are counted.
+ * OPEN: calls are rejected immediately until {@code openDuration} has elapsed.
+ * HALF_OPEN: a single trial call is let through; success closes the circuit,
+ * failure opens it again.
+ */
+public final class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openDurationNanos;
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private volatile long openedAtNanos;
+
+    public CircuitBreaker(String name, int failureThreshold, Duration openDuration) {
+        if (failureThreshold < 1) {
+            throw new IllegalArgumentException("failureThreshold must be >= 1");
+        }
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.openDurationNanos = openDuration.toNanos();
+    }
+
+    /**
+     * @return {@code true} if the caller may perform the protected call now
+     */
+    public boolean tryAcquire() {
+        State current = state.get();
+        if (current == State.CLOSED) {
+            return true;
+        }
+        if (current == State.OPEN && System.nanoTime() - openedAtNanos >= openDurationNanos) {
+            // Only one caller wins the transition and performs the trial call
+            return state.compareAndSet(State.OPEN, State.HALF_OPEN);
+        }
+        return false;
+    }
+
+    public void onSuccess() {
+        consecutiveFailures.set(0);
+        state.set(State.CLOSED);
+    }
+
+    public void onFailure() {
+        if (state.get() == State.HALF_OPEN || consecutiveFailures.incrementAndGet() >= failureThreshold) {
+            openedAtNanos = System.nanoTime();
+            state.set(State.OPEN);
+        }
+    }
+
+    public State state() {
+        return state.get();
+    }
+
+    public String name() {
+        return name;
+    }
+}
@@ -0,0 +1,142 @@
+package com.evtrading.swp391.util;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Số tiền bất biến, lưu dưới dạng {@code long} đơn vị nhỏ nhất (1/100) kèm mã tiền tệ.
+ *
+ * So sánh và cộng trừ là phép toán trên long nên không phụ thuộc scale như BigDecimal
+ * ("100.0" và "100.00" là cùng một giá trị), và tràn số ném {@link ArithmeticException}
+ * thay vì âm thầm sai. Trên JSON vẫn là một số thập phân như trước.
+ */
+public final class Money implements Comparable<Money>, Serializable {
+
+    /** Số chữ số thập phân, khớp với cột decimal(38,2) Hibernate tạo cho các cột tiền. */
+    public static final int SCALE = 2;
+    public static final String DEFAULT_CURRENCY = "VND";
+
+    private static final long serialVersionUID = 1L;
+    private static final Money ZERO = new Money(0L, DEFAULT_CURRENCY);
+
+    private final long minorUnits;
+    private final String currency;
+
+    private Money(long minorUnits, String currency) {
+        this.minorUnits = minorUnits;
+        this.currency = currency;
+    }
+
+    public static Money zero() {
+        return ZERO;
+    }
+
+    public static Money ofMinor(long minorUnits) {
+        return minorUnits == 0 ? ZERO : new Money(minorUnits, DEFAULT_CURRENCY);
+    }
+
+    public static Money ofMinor(long minorUnits, String currency) {
+        if (DEFAULT_CURRENCY.equals(currency)) {
+            return ofMinor(minorUnits);
+        }
+        if (currency == null || currency.length() != 3) {
+            throw new IllegalArgumentException("Invalid currency code: " + currency);
+        }
+        return new Money(minorUnits, currency);
+    }
+
+    /**
+     * Đổi từ BigDecimal; chấp nhận mọi scale miễn là không mất chữ số.
+     *
+     * @throws IllegalArgumentException nếu có nhiều hơn {@value #SCALE} chữ số thập phân khác 0
+     */
+    @JsonCreator
+    public static Money of(BigDecimal amount) {
+        return of(amount, RoundingMode.UNNECESSARY);
+    }
+
+    /** Đổi từ BigDecimal, làm tròn phần lẻ hơn {@value #SCALE} chữ số theo {@code rounding} (dùng cho bộ lọc giá). */
+    public static Money of(BigDecimal amount, RoundingMode rounding) {
+        if (amount == null) {
+            return null;
+        }
+        try {
+            return ofMinor(amount.setScale(SCALE, rounding).unscaledValue().longValueExact());
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Amount must have at most " + SCALE
+                    + " decimal places and fit in 64 bits: " + amount);
+        }
+    }
+
+    public long minorUnits() {
+        return minorUnits;
+    }
+
+    public String currency() {
+        return currency;
+    }
+
+    public Money plus(Money other) {
+        requireSameCurrency(other);
+        return ofMinor(Math.addExact(minorUnits, other.minorUnits), currency);
+    }
+
+    public Money minus(Money other) {
+        requireSameCurrency(other);
+        return ofMinor(Math.subtractExact(minorUnits, other.minorUnits), currency);
+    }
+
+    public Money times(long quantity) {
+        return ofMinor(Math.multiplyExact(minorUnits, quantity), currency);
+    }
+
+    public boolean isZero() {
+        return minorUnits == 0;
+    }
+
+    public boolean isPositive() {
+        return minorUnits > 0;
+    }
+
+    public boolean isGreaterThan(Money other) {
+        return compareTo(other) > 0;
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        requireSameCurrency(other);
+        return Long.compare(minorUnits, other.minorUnits);
+    }
+
+    @JsonValue
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(minorUnits, SCALE);
+    }
+
+    private void requireSameCurrency(Money other) {
+        if (!currency.equals(other.currency)) {
+            throw new IllegalArgumentException("Currency mismatch: " + currency + " vs " + other.currency);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Money other)) return false;
+        return minorUnits == other.minorUnits && currency.equals(other.currency);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Long.hashCode(minorUnits) + currency.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return toBigDecimal().toPlainString() + " " + currency;
+    }
+}
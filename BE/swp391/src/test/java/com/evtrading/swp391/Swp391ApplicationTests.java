@@ -2,8 +2,10 @@ package com.evtrading.swp391;
 
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
 
-@SpringBootTest
+@SpringBootTest(properties = "app.payment.simulator.secret=test-simulator-secret-0123456789")
+@ActiveProfiles("test")
 class Swp391ApplicationTests {
 
 	@Test
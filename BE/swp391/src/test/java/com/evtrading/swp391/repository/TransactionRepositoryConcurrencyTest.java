@@ -0,0 +1,207 @@
+package com.evtrading.swp391.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.evtrading.swp391.entity.Battery;
+import com.evtrading.swp391.entity.Brand;
+import com.evtrading.swp391.entity.Category;
+import com.evtrading.swp391.entity.Listing;
+import com.evtrading.swp391.entity.Order;
+import com.evtrading.swp391.entity.Role;
+import com.evtrading.swp391.entity.Transaction;
+import com.evtrading.swp391.entity.User;
+import com.evtrading.swp391.entity.Vehicle;
+import com.evtrading.swp391.util.Money;
+
+import jakarta.persistence.EntityManager;
+
+/**
+ * Chạy thật các UPDATE có điều kiện (JPQL -> SQL) trên H2 chế độ MSSQLServer, song song từ nhiều luồng,
+ * mỗi lời gọi trong transaction riêng như ở OrderService. Các test ở tầng service mock repository nên
+ * không kiểm tra được phép cộng/so sánh trên cột Money hay điều kiện status trong WHERE.
+ */
+@DataJpaTest
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class TransactionRepositoryConcurrencyTest {
+
+    private static final int THREADS = 16;
+
+    // DB dùng chung giữa các test (context được cache) nên hậu tố phải duy nhất toàn class
+    private static final AtomicInteger FIXTURES = new AtomicInteger();
+    private static final Money TOTAL = Money.of(new BigDecimal("1000"));
+    // Scale khác TOTAL: phép so sánh trong WHERE không được phụ thuộc scale
+    private static final Money INSTALLMENT = Money.of(new BigDecimal("100.0"));
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private ListingRepository listingRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void parallelApplyPaymentNeverOvershootsTotal() throws Exception {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        Integer transactionId = tx.execute(status -> newTransaction(Money.zero(), "PENDING"));
+
+        int attempts = 64;
+        int applied = runConcurrently(attempts,
+                () -> tx.execute(status -> transactionRepository.applyPayment(transactionId, INSTALLMENT, new Date())));
+
+        Transaction after = transactionRepository.findById(transactionId).orElseThrow();
+        assertEquals((int) (TOTAL.minorUnits() / INSTALLMENT.minorUnits()), applied);
+        assertEquals(TOTAL, after.getPaidAmount());
+        assertEquals("FULLY_PAID", after.getStatus());
+        assertEquals("FULLY_PAID", transactionRepository.findStatusById(transactionId));
+    }
+
+    @Test
+    void applyPaymentRejectsAmountAboveRemaining() {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        Integer transactionId = tx.execute(status -> newTransaction(Money.of(new BigDecimal("950")), "PARTIALLY_PAID"));
+
+        assertEquals(0, (int) tx.execute(status -> transactionRepository.applyPayment(transactionId, INSTALLMENT, new Date())));
+        assertEquals(Money.of(new BigDecimal("950")), transactionRepository.findById(transactionId).orElseThrow().getPaidAmount());
+        assertEquals(1, (int) tx.execute(status -> transactionRepository.applyPayment(transactionId,
+                Money.of(new BigDecimal("50.00")), new Date())));
+        assertEquals("FULLY_PAID", transactionRepository.findStatusById(transactionId));
+    }
+
+    @Test
+    void parallelReserveIfActiveHasSingleWinner() throws Exception {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        Integer listingId = tx.execute(status -> entityManager.merge(newListing()).getListingID());
+
+        int reserved = runConcurrently(32, () -> tx.execute(status -> listingRepository.reserveIfActive(listingId)));
+
+        Listing after = listingRepository.findById(listingId).orElseThrow();
+        assertEquals(1, reserved);
+        assertEquals("SOLD", after.getStatus());
+        assertEquals(1, after.getVersion());
+    }
+
+    // Chạy cùng lúc (qua một cổng xuất phát) và trả về tổng số dòng đã cập nhật
+    private static int runConcurrently(int calls, Callable<Integer> update) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> results = new ArrayList<>();
+        try {
+            for (int i = 0; i < calls; i++) {
+                results.add(pool.submit(() -> {
+                    start.await();
+                    return update.call();
+                }));
+            }
+            start.countDown();
+            int updated = 0;
+            for (Future<Integer> f : results) {
+                updated += f.get(30, TimeUnit.SECONDS);
+            }
+            return updated;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // Mỗi Transaction cần một Order riêng (orderID unique)
+    private Integer newTransaction(Money paid, String status) {
+        Listing listing = entityManager.merge(newListing());
+        Order order = new Order();
+        order.setBuyer(newUser("buyer"));
+        order.setSeller(listing.getUser());
+        order.setListing(listing);
+        order.setQuantity(1);
+        order.setPrice(TOTAL);
+        order.setTotalAmount(TOTAL);
+        order.setStatus("PENDING");
+        order.setCreatedAt(new Date());
+        entityManager.persist(order);
+
+        Transaction t = new Transaction();
+        t.setOrder(order);
+        t.setTotalAmount(TOTAL);
+        t.setPaidAmount(paid);
+        t.setStatus(status);
+        t.setCreatedAt(new Date());
+        entityManager.persist(t);
+        return t.getTransactionID();
+    }
+
+    private User newUser(String prefix) {
+        int n = FIXTURES.incrementAndGet();
+        // roleName, username, email đều unique
+        Role role = new Role();
+        role.setRoleName("MEMBER" + n);
+        entityManager.persist(role);
+        User user = new User();
+        user.setRole(role);
+        user.setUsername(prefix + n);
+        user.setEmail(prefix + n + "@example.com");
+        user.setPassword("x");
+        entityManager.persist(user);
+        return user;
+    }
+
+    private Listing newListing() {
+        User seller = newUser("seller");
+        int n = FIXTURES.incrementAndGet();
+        Category category = new Category();
+        category.setCategoryName("EV" + n);
+        entityManager.persist(category);
+        Brand brand = new Brand();
+        brand.setBrandName("VinFast" + n);
+        entityManager.persist(brand);
+        // vehicleID/batteryID unique: SQL Server (và H2 chế độ MSSQLServer) chỉ cho một NULL
+        Vehicle vehicle = new Vehicle();
+        vehicle.setCategory(category);
+        vehicle.setBrand(brand);
+        vehicle.setModel("VF e34");
+        vehicle.setYear(2023);
+        entityManager.persist(vehicle);
+        Battery battery = new Battery();
+        battery.setCategory(category);
+        battery.setBrand(brand);
+        entityManager.persist(battery);
+
+        Listing listing = new Listing();
+        listing.setVehicle(vehicle);
+        listing.setBattery(battery);
+        listing.setUser(seller);
+        listing.setCategory(category);
+        listing.setBrand(brand);
+        listing.setTitle("VF e34");
+        listing.setPrice(Money.of(new BigDecimal("500000000")));
+        listing.setStatus("ACTIVE");
+        listing.setCreatedAt(new Date());
+        return listing;
+    }
+}
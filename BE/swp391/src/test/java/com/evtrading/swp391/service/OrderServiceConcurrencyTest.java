@@ -0,0 +1,149 @@
+package com.evtrading.swp391.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.evtrading.swp391.dto.OrderRequestDTO;
+import com.evtrading.swp391.entity.Listing;
+import com.evtrading.swp391.entity.Order;
+import com.evtrading.swp391.entity.Transaction;
+import com.evtrading.swp391.entity.User;
+import com.evtrading.swp391.exception.OrderConflictException;
+import com.evtrading.swp391.repository.ListingRepository;
+import com.evtrading.swp391.repository.OrderRepository;
+import com.evtrading.swp391.repository.PaymentRepository;
+import com.evtrading.swp391.repository.TransactionRepository;
+import com.evtrading.swp391.repository.UserRepository;
+import com.evtrading.swp391.util.Money;
+
+/**
+ * Nhiều người mua cùng đặt một listing: chỉ đúng một đơn được tạo.
+ */
+class OrderServiceConcurrencyTest {
+
+    private static final int BUYERS = 32;
+    private static final int LISTING_ID = 7;
+
+    private OrderService orderService;
+    private final AtomicBoolean listingActive = new AtomicBoolean(true);
+    private final AtomicInteger ordersSaved = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        User seller = new User();
+        seller.setUserID(1);
+
+        Listing listing = new Listing();
+        listing.setListingID(LISTING_ID);
+        listing.setUser(seller);
+        listing.setPrice(Money.of(new BigDecimal("1000")));
+        listing.setStatus("ACTIVE");
+
+        UserRepository userRepository = mock(UserRepository.class);
+        when(userRepository.findByUsername(anyString())).thenAnswer(inv -> {
+            String name = inv.getArgument(0);
+            User buyer = new User();
+            buyer.setUsername(name);
+            buyer.setUserID(100 + Integer.parseInt(name.substring("buyer".length())));
+            return Optional.of(buyer);
+        });
+
+        // Mỗi request đọc listing ở trạng thái ACTIVE (snapshot cũ), UPDATE có điều kiện quyết định ai thắng
+        ListingRepository listingRepository = mock(ListingRepository.class);
+        when(listingRepository.findById(LISTING_ID)).thenReturn(Optional.of(listing));
+        when(listingRepository.reserveIfActive(anyInt()))
+                .thenAnswer(inv -> listingActive.compareAndSet(true, false) ? 1 : 0);
+
+        OrderRepository orderRepository = mock(OrderRepository.class);
+        when(orderRepository.save(any(Order.class))).thenAnswer(inv -> {
+            Order order = inv.getArgument(0);
+            order.setOrderID(ordersSaved.incrementAndGet());
+            return order;
+        });
+
+        TransactionRepository transactionRepository = mock(TransactionRepository.class);
+        when(transactionRepository.save(any(Transaction.class))).thenAnswer(inv -> {
+            Transaction tx = inv.getArgument(0);
+            tx.setTransactionID(1);
+            return tx;
+        });
+
+        PlatformTransactionManager txManager = mock(PlatformTransactionManager.class);
+        when(txManager.getTransaction(any())).thenAnswer(inv -> new SimpleTransactionStatus());
+
+        orderService = new OrderService();
+        ReflectionTestUtils.setField(orderService, "userRepository", userRepository);
+        ReflectionTestUtils.setField(orderService, "listingRepository", listingRepository);
+        ReflectionTestUtils.setField(orderService, "orderRepository", orderRepository);
+        ReflectionTestUtils.setField(orderService, "transactionRepository", transactionRepository);
+        ReflectionTestUtils.setField(orderService, "outboxService", mock(OutboxService.class));
+        ReflectionTestUtils.setField(orderService, "paymentRepository", mock(PaymentRepository.class));
+        ReflectionTestUtils.setField(orderService, "transactionTemplate", new TransactionTemplate(txManager));
+        ReflectionTestUtils.setField(orderService, "reservationExpiryScheduler", mock(ReservationExpiryScheduler.class));
+    }
+
+    @Test
+    void concurrentBuyersOnlyOneOrderIsCreated() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(BUYERS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> results = new ArrayList<>();
+        try {
+            for (int i = 0; i < BUYERS; i++) {
+                Authentication auth = new UsernamePasswordAuthenticationToken("buyer" + i, null);
+                results.add(pool.submit(() -> {
+                    OrderRequestDTO dto = new OrderRequestDTO();
+                    dto.setListingId(LISTING_ID);
+                    start.await();
+                    try {
+                        orderService.createOrder(dto, auth);
+                        return true;
+                    } catch (OrderConflictException e) {
+                        return false;
+                    }
+                }));
+            }
+            start.countDown();
+
+            int successes = 0;
+            int conflicts = 0;
+            for (Future<Boolean> f : results) {
+                if (f.get(10, TimeUnit.SECONDS)) {
+                    successes++;
+                } else {
+                    conflicts++;
+                }
+            }
+
+            assertEquals(1, successes);
+            assertEquals(BUYERS - 1, conflicts);
+            assertEquals(1, ordersSaved.get());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
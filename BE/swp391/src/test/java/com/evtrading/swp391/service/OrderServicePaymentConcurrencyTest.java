@@ -0,0 +1,147 @@
+package com.evtrading.swp391.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.evtrading.swp391.repository.ListingRepository;
+import com.evtrading.swp391.repository.OrderRepository;
+import com.evtrading.swp391.repository.PaymentRepository;
+import com.evtrading.swp391.repository.TransactionRepository;
+import com.evtrading.swp391.repository.UserRepository;
+import com.evtrading.swp391.util.Money;
+
+/**
+ * Nhiều xác nhận thanh toán một phần song song trên cùng giao dịch (kèm callback gửi lặp):
+ * tổng tiền không bao giờ vượt totalAmount, không mất lượt cộng nào và không cộng trùng.
+ */
+class OrderServicePaymentConcurrencyTest {
+
+    private static final int PAYMENTS = 64;
+    private static final int DELIVERIES_PER_PAYMENT = 2;
+    private static final int TRANSACTION_ID = 11;
+    private static final int ORDER_ID = 5;
+    private static final Money TOTAL = Money.of(new BigDecimal("1000"));
+    // Scale khác TOTAL: phép so sánh trên Money không phụ thuộc scale
+    private static final Money INSTALLMENT = Money.of(new BigDecimal("100.0"));
+
+    private OrderService orderService;
+
+    // Trạng thái "dòng" transactions trên DB; UPDATE có điều kiện được mô phỏng bằng synchronized
+    private final Object row = new Object();
+    private Money paidAmount = Money.zero();
+    private String status = "PENDING";
+
+    private final Map<Integer, String> paymentStatus = new ConcurrentHashMap<>();
+    private final AtomicInteger ordersCompleted = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        for (int id = 1; id <= PAYMENTS; id++) {
+            paymentStatus.put(id, "PENDING");
+        }
+
+        TransactionRepository transactionRepository = mock(TransactionRepository.class);
+        when(transactionRepository.applyPayment(eq(TRANSACTION_ID), any(Money.class), any(Date.class)))
+                .thenAnswer(inv -> {
+                    Money amount = inv.getArgument(1);
+                    synchronized (row) {
+                        Money next = paidAmount.plus(amount);
+                        boolean payable = "PENDING".equals(status) || "PARTIALLY_PAID".equals(status);
+                        if (!payable || next.compareTo(TOTAL) > 0) {
+                            return 0;
+                        }
+                        paidAmount = next;
+                        status = next.equals(TOTAL) ? "FULLY_PAID" : "PARTIALLY_PAID";
+                        return 1;
+                    }
+                });
+        when(transactionRepository.findStatusById(TRANSACTION_ID)).thenAnswer(inv -> {
+            synchronized (row) {
+                return status;
+            }
+        });
+
+        PaymentRepository paymentRepository = mock(PaymentRepository.class);
+        // Giống UPDATE ... where status = 'PENDING'
+        when(paymentRepository.markIfPending(anyInt(), anyString(), any(Date.class)))
+                .thenAnswer(inv -> paymentStatus.replace(inv.getArgument(0), "PENDING", inv.getArgument(1)) ? 1 : 0);
+        when(paymentRepository.updateStatus(anyInt(), anyString()))
+                .thenAnswer(inv -> paymentStatus.put(inv.getArgument(0), inv.getArgument(1)) != null ? 1 : 0);
+
+        OrderRepository orderRepository = mock(OrderRepository.class);
+        AtomicInteger orderCompletions = new AtomicInteger();
+        when(orderRepository.completeIfPending(ORDER_ID)).thenAnswer(inv -> {
+            if (orderCompletions.getAndIncrement() == 0) {
+                ordersCompleted.incrementAndGet();
+                return 1;
+            }
+            return 0;
+        });
+
+        orderService = new OrderService();
+        ReflectionTestUtils.setField(orderService, "userRepository", mock(UserRepository.class));
+        ReflectionTestUtils.setField(orderService, "listingRepository", mock(ListingRepository.class));
+        ReflectionTestUtils.setField(orderService, "orderRepository", orderRepository);
+        ReflectionTestUtils.setField(orderService, "transactionRepository", transactionRepository);
+        ReflectionTestUtils.setField(orderService, "outboxService", mock(OutboxService.class));
+        ReflectionTestUtils.setField(orderService, "paymentRepository", paymentRepository);
+    }
+
+    @Test
+    void parallelConfirmationsNeverOvershootTotal() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(16);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> results = new ArrayList<>();
+        try {
+            for (int delivery = 0; delivery < DELIVERIES_PER_PAYMENT; delivery++) {
+                for (int id = 1; id <= PAYMENTS; id++) {
+                    int paymentId = id;
+                    results.add(pool.submit(() -> {
+                        start.await();
+                        return orderService.confirmPayment(paymentId, TRANSACTION_ID, ORDER_ID, INSTALLMENT, new Date());
+                    }));
+                }
+            }
+            start.countDown();
+
+            int applied = 0;
+            for (Future<Boolean> f : results) {
+                if (f.get(10, TimeUnit.SECONDS)) {
+                    applied++;
+                }
+            }
+
+            int expected = (int) (TOTAL.minorUnits() / INSTALLMENT.minorUnits());
+            assertEquals(expected, applied);
+            assertEquals(expected, paymentStatus.values().stream().filter("SUCCEEDED"::equals).count());
+            assertEquals(PAYMENTS - expected, paymentStatus.values().stream().filter("REJECTED"::equals).count());
+            assertEquals(TOTAL, paidAmount);
+            assertEquals("FULLY_PAID", status);
+            assertEquals(1, ordersCompleted.get());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}